@@ -0,0 +1,122 @@
+package com.google.ar.core.codelab.cloudanchor.benchmark;
+
+import com.google.ar.core.codelab.cloudanchor.session.Futures;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * End-to-end latency of hosting and joining, with every network step simulated by a fixed delay.
+ * The callback variants chain the steps one after another, the way CloudAnchorFragment did; the
+ * future variants overlap the steps that do not depend on each other:
+ *
+ * <ul>
+ *   <li>join: sign in, look up the cloud anchor ID, resolve. Signing in overlaps the other two.
+ *   <li>host: sign in, host, reserve a short code. All three overlap.
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AsyncFlowBenchmark {
+
+    @Param({"30"})
+    public long loginMillis;
+
+    @Param({"15"})
+    public long lookupMillis;
+
+    @Param({"60"})
+    public long cloudOperationMillis;
+
+    @Param({"20"})
+    public long shortCodeMillis;
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private ScheduledExecutorService network;
+    private Futures.Scheduler scheduler;
+
+    @Setup
+    public void setUp() {
+        network = Executors.newScheduledThreadPool(2);
+        scheduler = (task, delayMillis) -> network.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        network.shutdownNow();
+    }
+
+    @Benchmark
+    public String joinCallbacks() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        String[] result = new String[1];
+        later(loginMillis, "uid", userUid ->
+                later(lookupMillis, "cloud-anchor-id", cloudAnchorId ->
+                        later(cloudOperationMillis, "anchor", anchor -> {
+                            result[0] = anchor;
+                            done.countDown();
+                        })));
+        done.await();
+        return result[0];
+    }
+
+    @Benchmark
+    public String joinFutures() {
+        CompletableFuture<String> login = delayed(loginMillis, "uid");
+        return Futures.orTimeout(delayed(lookupMillis, "cloud-anchor-id"), TIMEOUT_MILLIS, scheduler)
+                .thenCompose(cloudAnchorId -> delayed(cloudOperationMillis, "anchor"))
+                .thenCombine(login, (anchor, userUid) -> anchor)
+                .join();
+    }
+
+    @Benchmark
+    public Integer hostCallbacks() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        Integer[] result = new Integer[1];
+        later(loginMillis, "uid", userUid ->
+                later(cloudOperationMillis, "anchor", anchor ->
+                        later(shortCodeMillis, 142, shortCode -> {
+                            result[0] = shortCode;
+                            done.countDown();
+                        })));
+        done.await();
+        return result[0];
+    }
+
+    @Benchmark
+    public Integer hostFutures() {
+        CompletableFuture<String> login = delayed(loginMillis, "uid");
+        CompletableFuture<String> hosted = delayed(cloudOperationMillis, "anchor");
+        CompletableFuture<Integer> shortCode =
+                Futures.orTimeout(delayed(shortCodeMillis, 142), TIMEOUT_MILLIS, scheduler);
+        return hosted.thenCombine(shortCode, (anchor, code) -> code)
+                .thenCombine(login, (code, userUid) -> code)
+                .join();
+    }
+
+    private <T> void later(long delayMillis, T value, Consumer<T> callback) {
+        network.schedule(() -> callback.accept(value), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private <T> CompletableFuture<T> delayed(long delayMillis, T value) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        later(delayMillis, value, future::complete);
+        return future;
+    }
+}
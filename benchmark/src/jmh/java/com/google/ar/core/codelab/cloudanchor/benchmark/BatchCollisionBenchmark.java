@@ -0,0 +1,60 @@
+package com.google.ar.core.codelab.cloudanchor.benchmark;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.OverlapPairs;
+import com.google.ar.core.codelab.cloudanchor.rendering.BatchCollisionDetector;
+import com.google.ar.core.codelab.cloudanchor.rendering.SATUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** All-pairs overlap for a session of N frustums: sweep-and-prune against brute-force SAT. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BatchCollisionBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int count;
+
+    private List<FlatViewFrustum> frustums;
+    private final BatchCollisionDetector detector = new BatchCollisionDetector();
+    private final OverlapPairs pairs = new OverlapPairs();
+
+    @Setup
+    public void setUp() {
+        frustums = FrustumFixtures.scatter(count, 42);
+        // Warm the cached normals and bounds, as a live session would have.
+        for (FlatViewFrustum frustum : frustums) {
+            frustum.getNormals();
+            frustum.getBounds();
+        }
+    }
+
+    @Benchmark
+    public int sweepAndPrune() {
+        return detector.findOverlappingPairs(frustums, pairs);
+    }
+
+    @Benchmark
+    public int bruteForce() {
+        pairs.clear();
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                if (SATUtils.detectCollision(frustums.get(i), frustums.get(j))) {
+                    pairs.add(i, j);
+                }
+            }
+        }
+        return pairs.size();
+    }
+}
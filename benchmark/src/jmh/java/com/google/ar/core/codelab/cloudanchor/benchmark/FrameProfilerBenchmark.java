@@ -0,0 +1,37 @@
+package com.google.ar.core.codelab.cloudanchor.benchmark;
+
+import com.google.ar.core.codelab.cloudanchor.session.FrameProfiler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the frame profiler adds to every CloudAnchorManager.onUpdate: a frame with all seven phases
+ * marked. The gc profiler should report no allocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameProfilerBenchmark {
+
+    private static final int PHASES = 7;
+
+    private final FrameProfiler profiler = new FrameProfiler(
+            new String[]{"0", "1", "2", "3", "4", "5", "6"}, System::nanoTime, null);
+
+    @Benchmark
+    public long profiledFrame() {
+        profiler.beginFrame();
+        for (int phase = 0; phase < PHASES; phase++) {
+            profiler.mark(phase);
+        }
+        profiler.endFrame();
+        return profiler.getFrameCount();
+    }
+}
@@ -0,0 +1,131 @@
+package com.google.ar.core.codelab.cloudanchor.benchmark;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.FrustumCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * The compact frustum encoding against the legacy CloudViewFrustum object tree.
+ *
+ * <p>The Firebase mapper is not available off-device, so the legacy decode converts the map tree
+ * the database client hands over into vertex and normal lists by hand. That skips the mapper's
+ * reflection and is a lower bound on the real cost. Payload sizes are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FrustumCodecBenchmark {
+
+    private final FlatViewFrustum frustum = new FlatViewFrustum();
+    private final FlatViewFrustum decoded = new FlatViewFrustum();
+    private String compact;
+    private String compactWithNormals;
+    private Map<String, Object> legacyTree;
+
+    @Setup
+    public void setUp() {
+        frustum.setVertices(FrustumFixtures.frustum(new Vector3f(0.5f, 1.5f, 2), new Vector3f(0, 0, 0)).getPoints());
+        compact = FrustumCodec.encode(frustum);
+        compactWithNormals = FrustumCodec.encode(frustum, true);
+        legacyTree = new HashMap<>();
+        legacyTree.put("vertices", toTree(frustum.getVertices(), FlatViewFrustum.VERTEX_COUNT));
+        legacyTree.put("normals", toTree(frustum.getNormals(), FlatViewFrustum.FACE_COUNT));
+
+        System.out.println();
+        System.out.println("compact: " + compact.length() + " bytes, with normals: "
+                + compactWithNormals.length() + " bytes, legacy JSON: "
+                + toJson(legacyTree).getBytes(StandardCharsets.UTF_8).length + " bytes");
+    }
+
+    @Benchmark
+    public String encodeCompact() {
+        return FrustumCodec.encode(frustum);
+    }
+
+    @Benchmark
+    public String encodeCompactWithNormals() {
+        return FrustumCodec.encode(frustum, true);
+    }
+
+    /** Includes regenerating the normals, which the receiver has to do for this payload. */
+    @Benchmark
+    public float[] decodeCompact() {
+        FrustumCodec.decode(compact, decoded);
+        return decoded.getNormals();
+    }
+
+    @Benchmark
+    public float[] decodeCompactWithNormals() {
+        FrustumCodec.decode(compactWithNormals, decoded);
+        return decoded.getNormals();
+    }
+
+    @Benchmark
+    public List<Vector3f> decodeLegacyTree() {
+        List<Vector3f> vertices = fromTree(legacyTree.get("vertices"));
+        List<Vector3f> normals = fromTree(legacyTree.get("normals"));
+        vertices.addAll(normals);
+        return vertices;
+    }
+
+    /** The shape the database client delivers: a list of maps holding doubles. */
+    private static List<Object> toTree(float[] packed, int count) {
+        List<Object> tree = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> vector = new HashMap<>();
+            vector.put("x", (double) packed[i * 3]);
+            vector.put("y", (double) packed[i * 3 + 1]);
+            vector.put("z", (double) packed[i * 3 + 2]);
+            tree.add(vector);
+        }
+        return tree;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Vector3f> fromTree(Object tree) {
+        List<Object> entries = (List<Object>) tree;
+        List<Vector3f> result = new ArrayList<>(entries.size());
+        for (Object entry : entries) {
+            Map<String, Object> vector = (Map<String, Object>) entry;
+            result.add(new Vector3f(((Number) vector.get("x")).floatValue(),
+                    ((Number) vector.get("y")).floatValue(), ((Number) vector.get("z")).floatValue()));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String toJson(Object value) {
+        if (value instanceof Map) {
+            StringBuilder builder = new StringBuilder("{");
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                builder.append(builder.length() > 1 ? "," : "")
+                        .append('"').append(entry.getKey()).append("\":").append(toJson(entry.getValue()));
+            }
+            return builder.append('}').toString();
+        }
+        if (value instanceof List) {
+            StringBuilder builder = new StringBuilder("[");
+            for (Object element : (List<Object>) value) {
+                builder.append(builder.length() > 1 ? "," : "").append(toJson(element));
+            }
+            return builder.append(']').toString();
+        }
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,157 @@
+package com.google.ar.core.codelab.cloudanchor.benchmark;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.ViewConfig;
+import com.google.ar.core.codelab.cloudanchor.model.ViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.rendering.PointUtils;
+import com.google.ar.core.codelab.cloudanchor.rendering.SATUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.vecmath.Vector3f;
+
+/** Builds the camera matrices and frustum pairs shared by the benchmarks. */
+public final class FrustumFixtures {
+    // Same clip and screen settings as CloudAnchorManager on a 1080x1920 display.
+    static final float NEAR_CLIP = 0.01f;
+    static final float FAR_CLIP = 10.0f;
+    static final float SCREEN_WIDTH = 1080;
+    static final float SCREEN_HEIGHT = 1920;
+    static final float HORIZONTAL_CLIP_RATIO = 0.6f;
+    static final float VERTICAL_CLIP_RATIO = 0.4f;
+
+    /** The relative placements of the two frustums in a pairwise benchmark. */
+    public enum Scenario {
+        /** Two cameras looking at the same point from perpendicular directions. */
+        OVERLAPPING,
+        /** Two cameras far apart, looking away from each other. */
+        DISJOINT,
+        /** The second frustum is the first one pushed out until they only share a face plane. */
+        TOUCHING
+    }
+
+    private FrustumFixtures() {
+    }
+
+    static ViewConfig viewConfig() {
+        ViewConfig viewConfig = new ViewConfig();
+        viewConfig.setTop((1 - VERTICAL_CLIP_RATIO) / 2 * SCREEN_HEIGHT);
+        viewConfig.setBottom((1 + VERTICAL_CLIP_RATIO) / 2 * SCREEN_HEIGHT);
+        viewConfig.setLeft((1 - HORIZONTAL_CLIP_RATIO) / 2 * SCREEN_WIDTH);
+        viewConfig.setRight((1 + HORIZONTAL_CLIP_RATIO) / 2 * SCREEN_WIDTH);
+        return viewConfig;
+    }
+
+    /** Same layout as android.opengl.Matrix.perspectiveM. */
+    static float[] projectionMatrix() {
+        float[] m = new float[16];
+        float f = (float) (1.0 / Math.tan(Math.toRadians(60) / 2));
+        m[0] = f / (SCREEN_WIDTH / SCREEN_HEIGHT);
+        m[5] = f;
+        m[10] = (FAR_CLIP + NEAR_CLIP) / (NEAR_CLIP - FAR_CLIP);
+        m[11] = -1;
+        m[14] = 2 * FAR_CLIP * NEAR_CLIP / (NEAR_CLIP - FAR_CLIP);
+        return m;
+    }
+
+    /** Same layout as android.opengl.Matrix.setLookAtM with +y up. */
+    static float[] viewMatrix(Vector3f eye, Vector3f target) {
+        Vector3f forward = new Vector3f();
+        forward.sub(target, eye);
+        forward.normalize();
+        Vector3f side = new Vector3f();
+        side.cross(forward, new Vector3f(0, 1, 0));
+        side.normalize();
+        Vector3f up = new Vector3f();
+        up.cross(side, forward);
+
+        float[] m = new float[16];
+        m[0] = side.x;
+        m[1] = up.x;
+        m[2] = -forward.x;
+        m[4] = side.y;
+        m[5] = up.y;
+        m[6] = -forward.y;
+        m[8] = side.z;
+        m[9] = up.z;
+        m[10] = -forward.z;
+        m[12] = -side.dot(eye);
+        m[13] = -up.dot(eye);
+        m[14] = forward.dot(eye);
+        m[15] = 1;
+        return m;
+    }
+
+    static ViewFrustum frustum(Vector3f eye, Vector3f target) {
+        ViewFrustum viewFrustum = new ViewFrustum();
+        PointUtils.setFrustumWorldCoords(viewFrustum, viewConfig(), SCREEN_WIDTH, SCREEN_HEIGHT,
+                projectionMatrix(), viewMatrix(eye, target), NEAR_CLIP, FAR_CLIP);
+        return viewFrustum;
+    }
+
+    /** Returns the two frustums of {@code scenario}. */
+    static ViewFrustum[] pair(Scenario scenario) {
+        switch (scenario) {
+            case OVERLAPPING:
+                return new ViewFrustum[]{
+                        frustum(new Vector3f(0, 0, 3), new Vector3f(0, 0, 0)),
+                        frustum(new Vector3f(3, 0, 0), new Vector3f(0, 0, 0))};
+            case DISJOINT:
+                return new ViewFrustum[]{
+                        frustum(new Vector3f(0, 0, 0), new Vector3f(0, 0, -1)),
+                        frustum(new Vector3f(30, 0, 0), new Vector3f(40, 0, 0))};
+            case TOUCHING:
+                ViewFrustum a = frustum(new Vector3f(0, 0, 0), new Vector3f(0, 0, -1));
+                return new ViewFrustum[]{a, touching(a)};
+            default:
+                throw new IllegalArgumentException("Unknown scenario " + scenario);
+        }
+    }
+
+    /**
+     * Returns {@code count} frustums from cameras scattered uniformly in a cube, each looking at a
+     * random point. The cube grows with the count so the overlap density stays roughly constant.
+     */
+    static List<FlatViewFrustum> scatter(int count, long seed) {
+        Random random = new Random(seed);
+        float side = (float) (10 * Math.cbrt(count));
+        List<FlatViewFrustum> frustums = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Vector3f eye = randomPoint(random, side);
+            Vector3f target = randomPoint(random, side);
+            frustums.add(new FlatViewFrustum(frustum(eye, target).getPoints()));
+        }
+        return frustums;
+    }
+
+    private static Vector3f randomPoint(Random random, float side) {
+        return new Vector3f(random.nextFloat() * side, random.nextFloat() * side, random.nextFloat() * side);
+    }
+
+    /* Translates a copy of the frustum along its right face normal by its own extent on that axis. */
+    private static ViewFrustum touching(ViewFrustum viewFrustum) {
+        List<Vector3f> normals = new ArrayList<>();
+        SATUtils.generateNormals(viewFrustum, normals);
+        Vector3f axis = new Vector3f(normals.get(3));
+        axis.normalize();
+
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (Vector3f point : viewFrustum.getPoints()) {
+            float distance = point.dot(axis);
+            min = Math.min(min, distance);
+            max = Math.max(max, distance);
+        }
+        axis.scale(max - min);
+
+        List<Vector3f> points = new ArrayList<>(8);
+        for (Vector3f point : viewFrustum.getPoints()) {
+            Vector3f moved = new Vector3f(point);
+            moved.add(axis);
+            points.add(moved);
+        }
+        return new ViewFrustum(points);
+    }
+}
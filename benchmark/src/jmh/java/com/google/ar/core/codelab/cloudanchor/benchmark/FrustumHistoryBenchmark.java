@@ -0,0 +1,109 @@
+package com.google.ar.core.codelab.cloudanchor.benchmark;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.session.FrustumHistoryIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * Queries and inserts on a {@link FrustumHistoryIndex} holding {@code entries} frustums from
+ * {@code participants} people looking around a large venue at 30 Hz each. Queries ask for a 2 m
+ * cube at a random spot, over the last minute or over the whole history.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FrustumHistoryBenchmark {
+    private static final int POOL_SIZE = 4096;
+    private static final float VENUE_SIZE = 60;
+    private static final float REGION_SIZE = 2;
+    private static final long BUCKET_MILLIS = 10000;
+    private static final long RECENT_MILLIS = 60000;
+
+    @Param({"1000000"})
+    public int entries;
+
+    @Param({"32"})
+    public int participants;
+
+    private final Random random = new Random(7);
+    private FlatViewFrustum[] pool;
+    private String[] uids;
+    private FrustumHistoryIndex index;
+    private float[][] regions;
+    private long endMillis;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        pool = new FlatViewFrustum[POOL_SIZE];
+        for (int i = 0; i < POOL_SIZE; i++) {
+            Vector3f eye = new Vector3f(random.nextFloat() * VENUE_SIZE, 1.5f, random.nextFloat() * VENUE_SIZE);
+            Vector3f target = new Vector3f(eye.x + random.nextFloat() * 2 - 1, 1.2f + random.nextFloat() * 0.6f,
+                    eye.z + random.nextFloat() * 2 - 1);
+            pool[i] = new FlatViewFrustum(FrustumFixtures.frustum(eye, target).getPoints());
+        }
+        uids = new String[participants];
+        for (int i = 0; i < participants; i++) {
+            uids[i] = "participant" + i;
+        }
+        // Keeps the history at about the given number of entries while add() runs.
+        index = new FrustumHistoryIndex(BUCKET_MILLIS, timeOf(entries));
+        for (int i = 0; i < entries; i++) {
+            add(i);
+        }
+        endMillis = timeOf(entries);
+        regions = new float[256][];
+        for (int i = 0; i < regions.length; i++) {
+            float x = random.nextFloat() * VENUE_SIZE;
+            float z = random.nextFloat() * VENUE_SIZE;
+            regions[i] = new float[]{x, 0.5f, z, x + REGION_SIZE, 0.5f + REGION_SIZE, z + REGION_SIZE};
+        }
+    }
+
+    @Benchmark
+    public int queryRecent() {
+        return index.countFrustums(nextRegion(), endMillis - RECENT_MILLIS, endMillis);
+    }
+
+    @Benchmark
+    public int queryAll() {
+        return index.countFrustums(nextRegion(), 0, endMillis);
+    }
+
+    @Benchmark
+    public int findParticipantsRecent() {
+        return index.findParticipants(nextRegion(), endMillis - RECENT_MILLIS, endMillis).size();
+    }
+
+    /** One 30 Hz update; includes sealing a bucket every {@code BUCKET_MILLIS} of updates. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void add() {
+        add(entries + next++);
+    }
+
+    private void add(int i) {
+        index.add(uids[i % participants], pool[random.nextInt(POOL_SIZE)], timeOf(i));
+    }
+
+    private long timeOf(int i) {
+        return i / participants * 1000L / 30;
+    }
+
+    private float[] nextRegion() {
+        return regions[next++ & (regions.length - 1)];
+    }
+}
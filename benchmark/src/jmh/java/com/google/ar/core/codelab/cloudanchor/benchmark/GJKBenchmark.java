@@ -0,0 +1,73 @@
+package com.google.ar.core.codelab.cloudanchor.benchmark;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.ViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.rendering.GJKUtils;
+import com.google.ar.core.codelab.cloudanchor.rendering.SATUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GJK queries against the packed SAT path, for each frustum placement: the overlap test alone,
+ * the distance-threshold test used to back off sync, the full distance and distance plus EPA
+ * penetration depth.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GJKBenchmark {
+
+    @Param({"OVERLAPPING", "DISJOINT", "TOUCHING"})
+    public FrustumFixtures.Scenario scenario;
+
+    /** Threshold of {@link #gjkWithinDistance}, in metres. */
+    @Param({"1"})
+    public float maxDistance;
+
+    private FlatViewFrustum a;
+    private FlatViewFrustum b;
+    private final GJKUtils.Result result = new GJKUtils.Result();
+
+    @Setup
+    public void setUp() {
+        ViewFrustum[] pair = FrustumFixtures.pair(scenario);
+        a = new FlatViewFrustum(pair[0].getPoints());
+        b = new FlatViewFrustum(pair[1].getPoints());
+    }
+
+    @Benchmark
+    public boolean satDetectCollision() {
+        return SATUtils.detectCollision(a, b);
+    }
+
+    @Benchmark
+    public boolean gjkDetectCollision() {
+        return GJKUtils.detectCollision(a, b, result);
+    }
+
+    @Benchmark
+    public boolean gjkWithinDistance() {
+        return GJKUtils.isWithinDistance(a, b, maxDistance, result);
+    }
+
+    @Benchmark
+    public float gjkDistance() {
+        GJKUtils.computeProximity(a, b, false, result);
+        return result.getDistance();
+    }
+
+    @Benchmark
+    public float gjkDistanceAndDepth() {
+        GJKUtils.computeProximity(a, b, true, result);
+        return result.getSignedDistance();
+    }
+}
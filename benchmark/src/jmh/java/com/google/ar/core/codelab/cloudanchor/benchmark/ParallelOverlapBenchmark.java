@@ -0,0 +1,63 @@
+package com.google.ar.core.codelab.cloudanchor.benchmark;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.OverlapMatrix;
+import com.google.ar.core.codelab.cloudanchor.rendering.BatchCollisionDetector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of the fork-join overlap matrix with pool size. Compare each thread count against the
+ * serial run; thread counts above the machine's core count only show scheduling overhead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParallelOverlapBenchmark {
+
+    @Param({"1000", "4000"})
+    public int count;
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int threads;
+
+    private List<FlatViewFrustum> frustums;
+    private ForkJoinPool pool;
+    private final BatchCollisionDetector detector = new BatchCollisionDetector();
+    private final OverlapMatrix matrix = new OverlapMatrix();
+
+    @Setup
+    public void setUp() {
+        frustums = FrustumFixtures.scatter(count, 7);
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public OverlapMatrix serial() {
+        detector.computeOverlapMatrix(frustums, matrix);
+        return matrix;
+    }
+
+    @Benchmark
+    public OverlapMatrix forkJoin() {
+        detector.computeOverlapMatrix(frustums, matrix, pool);
+        return matrix;
+    }
+}
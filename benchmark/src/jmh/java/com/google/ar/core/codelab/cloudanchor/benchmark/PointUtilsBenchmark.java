@@ -0,0 +1,81 @@
+package com.google.ar.core.codelab.cloudanchor.benchmark;
+
+import com.google.ar.core.codelab.cloudanchor.model.AnchorPose;
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.ViewConfig;
+import com.google.ar.core.codelab.cloudanchor.model.ViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.rendering.PointUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.vecmath.Vector3f;
+
+/** The per-frame frustum construction done by CloudAnchorManager.onUpdate(). */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PointUtilsBenchmark {
+
+    private final ViewConfig viewConfig = FrustumFixtures.viewConfig();
+    private final ViewFrustum viewFrustum = new ViewFrustum();
+    private final FlatViewFrustum flatViewFrustum = new FlatViewFrustum();
+    private final float[] worldCoords = new float[PointUtils.FRUSTUM_COORDS_SIZE];
+    private float[] projectionMatrix;
+    private float[] viewMatrix;
+    private AnchorPose anchorPose;
+
+    @Setup
+    public void setUp() {
+        projectionMatrix = FrustumFixtures.projectionMatrix();
+        viewMatrix = FrustumFixtures.viewMatrix(new Vector3f(0.5f, 1.5f, 2), new Vector3f(0, 0, 0));
+        // A quarter turn about y, offset from the origin.
+        float halfSqrt2 = (float) Math.sqrt(0.5);
+        anchorPose = new AnchorPose(new float[]{0.3f, -0.2f, -1.0f}, new float[]{0, halfSqrt2, 0, halfSqrt2});
+        PointUtils.computeFrustumWorldCoords(worldCoords, viewConfig, FrustumFixtures.SCREEN_WIDTH,
+                FrustumFixtures.SCREEN_HEIGHT, projectionMatrix, viewMatrix, FrustumFixtures.NEAR_CLIP,
+                FrustumFixtures.FAR_CLIP);
+    }
+
+    @Benchmark
+    public ViewFrustum setFrustumWorldCoords() {
+        PointUtils.setFrustumWorldCoords(viewFrustum, viewConfig, FrustumFixtures.SCREEN_WIDTH,
+                FrustumFixtures.SCREEN_HEIGHT, projectionMatrix, viewMatrix, FrustumFixtures.NEAR_CLIP,
+                FrustumFixtures.FAR_CLIP);
+        return viewFrustum;
+    }
+
+    /** Restores the world coordinates first, since the transform works in place. */
+    @Benchmark
+    public ViewFrustum transformFrustumCoords() {
+        List<Vector3f> points = viewFrustum.getPoints();
+        for (int i = 0; i < 8; i++) {
+            points.get(i).set(worldCoords[i * 3], worldCoords[i * 3 + 1], worldCoords[i * 3 + 2]);
+        }
+        PointUtils.transformFrustumCoords(viewFrustum, anchorPose);
+        return viewFrustum;
+    }
+
+    @Benchmark
+    public FlatViewFrustum setFrustumWorldCoordsFlat() {
+        PointUtils.setFrustumWorldCoords(flatViewFrustum, viewConfig, FrustumFixtures.SCREEN_WIDTH,
+                FrustumFixtures.SCREEN_HEIGHT, projectionMatrix, viewMatrix, FrustumFixtures.NEAR_CLIP,
+                FrustumFixtures.FAR_CLIP);
+        return flatViewFrustum;
+    }
+
+    @Benchmark
+    public FlatViewFrustum transformFrustumCoordsFlat() {
+        flatViewFrustum.setVertices(worldCoords);
+        PointUtils.transformFrustumCoords(flatViewFrustum, anchorPose);
+        return flatViewFrustum;
+    }
+}
@@ -0,0 +1,81 @@
+package com.google.ar.core.codelab.cloudanchor.benchmark;
+
+import com.google.ar.core.codelab.cloudanchor.model.AnchorPose;
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.ViewConfig;
+import com.google.ar.core.codelab.cloudanchor.rendering.PointUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * Many threads each building and anchoring their own frustum, as a simulation of many users
+ * would. The globalLock variant takes one JVM-wide lock around the same work, the way every
+ * PointUtils call used to. Change the thread count with {@code -t}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+public class PointUtilsThroughputBenchmark {
+
+    private static final Object GLOBAL_LOCK = new Object();
+
+    private final ViewConfig viewConfig = FrustumFixtures.viewConfig();
+    private final FlatViewFrustum frustum = new FlatViewFrustum();
+    private final PointUtils.Scratch scratch = new PointUtils.Scratch();
+    private float[] projectionMatrix;
+    private float[] viewMatrix;
+    private AnchorPose anchorPose;
+
+    @Setup
+    public void setUp() {
+        // A different camera per thread, so no two threads share inputs.
+        Random random = new Random(Thread.currentThread().getId());
+        projectionMatrix = FrustumFixtures.projectionMatrix();
+        viewMatrix = FrustumFixtures.viewMatrix(
+                new Vector3f(random.nextFloat() * 4, 1.5f, random.nextFloat() * 4), new Vector3f(0, 0, 0));
+        float halfSqrt2 = (float) Math.sqrt(0.5);
+        anchorPose = new AnchorPose(new float[]{0.3f, -0.2f, -1.0f}, new float[]{0, halfSqrt2, 0, halfSqrt2});
+    }
+
+    @Benchmark
+    public FlatViewFrustum threadLocalScratch() {
+        return computeFrame();
+    }
+
+    @Benchmark
+    public FlatViewFrustum callerScratch() {
+        PointUtils.setFrustumWorldCoords(scratch, frustum, viewConfig, FrustumFixtures.SCREEN_WIDTH,
+                FrustumFixtures.SCREEN_HEIGHT, projectionMatrix, viewMatrix, FrustumFixtures.NEAR_CLIP,
+                FrustumFixtures.FAR_CLIP);
+        PointUtils.transformFrustumCoords(scratch, frustum, anchorPose);
+        return frustum;
+    }
+
+    @Benchmark
+    public FlatViewFrustum globalLock() {
+        synchronized (GLOBAL_LOCK) {
+            return computeFrame();
+        }
+    }
+
+    private FlatViewFrustum computeFrame() {
+        PointUtils.setFrustumWorldCoords(frustum, viewConfig, FrustumFixtures.SCREEN_WIDTH,
+                FrustumFixtures.SCREEN_HEIGHT, projectionMatrix, viewMatrix, FrustumFixtures.NEAR_CLIP,
+                FrustumFixtures.FAR_CLIP);
+        PointUtils.transformFrustumCoords(frustum, anchorPose);
+        return frustum;
+    }
+}
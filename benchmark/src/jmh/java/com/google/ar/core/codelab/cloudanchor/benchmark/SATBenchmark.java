@@ -0,0 +1,93 @@
+package com.google.ar.core.codelab.cloudanchor.benchmark;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.ViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.rendering.SATUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * Pairwise SAT collision and normal generation, for each frustum placement and with both the
+ * closed-form and the SVD face normals.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SATBenchmark {
+
+    @Param({"OVERLAPPING", "DISJOINT", "TOUCHING"})
+    public FrustumFixtures.Scenario scenario;
+
+    @Param({"NEWELL", "SVD"})
+    public String normals;
+
+    private ViewFrustum a;
+    private ViewFrustum b;
+    private List<Vector3f> verticesB;
+    private List<Vector3f> normalsB;
+    private FlatViewFrustum flatA;
+    private FlatViewFrustum flatB;
+    private final float[] flatNormals = new float[FlatViewFrustum.NORMALS_SIZE];
+
+    @Setup
+    public void setUp() {
+        SATUtils.useSvdNormals = "SVD".equals(normals);
+        ViewFrustum[] pair = FrustumFixtures.pair(scenario);
+        a = pair[0];
+        b = pair[1];
+        verticesB = b.getPoints();
+        normalsB = new ArrayList<>();
+        SATUtils.generateNormals(b, normalsB);
+        flatA = new FlatViewFrustum(a.getPoints());
+        flatB = new FlatViewFrustum(b.getPoints());
+    }
+
+    @TearDown
+    public void tearDown() {
+        SATUtils.useSvdNormals = false;
+    }
+
+    @Benchmark
+    public boolean detectCollision() {
+        return SATUtils.detectCollision(a, b);
+    }
+
+    /** The path CloudAnchorManager takes, with the partner's normals received over the network. */
+    @Benchmark
+    public boolean detectCollisionWithPartnerNormals() {
+        return SATUtils.detectCollision(a, verticesB, normalsB);
+    }
+
+    @Benchmark
+    public List<Vector3f> generateNormals() {
+        List<Vector3f> result = new ArrayList<>(6);
+        SATUtils.generateNormals(a, result);
+        return result;
+    }
+
+    /** Packed frustums with cached normals; the normals parameter does not apply. */
+    @Benchmark
+    public boolean detectCollisionFlat() {
+        return SATUtils.detectCollision(flatA, flatB);
+    }
+
+    @Benchmark
+    public float[] generateNormalsFlat() {
+        SATUtils.generateNormals(flatA.getVertices(), flatNormals);
+        return flatNormals;
+    }
+}
@@ -0,0 +1,270 @@
+package com.google.ar.core.codelab.cloudanchor.benchmark;
+
+import com.google.ar.core.codelab.cloudanchor.model.AnchorPose;
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.FrustumSnapshot;
+import com.google.ar.core.codelab.cloudanchor.model.ViewConfig;
+import com.google.ar.core.codelab.cloudanchor.rendering.PointUtils;
+import com.google.ar.core.codelab.cloudanchor.rendering.SATUtils;
+import com.google.ar.core.codelab.cloudanchor.session.LatencyHistogram;
+import com.google.ar.core.codelab.cloudanchor.session.LoopbackSessionBackend;
+import com.google.ar.core.codelab.cloudanchor.session.LoopbackSessionHub;
+import com.google.ar.core.codelab.cloudanchor.session.SessionSyncBackend;
+import com.google.ar.core.codelab.cloudanchor.session.SyncLatencyTracker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * Drives thousands of simulated participants through a {@link LoopbackSessionHub}. Each one walks
+ * a circle around its session's anchor, and every tick computes its frustum (PointUtils), moves it
+ * into anchor space and offers it to push mode; every frustum that arrives from a partner is
+ * tested against its own (SATUtils) and closes a sync trace. Participants also ask their partners
+ * for an update now and then, so the full request round trip is measured.
+ *
+ * <p>Reports throughput, tick latency and the {@link SyncLatencyTracker} stages merged over all
+ * participants. Run with {@code ./gradlew :benchmark:loadTest -PloadArgs="participants=4000"};
+ * arguments are {@code name=value} pairs overriding the fields below.
+ */
+public class SessionLoadGenerator {
+    private int participants = 2000;
+    private int sessionSize = 4;
+    private int durationSeconds = 10;
+    private int tickHz = 30;
+    private float publishHz = 5;
+    private float publishTolerance = 0.01f;
+    /** Chance per tick that a participant asks its partners for an update. */
+    private double requestProbability = 0.01;
+    private double latencyMillis = 40;
+    private double jitterMillis = 20;
+    private int networkThreads = 4;
+    private int tickThreads = Runtime.getRuntime().availableProcessors();
+
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder publishes = new LongAdder();
+    private final LongAdder collisionTests = new LongAdder();
+    private final LongAdder overlaps = new LongAdder();
+    // Collision tests run on the network threads.
+    private final ThreadLocal<FlatViewFrustum> ourFrustum = ThreadLocal.withInitial(FlatViewFrustum::new);
+
+    /** One simulated device. Ticked by a single tick thread. */
+    private final class Participant implements SessionSyncBackend.PartnerFrustumListener {
+        final LoopbackSessionBackend backend;
+        final AnchorPose anchorPose;
+        final PointUtils.Scratch scratch = new PointUtils.Scratch();
+        final FlatViewFrustum frustum = new FlatViewFrustum();
+        final AtomicReference<FrustumSnapshot> latestFrustum = new AtomicReference<>();
+        final float radius;
+        final float radiansPerSecond;
+        final float phase;
+
+        Participant(LoopbackSessionBackend backend, AnchorPose anchorPose, Random random) {
+            this.backend = backend;
+            this.anchorPose = anchorPose;
+            this.radius = 1 + 3 * random.nextFloat();
+            this.radiansPerSecond = 0.2f + 0.6f * random.nextFloat();
+            this.phase = (float) (2 * Math.PI * random.nextFloat());
+            backend.setPartnerFrustumListener(this);
+            backend.setViewFrustumSupplier(latestFrustum::get);
+        }
+
+        void tick(float seconds, float[] projectionMatrix, ViewConfig viewConfig) {
+            float angle = phase + radiansPerSecond * seconds;
+            Vector3f eye = new Vector3f(radius * (float) Math.cos(angle), 1.5f, radius * (float) Math.sin(angle));
+            float[] viewMatrix = FrustumFixtures.viewMatrix(eye, new Vector3f(0, 0, 0));
+            PointUtils.setFrustumWorldCoords(scratch, frustum, viewConfig, FrustumFixtures.SCREEN_WIDTH,
+                    FrustumFixtures.SCREEN_HEIGHT, projectionMatrix, viewMatrix, FrustumFixtures.NEAR_CLIP,
+                    FrustumFixtures.FAR_CLIP);
+            PointUtils.transformFrustumCoords(scratch, frustum, anchorPose);
+            latestFrustum.set(FrustumSnapshot.of(frustum));
+            if (backend.publishViewFrustum(frustum)) {
+                publishes.increment();
+            }
+            if (ThreadLocalRandom.current().nextDouble() < requestProbability) {
+                backend.requestPartnerToUpdate();
+            }
+        }
+
+        @Override
+        public void onPartnerFrustumChanged(String partnerUid, FlatViewFrustum partnerFrustum) {
+            FrustumSnapshot snapshot = latestFrustum.get();
+            if (snapshot == null) {
+                return;
+            }
+            FlatViewFrustum ours = ourFrustum.get();
+            snapshot.copyTo(ours);
+            if (SATUtils.detectCollision(ours, partnerFrustum)) {
+                overlaps.increment();
+            }
+            collisionTests.increment();
+            backend.recordCollisionResult(partnerUid);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        SessionLoadGenerator generator = new SessionLoadGenerator();
+        for (String arg : args) {
+            generator.set(arg);
+        }
+        generator.run();
+    }
+
+    private void set(String arg) {
+        int equals = arg.indexOf('=');
+        if (equals < 0) {
+            throw new IllegalArgumentException("Expected name=value, got " + arg);
+        }
+        String name = arg.substring(0, equals);
+        String value = arg.substring(equals + 1);
+        switch (name) {
+            case "participants": participants = Integer.parseInt(value); break;
+            case "sessionSize": sessionSize = Integer.parseInt(value); break;
+            case "durationSeconds": durationSeconds = Integer.parseInt(value); break;
+            case "tickHz": tickHz = Integer.parseInt(value); break;
+            case "publishHz": publishHz = Float.parseFloat(value); break;
+            case "publishTolerance": publishTolerance = Float.parseFloat(value); break;
+            case "requestProbability": requestProbability = Double.parseDouble(value); break;
+            case "latencyMillis": latencyMillis = Double.parseDouble(value); break;
+            case "jitterMillis": jitterMillis = Double.parseDouble(value); break;
+            case "networkThreads": networkThreads = Integer.parseInt(value); break;
+            case "tickThreads": tickThreads = Integer.parseInt(value); break;
+            default: throw new IllegalArgumentException("Unknown argument " + name);
+        }
+    }
+
+    private void run() throws InterruptedException {
+        System.out.printf(Locale.US, "%d participants in sessions of %d, %d s at %d Hz, publishing at up to %.1f Hz,"
+                        + " %.0f+%.0f ms latency, %d network and %d tick threads%n", participants, sessionSize,
+                durationSeconds, tickHz, publishHz, latencyMillis, jitterMillis, networkThreads, tickThreads);
+        LoopbackSessionHub hub = new LoopbackSessionHub(networkThreads, latencyMillis, jitterMillis);
+        List<Participant> all = setUpSessions(hub);
+
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long tickNanos = TimeUnit.SECONDS.toNanos(1) / tickHz;
+        List<LatencyHistogram> tickLatencies = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(tickThreads);
+        for (int t = 0; t < tickThreads; t++) {
+            List<Participant> slice = all.subList(all.size() * t / tickThreads, all.size() * (t + 1) / tickThreads);
+            LatencyHistogram tickLatency = new LatencyHistogram();
+            tickLatencies.add(tickLatency);
+            Thread thread = new Thread(() -> {
+                try {
+                    tickLoop(slice, tickLatency, startNanos, endNanos, tickNanos);
+                } finally {
+                    done.countDown();
+                }
+            }, "Tick-" + t);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long sent = hub.getSentCount();
+        long delivered = hub.getDeliveredCount();
+        hub.shutdown();
+        report(all, tickLatencies, seconds, sent, delivered);
+    }
+
+    // Reserves a short code per session, stores an anchor ID under it, and has every member look
+    // it up and join, the way hosting and resolving devices would.
+    private List<Participant> setUpSessions(LoopbackSessionHub hub) {
+        Random random = new Random(42);
+        List<Participant> all = new ArrayList<>(participants);
+        List<CompletableFuture<Void>> joined = new ArrayList<>();
+        for (int first = 0; first < participants; first += sessionSize) {
+            AnchorPose anchorPose = new AnchorPose(random.nextFloat() * 10, 0, random.nextFloat() * 10,
+                    0, (float) Math.sin(first), 0, (float) Math.cos(first));
+            List<Participant> members = new ArrayList<>();
+            for (int i = first; i < Math.min(first + sessionSize, participants); i++) {
+                members.add(new Participant(hub.connect("participant-" + i), anchorPose, random));
+            }
+            all.addAll(members);
+            LoopbackSessionBackend host = members.get(0).backend;
+            joined.add(host.nextShortCodeAsync().thenCompose(shortCode -> {
+                host.storeUsingShortCode(shortCode, "cloud-anchor-" + shortCode);
+                List<CompletableFuture<?>> lookups = new ArrayList<>();
+                for (Participant member : members) {
+                    lookups.add(member.backend.getCloudAnchorIdAsync(shortCode).thenRun(() -> {
+                        member.backend.joinSession(shortCode);
+                        member.backend.enablePushMode(publishHz, publishTolerance);
+                    }));
+                }
+                return CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0]));
+            }));
+        }
+        CompletableFuture.allOf(joined.toArray(new CompletableFuture<?>[0])).join();
+        return all;
+    }
+
+    private void tickLoop(List<Participant> slice, LatencyHistogram tickLatency, long startNanos, long endNanos,
+                          long tickNanos) {
+        float[] projectionMatrix = FrustumFixtures.projectionMatrix();
+        ViewConfig viewConfig = FrustumFixtures.viewConfig();
+        long nextTick = startNanos;
+        while (nextTick < endNanos) {
+            long now = System.nanoTime();
+            if (now < nextTick) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(nextTick - now);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            float seconds = (nextTick - startNanos) / 1e9f;
+            for (Participant participant : slice) {
+                long tickStart = System.nanoTime();
+                participant.tick(seconds, projectionMatrix, viewConfig);
+                tickLatency.record(System.nanoTime() - tickStart);
+            }
+            ticks.add(slice.size());
+            nextTick += tickNanos;
+        }
+    }
+
+    private void report(List<Participant> all, List<LatencyHistogram> tickLatencies, double seconds, long sent,
+                        long delivered) {
+        LatencyHistogram tickLatency = new LatencyHistogram();
+        for (LatencyHistogram histogram : tickLatencies) {
+            tickLatency.add(histogram);
+        }
+        Map<SyncLatencyTracker.Stage, LatencyHistogram> stages = new HashMap<>();
+        for (SyncLatencyTracker.Stage stage : SyncLatencyTracker.Stage.values()) {
+            stages.put(stage, new LatencyHistogram());
+        }
+        for (Participant participant : all) {
+            SyncLatencyTracker.Snapshot snapshot = participant.backend.getSyncLatency();
+            for (SyncLatencyTracker.Stage stage : SyncLatencyTracker.Stage.values()) {
+                stages.get(stage).add(snapshot.getStage(stage));
+            }
+        }
+
+        System.out.printf(Locale.US, "Ran %.1f s%n", seconds);
+        System.out.printf(Locale.US, "  ticks            %,12.0f /s%n", ticks.sum() / seconds);
+        System.out.printf(Locale.US, "  publishes        %,12.0f /s%n", publishes.sum() / seconds);
+        System.out.printf(Locale.US, "  messages sent    %,12.0f /s%n", sent / seconds);
+        System.out.printf(Locale.US, "  messages arrived %,12.0f /s%n", delivered / seconds);
+        System.out.printf(Locale.US, "  collision tests  %,12.0f /s (%.1f%% overlapping)%n",
+                collisionTests.sum() / seconds, 100.0 * overlaps.sum() / Math.max(1, collisionTests.sum()));
+        System.out.printf(Locale.US, "  tick             p50 %8.1f us  p99 %8.1f us%n",
+                tickLatency.getValueAtPercentile(50) / 1e3, tickLatency.getValueAtPercentile(99) / 1e3);
+        for (SyncLatencyTracker.Stage stage : SyncLatencyTracker.Stage.values()) {
+            LatencyHistogram histogram = stages.get(stage);
+            System.out.printf(Locale.US, "  %-18s p50 %8.1f ms  p99 %8.1f ms  (%d samples)%n", stage,
+                    histogram.getValueAtPercentile(50) / 1e3, histogram.getValueAtPercentile(99) / 1e3,
+                    histogram.getCount());
+        }
+    }
+}
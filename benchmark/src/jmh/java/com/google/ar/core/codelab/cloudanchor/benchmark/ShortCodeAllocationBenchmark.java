@@ -0,0 +1,84 @@
+package com.google.ar.core.codelab.cloudanchor.benchmark;
+
+import com.google.ar.core.codelab.cloudanchor.session.InMemoryLeaseStore;
+import com.google.ar.core.codelab.cloudanchor.session.ShortCodeAllocator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test for short code allocation: every thread is a client hosting anchors back to back
+ * against one shared {@link InMemoryLeaseStore}, which simulates Firebase transaction round trips
+ * and retries. A block size of 1 is the old one-transaction-per-code scheme. The sample mode
+ * reports latency percentiles; transaction and retry counts are printed at the end of each trial.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(8)
+public class ShortCodeAllocationBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Backend {
+        @Param({"1", "10", "50"})
+        public int blockSize;
+
+        @Param({"100"})
+        public int roundTripMicros;
+
+        InMemoryLeaseStore store;
+        final LongAdder codesIssued = new LongAdder();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            store = new InMemoryLeaseStore(142, TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+        }
+
+        @TearDown(Level.Trial)
+        public void report() {
+            long codes = codesIssued.sum();
+            System.out.println();
+            System.out.printf("block %d: %d codes, %d transactions (%.3f per code), %d retries, "
+                            + "%d codes released%n", blockSize, codes, store.getTransactionCount(),
+                    codes == 0 ? 0.0 : (double) store.getTransactionCount() / codes,
+                    store.getRetryCount(), store.getReleasedCodeCount());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        Backend backend;
+        ShortCodeAllocator allocator;
+        final int[] shortCode = new int[1];
+
+        @Setup(Level.Trial)
+        public void setUp(Backend backend) {
+            this.backend = backend;
+            allocator = new ShortCodeAllocator(backend.store, backend.blockSize);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            allocator.releaseUnused();
+        }
+    }
+
+    /** The in-memory store completes on the calling thread, so the code is ready on return. */
+    @Benchmark
+    public int nextShortCode(Client client) {
+        client.allocator.nextShortCode(code -> client.shortCode[0] = code);
+        client.backend.codesIssued.increment();
+        return client.shortCode[0];
+    }
+}
@@ -0,0 +1,162 @@
+package com.google.ar.core.codelab.cloudanchor.benchmark;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.rendering.SATUtils;
+import com.google.ar.core.codelab.cloudanchor.rendering.SeparatingAxisCache;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * All-pairs overlap tests of a session replaying recorded camera trajectories, one frame per
+ * operation, with and without a {@link SeparatingAxisCache} per pair. The trajectories are
+ * recorded up front from people walking and looking around a shared room at 30 Hz; only the
+ * moving fraction of them changes each frame, the rest stand still.
+ *
+ * <p>The cached benchmark reports how its tests were answered: {@code unchanged} without testing,
+ * {@code axisHits} by the last separating axis, out of {@code calls}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrajectoryCollisionBenchmark {
+    private static final int FRAME_COUNT = 300;
+    private static final float FRAME_SECONDS = 1 / 30f;
+    private static final float ROOM_SIZE = 8;
+
+    @Param({"16"})
+    public int cameras;
+
+    @Param({"1.0", "0.25"})
+    public double movingFraction;
+
+    /** Events counted by {@link #cached}, reset every iteration. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class CacheCounters {
+        public long unchanged;
+        public long axisHits;
+        public long calls;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            unchanged = 0;
+            axisHits = 0;
+            calls = 0;
+        }
+    }
+
+    private float[][][] recording;
+    private int movingCameras;
+    private FlatViewFrustum[] frustums;
+    private SeparatingAxisCache[] caches;
+    private int frame;
+
+    @Setup
+    public void setUp() {
+        recording = record(cameras, 42);
+        movingCameras = (int) Math.round(cameras * movingFraction);
+        frustums = new FlatViewFrustum[cameras];
+        for (int i = 0; i < cameras; i++) {
+            frustums[i] = new FlatViewFrustum();
+            frustums[i].setVertices(recording[0][i]);
+        }
+        caches = new SeparatingAxisCache[cameras * cameras];
+        for (int i = 0; i < caches.length; i++) {
+            caches[i] = new SeparatingAxisCache();
+        }
+    }
+
+    @Benchmark
+    public int uncached() {
+        advance();
+        int overlapping = 0;
+        for (int i = 0; i < cameras; i++) {
+            for (int j = i + 1; j < cameras; j++) {
+                if (SATUtils.detectCollision(frustums[i], frustums[j])) {
+                    overlapping++;
+                }
+            }
+        }
+        return overlapping;
+    }
+
+    @Benchmark
+    public int cached(CacheCounters counters) {
+        advance();
+        int overlapping = 0;
+        for (int i = 0; i < cameras; i++) {
+            for (int j = i + 1; j < cameras; j++) {
+                SeparatingAxisCache cache = caches[i * cameras + j];
+                long unchanged = cache.getUnchangedCount();
+                long axisHits = cache.getAxisHitCount();
+                if (cache.detectCollision(frustums[i], frustums[j])) {
+                    overlapping++;
+                }
+                counters.unchanged += cache.getUnchangedCount() - unchanged;
+                counters.axisHits += cache.getAxisHitCount() - axisHits;
+                counters.calls++;
+            }
+        }
+        return overlapping;
+    }
+
+    // Moves the moving cameras to the next recorded frame.
+    private void advance() {
+        frame = (frame + 1) % FRAME_COUNT;
+        for (int i = 0; i < movingCameras; i++) {
+            frustums[i].setVertices(recording[frame][i]);
+        }
+    }
+
+    /*
+     * Each camera walks with a smoothly changing velocity, bouncing off the walls, while its gaze
+     * turns slowly left and right. Returns the packed frustum corners of every camera per frame.
+     */
+    private static float[][][] record(int cameras, long seed) {
+        Random random = new Random(seed);
+        float[][][] recording = new float[FRAME_COUNT][cameras][];
+        for (int camera = 0; camera < cameras; camera++) {
+            Vector3f position = new Vector3f(random.nextFloat() * ROOM_SIZE, 1.5f, random.nextFloat() * ROOM_SIZE);
+            Vector3f velocity = new Vector3f();
+            float yaw = (float) (random.nextFloat() * 2 * Math.PI);
+            float yawRate = 0;
+            for (int frame = 0; frame < FRAME_COUNT; frame++) {
+                velocity.x = clamp(velocity.x + (float) random.nextGaussian() * 0.05f, 0.7f);
+                velocity.z = clamp(velocity.z + (float) random.nextGaussian() * 0.05f, 0.7f);
+                position.scaleAdd(FRAME_SECONDS, velocity, position);
+                if (position.x < 0 || position.x > ROOM_SIZE) {
+                    velocity.x = -velocity.x;
+                }
+                if (position.z < 0 || position.z > ROOM_SIZE) {
+                    velocity.z = -velocity.z;
+                }
+                yawRate = clamp(yawRate + (float) random.nextGaussian() * 0.1f, 1);
+                yaw += yawRate * FRAME_SECONDS;
+
+                Vector3f target = new Vector3f(position.x + (float) Math.cos(yaw), 1.4f,
+                        position.z + (float) Math.sin(yaw));
+                recording[frame][camera] =
+                        new FlatViewFrustum(FrustumFixtures.frustum(position, target).getPoints()).getVertices();
+            }
+        }
+        return recording;
+    }
+
+    private static float clamp(float value, float limit) {
+        return Math.max(-limit, Math.min(limit, value));
+    }
+}
@@ -0,0 +1,78 @@
+package com.google.ar.core.codelab.cloudanchor.benchmark;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.session.VoxelCoverageGrid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * Adding frustums to a {@link VoxelCoverageGrid} of the size the app uses, one per operation,
+ * from {@code participants} people standing around the anchor and looking about; and exporting
+ * the grid. At 30 Hz, 32 participants need 960 adds per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VoxelCoverageBenchmark {
+    private static final int POOL_SIZE = 1024;
+    private static final float ROOM_SIZE = 16;
+
+    @Param({"0.25", "0.1"})
+    public float voxelSize;
+
+    @Param({"32"})
+    public int participants;
+
+    private VoxelCoverageGrid grid;
+    private FlatViewFrustum[] pool;
+    private String[] uids;
+    private char[] export;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        // 32 x 8 x 32 m around the anchor, like CloudAnchorManager's grid.
+        int sizeXZ = Math.round(32 / voxelSize);
+        int sizeY = Math.round(8 / voxelSize);
+        grid = new VoxelCoverageGrid(sizeXZ, sizeY, sizeXZ, voxelSize);
+        Random random = new Random(11);
+        pool = new FlatViewFrustum[POOL_SIZE];
+        for (int i = 0; i < POOL_SIZE; i++) {
+            Vector3f eye = new Vector3f(random.nextFloat() * ROOM_SIZE - ROOM_SIZE / 2, 0,
+                    random.nextFloat() * ROOM_SIZE - ROOM_SIZE / 2);
+            float yaw = (float) (random.nextFloat() * 2 * Math.PI);
+            Vector3f target = new Vector3f(eye.x + (float) Math.cos(yaw), random.nextFloat() * 0.6f - 0.3f,
+                    eye.z + (float) Math.sin(yaw));
+            pool[i] = new FlatViewFrustum(FrustumFixtures.frustum(eye, target).getPoints());
+        }
+        uids = new String[participants];
+        for (int i = 0; i < participants; i++) {
+            uids[i] = "participant" + i;
+        }
+        export = new char[grid.getVoxelCount()];
+    }
+
+    @Benchmark
+    public int add() {
+        int i = next++;
+        return grid.add(uids[i % participants], pool[i & (POOL_SIZE - 1)]);
+    }
+
+    @Benchmark
+    public char[] copyCounts() {
+        grid.copyCounts(export);
+        return export;
+    }
+}
@@ -0,0 +1,108 @@
+package com.google.ar.core.codelab.cloudanchor.model;
+
+/**
+ * A rigid transform, stored as a unit rotation quaternion (x, y, z, w) followed by a translation,
+ * the same convention as ARCore's {@code Pose}. Build one from an ARCore pose with
+ * {@code new AnchorPose(pose.getTranslation(), pose.getRotationQuaternion())}, and keep it up to
+ * date with {@link #set(float[], float[])} rather than building a new one each frame.
+ */
+public class AnchorPose {
+    private float tx;
+    private float ty;
+    private float tz;
+    private float qx;
+    private float qy;
+    private float qz;
+    private float qw;
+
+    public AnchorPose(float[] translation, float[] rotation) {
+        this(translation[0], translation[1], translation[2], rotation[0], rotation[1], rotation[2], rotation[3]);
+    }
+
+    public AnchorPose(float tx, float ty, float tz, float qx, float qy, float qz, float qw) {
+        this.tx = tx;
+        this.ty = ty;
+        this.tz = tz;
+        this.qx = qx;
+        this.qy = qy;
+        this.qz = qz;
+        this.qw = qw;
+    }
+
+    /** Replaces the translation and the rotation quaternion (x, y, z, w) in place. */
+    public void set(float[] translation, float[] rotation) {
+        tx = translation[0];
+        ty = translation[1];
+        tz = translation[2];
+        qx = rotation[0];
+        qy = rotation[1];
+        qz = rotation[2];
+        qw = rotation[3];
+    }
+
+    public AnchorPose inverse() {
+        // The inverse rotation is the conjugate; the inverse translation is -(q^-1 * t).
+        float[] rotated = new float[3];
+        rotate(-qx, -qy, -qz, qw, tx, ty, tz, rotated, 0);
+        return new AnchorPose(-rotated[0], -rotated[1], -rotated[2], -qx, -qy, -qz, qw);
+    }
+
+    public float[] transformPoint(float[] point) {
+        float[] result = new float[3];
+        transformPoint(point, 0, result, 0);
+        return result;
+    }
+
+    /** Rotates then translates the point at {@code inOffset}. {@code in} and {@code out} may alias. */
+    public void transformPoint(float[] in, int inOffset, float[] out, int outOffset) {
+        rotate(qx, qy, qz, qw, in[inOffset], in[inOffset + 1], in[inOffset + 2], out, outOffset);
+        out[outOffset] += tx;
+        out[outOffset + 1] += ty;
+        out[outOffset + 2] += tz;
+    }
+
+    /**
+     * Applies the inverse of this pose to the point at {@code inOffset}, like
+     * {@code inverse().transformPoint(...)} but without building the inverse: removes the
+     * translation, then rotates by the conjugate. {@code in} and {@code out} may alias.
+     */
+    public void inverseTransformPoint(float[] in, int inOffset, float[] out, int outOffset) {
+        rotate(-qx, -qy, -qz, qw, in[inOffset] - tx, in[inOffset + 1] - ty, in[inOffset + 2] - tz,
+                out, outOffset);
+    }
+
+    public void getTranslation(float[] dest, int offset) {
+        dest[offset] = tx;
+        dest[offset + 1] = ty;
+        dest[offset + 2] = tz;
+    }
+
+    public void getRotationQuaternion(float[] dest, int offset) {
+        dest[offset] = qx;
+        dest[offset + 1] = qy;
+        dest[offset + 2] = qz;
+        dest[offset + 3] = qw;
+    }
+
+    /*
+     * Rotates (px, py, pz) by the unit quaternion (x, y, z, w), computing q * p * q^-1.
+     */
+    private static void rotate(float x, float y, float z, float w, float px, float py, float pz,
+                               float[] out, int outOffset) {
+        float ix = w * px + y * pz - z * py;
+        float iy = w * py + z * px - x * pz;
+        float iz = w * pz + x * py - y * px;
+        float iw = -x * px - y * py - z * pz;
+        out[outOffset] = ix * w - iw * x - iy * z + iz * y;
+        out[outOffset + 1] = iy * w - iw * y - iz * x + ix * z;
+        out[outOffset + 2] = iz * w - iw * z - ix * y + iy * x;
+    }
+
+    @Override
+    public String toString() {
+        return "AnchorPose{" +
+            "t=[" + tx + ", " + ty + ", " + tz + "]" +
+            ", q=[" + qx + ", " + qy + ", " + qz + ", " + qw + "]" +
+            '}';
+    }
+}
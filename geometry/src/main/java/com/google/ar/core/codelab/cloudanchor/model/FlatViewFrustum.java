@@ -0,0 +1,189 @@
+package com.google.ar.core.codelab.cloudanchor.model;
+
+import com.google.ar.core.codelab.cloudanchor.rendering.SATUtils;
+
+import java.util.List;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * A view frustum stored as primitive arrays: the eight corners packed as x, y, z triples in the
+ * same order as {@link ViewFrustum}, plus the six face normals, the six edge directions and the
+ * axis-aligned bounding box, which are computed on first use after the corners change and cached
+ * until the next change.
+ * Every change also bumps a {@link #getVersion() version}, so results derived from a frustum can
+ * be cached until it changes.
+ *
+ * <p>Not thread-safe; each instance should be written by one thread at a time.
+ */
+public class FlatViewFrustum {
+    public static final int VERTEX_COUNT = 8;
+    public static final int FACE_COUNT = 6;
+    public static final int VERTICES_SIZE = VERTEX_COUNT * 3;
+    public static final int NORMALS_SIZE = FACE_COUNT * 3;
+    /**
+     * Distinct edge directions of a frustum: across and down the far face, whose opposite edges and
+     * the near face's are parallel to them, and the four edges from the near face to the far face.
+     */
+    public static final int EDGE_COUNT = 6;
+    public static final int EDGES_SIZE = EDGE_COUNT * 3;
+    /** Layout of {@link #getBounds()}: min x, y, z followed by max x, y, z. */
+    public static final int BOUNDS_SIZE = 6;
+
+    private final float[] vertices = new float[VERTICES_SIZE];
+    private final float[] normals = new float[NORMALS_SIZE];
+    private final float[] edges = new float[EDGES_SIZE];
+    private final float[] bounds = new float[BOUNDS_SIZE];
+    private boolean normalsValid = false;
+    private boolean edgesValid = false;
+    private boolean boundsValid = false;
+    private long version = 0;
+
+    public FlatViewFrustum() {
+    }
+
+    public FlatViewFrustum(List<Vector3f> points) {
+        setVertices(points);
+    }
+
+    /** Returns a number that changes whenever the corners or normals are set. */
+    public long getVersion() {
+        return version;
+    }
+
+    /** Returns the packed corners. Callers must not modify the array; use the setters instead. */
+    public float[] getVertices() {
+        return vertices;
+    }
+
+    /** Returns the packed face normals, computing them first if the corners have changed. */
+    public float[] getNormals() {
+        if (!normalsValid) {
+            SATUtils.generateNormals(vertices, normals);
+            normalsValid = true;
+        }
+        return normals;
+    }
+
+    /** Returns the packed unit edge directions, computing them first if the corners have changed. */
+    public float[] getEdges() {
+        if (!edgesValid) {
+            SATUtils.generateEdges(vertices, edges);
+            edgesValid = true;
+        }
+        return edges;
+    }
+
+    /** Returns the axis-aligned bounding box, computing it first if the corners have changed. */
+    public float[] getBounds() {
+        if (!boundsValid) {
+            bounds[0] = bounds[1] = bounds[2] = Float.MAX_VALUE;
+            bounds[3] = bounds[4] = bounds[5] = -Float.MAX_VALUE;
+            for (int i = 0; i < VERTICES_SIZE; i += 3) {
+                for (int axis = 0; axis < 3; axis++) {
+                    float value = vertices[i + axis];
+                    bounds[axis] = Math.min(bounds[axis], value);
+                    bounds[axis + 3] = Math.max(bounds[axis + 3], value);
+                }
+            }
+            boundsValid = true;
+        }
+        return bounds;
+    }
+
+    public void setVertex(int index, float x, float y, float z) {
+        vertices[index * 3] = x;
+        vertices[index * 3 + 1] = y;
+        vertices[index * 3 + 2] = z;
+        normalsValid = false;
+        edgesValid = false;
+        boundsValid = false;
+        version++;
+    }
+
+    /** Copies {@link #VERTICES_SIZE} packed coordinates from {@code source}. */
+    public void setVertices(float[] source) {
+        System.arraycopy(source, 0, vertices, 0, VERTICES_SIZE);
+        normalsValid = false;
+        edgesValid = false;
+        boundsValid = false;
+        version++;
+    }
+
+    public void setVertices(List<Vector3f> points) {
+        if (points.size() != VERTEX_COUNT) {
+            throw new IllegalArgumentException("A view frustum needs 8 points, got " + points.size());
+        }
+        for (int i = 0; i < VERTEX_COUNT; i++) {
+            Vector3f point = points.get(i);
+            vertices[i * 3] = point.x;
+            vertices[i * 3 + 1] = point.y;
+            vertices[i * 3 + 2] = point.z;
+        }
+        normalsValid = false;
+        edgesValid = false;
+        boundsValid = false;
+        version++;
+    }
+
+    /**
+     * Copies {@link #NORMALS_SIZE} packed face normals from {@code source}, for example ones sent
+     * along with the corners. They stay in use until the corners next change.
+     */
+    public void setNormals(float[] source) {
+        System.arraycopy(source, 0, normals, 0, NORMALS_SIZE);
+        normalsValid = true;
+        version++;
+    }
+
+    public void set(FlatViewFrustum other) {
+        System.arraycopy(other.vertices, 0, vertices, 0, VERTICES_SIZE);
+        System.arraycopy(other.normals, 0, normals, 0, NORMALS_SIZE);
+        System.arraycopy(other.edges, 0, edges, 0, EDGES_SIZE);
+        System.arraycopy(other.bounds, 0, bounds, 0, BOUNDS_SIZE);
+        normalsValid = other.normalsValid;
+        edgesValid = other.edgesValid;
+        boundsValid = other.boundsValid;
+        version++;
+    }
+
+    /** Writes the corners into {@code result}, reusing its points when it already holds eight. */
+    public void getVertices(List<Vector3f> result) {
+        copyInto(vertices, VERTEX_COUNT, result);
+    }
+
+    /** Writes the face normals into {@code result}, reusing its vectors when it already holds six. */
+    public void getNormals(List<Vector3f> result) {
+        copyInto(getNormals(), FACE_COUNT, result);
+    }
+
+    public ViewFrustum toViewFrustum() {
+        ViewFrustum viewFrustum = new ViewFrustum();
+        getVertices(viewFrustum.getPoints());
+        return viewFrustum;
+    }
+
+    static void copyInto(float[] source, int count, List<Vector3f> result) {
+        if (result.size() != count) {
+            result.clear();
+            for (int i = 0; i < count; i++) {
+                result.add(new Vector3f());
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            result.get(i).set(source[i * 3], source[i * 3 + 1], source[i * 3 + 2]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("FlatViewFrustum{");
+        for (int i = 0; i < VERTEX_COUNT; i++) {
+            builder.append(i == 0 ? "(" : ", (")
+                .append(vertices[i * 3]).append(", ")
+                .append(vertices[i * 3 + 1]).append(", ")
+                .append(vertices[i * 3 + 2]).append(')');
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,172 @@
+package com.google.ar.core.codelab.cloudanchor.model;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Compact wire format for an anchor-space view frustum, stored as one Base64 string.
+ *
+ * <p>Version 2 layout: a version byte, a flags byte, the scale as a float (metres per
+ * quantization step), then the 24 corner coordinates as signed shorts in {@link FlatViewFrustum}
+ * order. If {@link #FLAG_NORMALS} is set, the six face normals follow, each octahedral-encoded as
+ * two shorts. That is 54 bytes (72 Base64 characters) without normals and 78 bytes (104
+ * characters) with them, against roughly 1 KB of JSON for the vertex and normal lists. Without
+ * normals the receiver regenerates them from the corners.
+ *
+ * <p>Version 1 payloads (no flags byte, never any normals) are still decoded.
+ */
+public class FrustumCodec {
+    public static final byte VERSION = 2;
+    public static final byte VERSION_1 = 1;
+    public static final int FLAG_NORMALS = 1;
+
+    private static final int VERTICES_BYTES = FlatViewFrustum.VERTICES_SIZE * 2;
+    private static final int NORMALS_BYTES = FlatViewFrustum.FACE_COUNT * 2 * 2;
+    private static final int VERSION_1_SIZE = 1 + 4 + VERTICES_BYTES;
+    private static final int HEADER_SIZE = 1 + 1 + 4;
+    private static final float OCTAHEDRAL_SCALE = Short.MAX_VALUE;
+    // Marks a zero (degenerate face) normal; never produced for a unit vector.
+    private static final short ZERO_NORMAL = Short.MIN_VALUE;
+
+    /** Encodes the corners of {@code frustum}, leaving the normals to the receiver. */
+    public static String encode(FlatViewFrustum frustum) {
+        return encode(frustum, false);
+    }
+
+    /** Encodes the corners of {@code frustum} and, if {@code includeNormals}, its face normals. */
+    public static String encode(FlatViewFrustum frustum, boolean includeNormals) {
+        float[] vertices = frustum.getVertices();
+        float maxAbs = 0;
+        for (float value : vertices) {
+            maxAbs = Math.max(maxAbs, Math.abs(value));
+        }
+        float scale = maxAbs > 0 ? maxAbs / Short.MAX_VALUE : 1;
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + VERTICES_BYTES + (includeNormals ? NORMALS_BYTES : 0));
+        buffer.put(VERSION);
+        buffer.put((byte) (includeNormals ? FLAG_NORMALS : 0));
+        buffer.putFloat(scale);
+        for (float value : vertices) {
+            buffer.putShort((short) Math.round(value / scale));
+        }
+        if (includeNormals) {
+            float[] normals = frustum.getNormals();
+            for (int i = 0; i < FlatViewFrustum.NORMALS_SIZE; i += 3) {
+                putOctahedral(buffer, normals[i], normals[i + 1], normals[i + 2]);
+            }
+        }
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    /**
+     * Decodes {@code encoded} into {@code result}.
+     *
+     * @return false, leaving {@code result} untouched, if the string is not a supported encoding
+     */
+    public static boolean decode(String encoded, FlatViewFrustum result) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getDecoder().decode(encoded);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (bytes.length == 0) {
+            return false;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte version = buffer.get();
+        int flags;
+        if (version == VERSION_1) {
+            if (bytes.length != VERSION_1_SIZE) {
+                return false;
+            }
+            flags = 0;
+        } else if (version == VERSION) {
+            if (bytes.length < HEADER_SIZE) {
+                return false;
+            }
+            flags = buffer.get();
+            int expected = HEADER_SIZE + VERTICES_BYTES + ((flags & FLAG_NORMALS) != 0 ? NORMALS_BYTES : 0);
+            if (bytes.length != expected) {
+                return false;
+            }
+        } else {
+            return false;
+        }
+
+        float scale = buffer.getFloat();
+        for (int i = 0; i < FlatViewFrustum.VERTEX_COUNT; i++) {
+            result.setVertex(i, buffer.getShort() * scale, buffer.getShort() * scale, buffer.getShort() * scale);
+        }
+        if ((flags & FLAG_NORMALS) != 0) {
+            float[] normals = new float[FlatViewFrustum.NORMALS_SIZE];
+            for (int i = 0; i < FlatViewFrustum.NORMALS_SIZE; i += 3) {
+                getOctahedral(buffer, normals, i);
+            }
+            result.setNormals(normals);
+        }
+        return true;
+    }
+
+    /** Returns the largest per-coordinate difference between the corners of two frustums. */
+    public static float maxVertexDelta(float[] a, float[] b) {
+        float max = 0;
+        for (int i = 0; i < FlatViewFrustum.VERTICES_SIZE; i++) {
+            max = Math.max(max, Math.abs(a[i] - b[i]));
+        }
+        return max;
+    }
+
+    /*
+     * Projects the unit vector onto the octahedron |x| + |y| + |z| = 1 and unfolds the lower half
+     * over the upper one, giving two coordinates in [-1, 1].
+     */
+    private static void putOctahedral(ByteBuffer buffer, float x, float y, float z) {
+        float l1 = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        if (l1 == 0) {
+            buffer.putShort(ZERO_NORMAL);
+            buffer.putShort(ZERO_NORMAL);
+            return;
+        }
+        float u = x / l1;
+        float v = y / l1;
+        if (z < 0) {
+            float foldedU = (1 - Math.abs(v)) * signNotZero(u);
+            float foldedV = (1 - Math.abs(u)) * signNotZero(v);
+            u = foldedU;
+            v = foldedV;
+        }
+        buffer.putShort((short) Math.round(u * OCTAHEDRAL_SCALE));
+        buffer.putShort((short) Math.round(v * OCTAHEDRAL_SCALE));
+    }
+
+    private static void getOctahedral(ByteBuffer buffer, float[] result, int offset) {
+        short encodedU = buffer.getShort();
+        short encodedV = buffer.getShort();
+        if (encodedU == ZERO_NORMAL && encodedV == ZERO_NORMAL) {
+            result[offset] = 0;
+            result[offset + 1] = 0;
+            result[offset + 2] = 0;
+            return;
+        }
+        float x = encodedU / OCTAHEDRAL_SCALE;
+        float y = encodedV / OCTAHEDRAL_SCALE;
+        float z = 1 - Math.abs(x) - Math.abs(y);
+        if (z < 0) {
+            float unfoldedX = (1 - Math.abs(y)) * signNotZero(x);
+            float unfoldedY = (1 - Math.abs(x)) * signNotZero(y);
+            x = unfoldedX;
+            y = unfoldedY;
+        }
+        float inverseLength = (float) (1.0 / Math.sqrt(x * x + y * y + z * z));
+        result[offset] = x * inverseLength;
+        result[offset + 1] = y * inverseLength;
+        result[offset + 2] = z * inverseLength;
+    }
+
+    /* Like Math.signum, but 1 for zero, so normals in the x = 0 or y = 0 planes fold correctly. */
+    private static float signNotZero(float value) {
+        return value >= 0 ? 1f : -1f;
+    }
+}
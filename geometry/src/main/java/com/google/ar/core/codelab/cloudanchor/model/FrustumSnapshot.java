@@ -0,0 +1,40 @@
+package com.google.ar.core.codelab.cloudanchor.model;
+
+import java.util.List;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * An immutable copy of a {@link FlatViewFrustum}'s corners and face normals, safe to hand to other
+ * threads. Take one with {@link #of(FlatViewFrustum)} after the frustum changes, then read it
+ * anywhere without locking.
+ */
+public final class FrustumSnapshot {
+    private final float[] vertices;
+    private final float[] normals;
+
+    private FrustumSnapshot(float[] vertices, float[] normals) {
+        this.vertices = vertices;
+        this.normals = normals;
+    }
+
+    public static FrustumSnapshot of(FlatViewFrustum frustum) {
+        return new FrustumSnapshot(frustum.getVertices().clone(), frustum.getNormals().clone());
+    }
+
+    /** Loads the corners and normals into {@code result}, so no normals are recomputed. */
+    public void copyTo(FlatViewFrustum result) {
+        result.setVertices(vertices);
+        result.setNormals(normals);
+    }
+
+    /** Writes the corners into {@code result}, reusing its points when it already holds eight. */
+    public void getVertices(List<Vector3f> result) {
+        FlatViewFrustum.copyInto(vertices, FlatViewFrustum.VERTEX_COUNT, result);
+    }
+
+    /** Writes the face normals into {@code result}, reusing its vectors when it already holds six. */
+    public void getNormals(List<Vector3f> result) {
+        FlatViewFrustum.copyInto(normals, FlatViewFrustum.FACE_COUNT, result);
+    }
+}
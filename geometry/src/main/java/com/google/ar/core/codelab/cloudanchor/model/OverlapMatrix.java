@@ -0,0 +1,90 @@
+package com.google.ar.core.codelab.cloudanchor.model;
+
+import java.util.Arrays;
+
+/**
+ * A symmetric N x N overlap matrix stored as a bitset. Row i holds the bits for columns j > i,
+ * and every row starts on a fresh 64-bit word, so rows can be written concurrently by different
+ * threads without sharing a word.
+ */
+public class OverlapMatrix {
+    private int size = 0;
+    private int wordsPerRow = 0;
+    private long[] words = new long[0];
+
+    public OverlapMatrix() {
+    }
+
+    public OverlapMatrix(int size) {
+        reset(size);
+    }
+
+    /** Resizes the matrix to {@code size} x {@code size} and clears it, reusing storage if possible. */
+    public void reset(int size) {
+        this.size = size;
+        wordsPerRow = (size + 63) >>> 6;
+        int length = size * wordsPerRow;
+        if (words.length < length) {
+            words = new long[length];
+        } else {
+            Arrays.fill(words, 0, length, 0L);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean overlaps(int i, int j) {
+        if (i == j) {
+            return false;
+        }
+        int row = Math.min(i, j);
+        int column = Math.max(i, j);
+        return (words[row * wordsPerRow + (column >>> 6)] & (1L << column)) != 0;
+    }
+
+    public void set(int i, int j) {
+        if (i == j) {
+            return;
+        }
+        int row = Math.min(i, j);
+        int column = Math.max(i, j);
+        words[row * wordsPerRow + (column >>> 6)] |= 1L << column;
+    }
+
+    /**
+     * Overwrites word {@code wordIndex} of {@code row}. Bit b of the word is column
+     * {@code wordIndex * 64 + b}; bits for columns <= row must be zero.
+     */
+    public void setRowWord(int row, int wordIndex, long word) {
+        words[row * wordsPerRow + wordIndex] = word;
+    }
+
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    /** Returns the number of overlapping pairs. */
+    public int countOverlaps() {
+        int count = 0;
+        int length = size * wordsPerRow;
+        for (int i = 0; i < length; i++) {
+            count += Long.bitCount(words[i]);
+        }
+        return count;
+    }
+
+    /** Appends every overlapping pair to {@code result}, in row order. */
+    public void getPairs(OverlapPairs result) {
+        for (int row = 0; row < size; row++) {
+            for (int word = 0; word < wordsPerRow; word++) {
+                long bits = words[row * wordsPerRow + word];
+                while (bits != 0) {
+                    result.add(row, (word << 6) + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+        }
+    }
+}
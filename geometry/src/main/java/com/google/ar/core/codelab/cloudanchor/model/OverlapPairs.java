@@ -0,0 +1,55 @@
+package com.google.ar.core.codelab.cloudanchor.model;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of index pairs (i, j) with i < j, packed into one int array so that reusing an
+ * instance across frames does not allocate once it has grown to the working size.
+ */
+public class OverlapPairs {
+    private int[] pairs;
+    private int size = 0;
+
+    public OverlapPairs() {
+        this(16);
+    }
+
+    public OverlapPairs(int initialCapacity) {
+        pairs = new int[Math.max(1, initialCapacity) * 2];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getFirst(int index) {
+        return pairs[index * 2];
+    }
+
+    public int getSecond(int index) {
+        return pairs[index * 2 + 1];
+    }
+
+    public void add(int first, int second) {
+        if (size * 2 == pairs.length) {
+            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+        }
+        pairs[size * 2] = Math.min(first, second);
+        pairs[size * 2 + 1] = Math.max(first, second);
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("OverlapPairs{");
+        for (int i = 0; i < size; i++) {
+            builder.append(i == 0 ? "(" : ", (")
+                .append(getFirst(i)).append(", ").append(getSecond(i)).append(')');
+        }
+        return builder.append('}').toString();
+    }
+}
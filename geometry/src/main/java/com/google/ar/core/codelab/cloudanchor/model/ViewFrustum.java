@@ -1,7 +1,5 @@
 package com.google.ar.core.codelab.cloudanchor.model;
 
-import android.support.annotation.NonNull;
-
 import java.util.ArrayList;
 import java.util.List;
 
@@ -79,7 +77,6 @@ public class ViewFrustum {
         return myPoints;
     }
 
-    @NonNull
     @Override
     public synchronized String toString() {
         String topLeftNear = "TopLeftNear: " + getTopLeftNear().toString();
@@ -0,0 +1,216 @@
+package com.google.ar.core.codelab.cloudanchor.rendering;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.OverlapMatrix;
+import com.google.ar.core.codelab.cloudanchor.model.OverlapPairs;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds every overlapping pair in a set of view frustums.
+ *
+ * <p>A sweep-and-prune broad phase sorts the frustums' bounding boxes along the axis where they
+ * are most spread out, and only pairs whose boxes overlap on all three axes reach the SAT narrow
+ * phase, which tries the face normals and the edge cross products. Scratch buffers are kept
+ * between calls, so an instance reused with a stable number of frustums does not allocate. Not
+ * thread-safe; use one instance per thread.
+ *
+ * <p>For a full overlap matrix over a large session, {@link #computeOverlapMatrix(List,
+ * OverlapMatrix, ForkJoinPool)} splits the rows of the matrix across a fork-join pool instead.
+ */
+public class BatchCollisionDetector {
+    private long[] sortKeys = new long[0];
+    private float[] bounds = new float[0];
+
+    /**
+     * Clears {@code result} and fills it with the index pairs (i, j), i < j, of the frustums in
+     * {@code frustums} that overlap.
+     *
+     * @return the number of overlapping pairs
+     */
+    public int findOverlappingPairs(List<FlatViewFrustum> frustums, OverlapPairs result) {
+        result.clear();
+        int count = frustums.size();
+        if (count < 2) {
+            return 0;
+        }
+        ensureCapacity(count);
+
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(frustums.get(i).getBounds(), 0, bounds, i * FlatViewFrustum.BOUNDS_SIZE,
+                    FlatViewFrustum.BOUNDS_SIZE);
+        }
+        int axis = sweepAxis(count);
+
+        for (int i = 0; i < count; i++) {
+            float min = bounds[i * FlatViewFrustum.BOUNDS_SIZE + axis];
+            sortKeys[i] = ((long) sortableBits(min) << 32) | i;
+        }
+        Arrays.sort(sortKeys, 0, count);
+
+        for (int i = 0; i < count; i++) {
+            int first = (int) sortKeys[i];
+            int firstOffset = first * FlatViewFrustum.BOUNDS_SIZE;
+            float firstMax = bounds[firstOffset + axis + 3];
+            for (int j = i + 1; j < count; j++) {
+                int second = (int) sortKeys[j];
+                int secondOffset = second * FlatViewFrustum.BOUNDS_SIZE;
+                if (bounds[secondOffset + axis] > firstMax) {
+                    // Every later box starts even further along the sweep axis.
+                    break;
+                }
+                if (boundsOverlap(firstOffset, secondOffset)
+                        && SATUtils.detectCollision(frustums.get(first), frustums.get(second))) {
+                    result.add(first, second);
+                }
+            }
+        }
+        return result.size();
+    }
+
+    /** Fills {@code result} with the overlap of every pair, on the calling thread. */
+    public void computeOverlapMatrix(List<FlatViewFrustum> frustums, OverlapMatrix result) {
+        prepareMatrix(frustums, result);
+        computeRows(frustums, result, 0, frustums.size());
+    }
+
+    /**
+     * Fills {@code result} with the overlap of every pair, splitting the rows of the matrix across
+     * {@code pool}. Each row starts on its own bitset word, so tasks never write to the same word.
+     * The frustums must not be modified until this returns.
+     */
+    public void computeOverlapMatrix(List<FlatViewFrustum> frustums, OverlapMatrix result, ForkJoinPool pool) {
+        prepareMatrix(frustums, result);
+        pool.invoke(new OverlapRowsTask(frustums, result, 0, frustums.size()));
+    }
+
+    /*
+     * Computes the cached normals, edges and bounds up front, so that worker threads only read the
+     * frustums.
+     */
+    private static void prepareMatrix(List<FlatViewFrustum> frustums, OverlapMatrix result) {
+        result.reset(frustums.size());
+        for (FlatViewFrustum frustum : frustums) {
+            frustum.getNormals();
+            frustum.getEdges();
+            frustum.getBounds();
+        }
+    }
+
+    private static void computeRows(List<FlatViewFrustum> frustums, OverlapMatrix result, int fromRow, int toRow) {
+        int count = frustums.size();
+        int wordsPerRow = result.getWordsPerRow();
+        for (int i = fromRow; i < toRow; i++) {
+            FlatViewFrustum first = frustums.get(i);
+            float[] firstBounds = first.getBounds();
+            // Words left of the diagonal stay zero from OverlapMatrix.reset().
+            for (int word = (i + 1) >>> 6; word < wordsPerRow; word++) {
+                long bits = 0;
+                int end = Math.min(count, (word + 1) << 6);
+                for (int j = Math.max(i + 1, word << 6); j < end; j++) {
+                    FlatViewFrustum second = frustums.get(j);
+                    if (boundsOverlap(firstBounds, second.getBounds())
+                            && SATUtils.detectCollision(first, second)) {
+                        bits |= 1L << j;
+                    }
+                }
+                result.setRowWord(i, word, bits);
+            }
+        }
+    }
+
+    private static boolean boundsOverlap(float[] a, float[] b) {
+        return a[0] <= b[3] && b[0] <= a[3]
+                && a[1] <= b[4] && b[1] <= a[4]
+                && a[2] <= b[5] && b[2] <= a[5];
+    }
+
+    /* Splits a range of rows in two halves of roughly equal pair count, down to a leaf size. */
+    private static final class OverlapRowsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private static final long LEAF_PAIRS = 4096;
+
+        private final List<FlatViewFrustum> frustums;
+        private final OverlapMatrix result;
+        private final int fromRow;
+        private final int toRow;
+
+        OverlapRowsTask(List<FlatViewFrustum> frustums, OverlapMatrix result, int fromRow, int toRow) {
+            this.frustums = frustums;
+            this.result = result;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected void compute() {
+            int count = frustums.size();
+            long pairs = 0;
+            for (int row = fromRow; row < toRow; row++) {
+                pairs += count - 1 - row;
+            }
+            if (toRow - fromRow <= 1 || pairs <= LEAF_PAIRS) {
+                computeRows(frustums, result, fromRow, toRow);
+                return;
+            }
+
+            int splitRow = fromRow;
+            long firstHalf = 0;
+            while (splitRow < toRow - 1 && firstHalf * 2 < pairs) {
+                firstHalf += count - 1 - splitRow;
+                splitRow++;
+            }
+            invokeAll(new OverlapRowsTask(frustums, result, fromRow, splitRow),
+                    new OverlapRowsTask(frustums, result, splitRow, toRow));
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (sortKeys.length < count) {
+            sortKeys = new long[count];
+            bounds = new float[count * FlatViewFrustum.BOUNDS_SIZE];
+        }
+    }
+
+    /* Picks the axis with the largest variance of box centres, which prunes the most pairs. */
+    private int sweepAxis(int count) {
+        int bestAxis = 0;
+        double bestVariance = -1;
+        for (int axis = 0; axis < 3; axis++) {
+            double sum = 0;
+            double sumSquares = 0;
+            for (int i = 0; i < count; i++) {
+                int offset = i * FlatViewFrustum.BOUNDS_SIZE;
+                double centre = 0.5 * (bounds[offset + axis] + bounds[offset + axis + 3]);
+                sum += centre;
+                sumSquares += centre * centre;
+            }
+            double variance = sumSquares / count - (sum / count) * (sum / count);
+            if (variance > bestVariance) {
+                bestVariance = variance;
+                bestAxis = axis;
+            }
+        }
+        return bestAxis;
+    }
+
+    private boolean boundsOverlap(int firstOffset, int secondOffset) {
+        for (int axis = 0; axis < 3; axis++) {
+            if (bounds[firstOffset + axis] > bounds[secondOffset + axis + 3]
+                    || bounds[secondOffset + axis] > bounds[firstOffset + axis + 3]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Maps a float to an int with the same ordering, so keys can be sorted as plain longs. */
+    private static int sortableBits(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+}
@@ -0,0 +1,729 @@
+package com.google.ar.core.codelab.cloudanchor.rendering;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+
+/**
+ * Overlap, separation distance and penetration depth of two frustums, with the
+ * Gilbert-Johnson-Keerthi algorithm on the Minkowski difference of their corners and, for depth,
+ * the expanding polytope algorithm. Where {@link SATUtils} only says whether two frustums overlap,
+ * GJK works on any pair of convex hulls and also says how far apart they are.
+ *
+ * <p>Support points are found by projecting the eight corners, and the search stops as soon as a
+ * support point proves the frustums apart ({@link #detectCollision}) or farther apart than a
+ * threshold ({@link #isWithinDistance}). Runs on the packed corners and does not allocate; all
+ * working memory lives in the caller's {@link Result}.
+ */
+public class GJKUtils {
+    private static final int MAX_ITERATIONS = 64;
+    // Relative tolerance of the distance and depth searches.
+    private static final double TOLERANCE = 1e-6;
+    private static final int MAX_POLYTOPE_VERTICES = 64;
+    private static final int MAX_POLYTOPE_FACES = 2 * MAX_POLYTOPE_VERTICES;
+
+    /** The outcome of a query, plus reusable working memory. Not thread-safe. */
+    public static final class Result {
+        boolean overlapping;
+        double distance;
+        double penetrationDepth;
+        final double[] axis = new double[3];
+        int iterations;
+
+        // GJK simplex, up to four points of the Minkowski difference.
+        final double[] simplex = new double[12];
+        int simplexSize;
+        final double[] closest = new double[3];
+        final double[] support = new double[3];
+        // EPA polytope: vertices, faces as vertex index triples with unit normals and distances.
+        final double[] polytope = new double[MAX_POLYTOPE_VERTICES * 3];
+        final int[] faces = new int[MAX_POLYTOPE_FACES * 3];
+        final double[] faceNormals = new double[MAX_POLYTOPE_FACES * 3];
+        final double[] faceDistances = new double[MAX_POLYTOPE_FACES];
+        final int[] horizon = new int[MAX_POLYTOPE_FACES * 3 * 2];
+
+        public boolean isOverlapping() {
+            return overlapping;
+        }
+
+        /** Distance between the frustums, or 0 if they overlap. */
+        public float getDistance() {
+            return (float) distance;
+        }
+
+        /**
+         * How far one frustum must move to stop overlapping the other, or 0 if they do not overlap
+         * or the depth was not asked for.
+         */
+        public float getPenetrationDepth() {
+            return (float) penetrationDepth;
+        }
+
+        /** The distance if apart, minus the penetration depth if overlapping. */
+        public float getSignedDistance() {
+            return overlapping ? (float) -penetrationDepth : (float) distance;
+        }
+
+        /**
+         * Writes the unit axis from the second frustum towards the first along which the distance
+         * or depth was measured, or zeros if there is none.
+         */
+        public void getAxis(float[] result) {
+            result[0] = (float) axis[0];
+            result[1] = (float) axis[1];
+            result[2] = (float) axis[2];
+        }
+
+        /** Number of support points computed by the last query. */
+        public int getIterations() {
+            return iterations;
+        }
+    }
+
+    private GJKUtils() {
+    }
+
+    /**
+     * Returns whether the frustums overlap, stopping at the first support point that separates
+     * them; {@code result} then holds an upper bound on the distance.
+     */
+    public static boolean detectCollision(FlatViewFrustum a, FlatViewFrustum b, Result result) {
+        run(a.getVertices(), b.getVertices(), 0, true, result);
+        return result.overlapping;
+    }
+
+    /**
+     * Returns whether the frustums are at most {@code maxDistance} apart, stopping as soon as a
+     * lower bound on their distance exceeds it. {@code result} then holds an upper bound on the
+     * distance, not the distance itself.
+     */
+    public static boolean isWithinDistance(FlatViewFrustum a, FlatViewFrustum b, float maxDistance,
+                                           Result result) {
+        return run(a.getVertices(), b.getVertices(), maxDistance, false, result);
+    }
+
+    /**
+     * Computes whether the frustums overlap and their distance, plus the penetration depth if they
+     * overlap and {@code withPenetrationDepth} is set.
+     */
+    public static void computeProximity(FlatViewFrustum a, FlatViewFrustum b, boolean withPenetrationDepth,
+                                        Result result) {
+        float[] verticesA = a.getVertices();
+        float[] verticesB = b.getVertices();
+        run(verticesA, verticesB, Double.POSITIVE_INFINITY, false, result);
+        if (result.overlapping && withPenetrationDepth) {
+            expandPolytope(verticesA, verticesB, result);
+        }
+    }
+
+    /*
+     * GJK distance loop. Returns false, leaving the current upper bound in result.distance, once
+     * the frustums are proven farther apart than maxDistance; with overlapOnly, once they are
+     * proven apart at all.
+     */
+    private static boolean run(float[] verticesA, float[] verticesB, double maxDistance, boolean overlapOnly,
+                               Result result) {
+        double[] v = result.closest;
+        double[] w = result.support;
+        result.overlapping = false;
+        result.penetrationDepth = 0;
+        result.iterations = 0;
+
+        // Start from the difference of the first corners, a vertex of the Minkowski difference.
+        v[0] = (double) verticesA[0] - verticesB[0];
+        v[1] = (double) verticesA[1] - verticesB[1];
+        v[2] = (double) verticesA[2] - verticesB[2];
+        System.arraycopy(v, 0, result.simplex, 0, 3);
+        result.simplexSize = 1;
+        double lengthSquared = dot(v, v);
+
+        while (result.iterations < MAX_ITERATIONS) {
+            if (lengthSquared <= TOLERANCE * TOLERANCE) {
+                // The origin is on the simplex: touching or overlapping.
+                return overlapping(result);
+            }
+            support(verticesA, verticesB, -v[0], -v[1], -v[2], w);
+            result.iterations++;
+            double vw = dot(v, w);
+            if (vw > 0) {
+                // The plane through w normal to v separates the origin from the difference.
+                if (overlapOnly) {
+                    return separated(result, Math.sqrt(lengthSquared), v);
+                }
+                double lowerBound = vw / Math.sqrt(lengthSquared);
+                if (lowerBound > maxDistance) {
+                    return separated(result, Math.sqrt(lengthSquared), v);
+                }
+            }
+            if (lengthSquared - vw <= TOLERANCE * lengthSquared || contains(result, w)) {
+                // No support point gets closer: v is the closest point.
+                double distance = Math.sqrt(lengthSquared);
+                separated(result, distance, v);
+                return distance <= maxDistance;
+            }
+            int size = result.simplexSize;
+            System.arraycopy(w, 0, result.simplex, size * 3, 3);
+            result.simplexSize = size + 1;
+            if (!closestOnSimplex(result)) {
+                return overlapping(result);
+            }
+            double newLengthSquared = dot(v, v);
+            if (newLengthSquared >= lengthSquared) {
+                // Rounding stalled the descent; v is as close as we can get.
+                double distance = Math.sqrt(newLengthSquared);
+                separated(result, distance, v);
+                return distance <= maxDistance;
+            }
+            lengthSquared = newLengthSquared;
+        }
+        double distance = Math.sqrt(lengthSquared);
+        separated(result, distance, v);
+        return distance <= maxDistance;
+    }
+
+    private static boolean overlapping(Result result) {
+        result.overlapping = true;
+        result.distance = 0;
+        result.axis[0] = result.axis[1] = result.axis[2] = 0;
+        return true;
+    }
+
+    private static boolean separated(Result result, double distance, double[] v) {
+        result.overlapping = false;
+        result.distance = distance;
+        for (int i = 0; i < 3; i++) {
+            result.axis[i] = distance > 0 ? v[i] / distance : 0;
+        }
+        return false;
+    }
+
+    private static boolean contains(Result result, double[] w) {
+        for (int i = 0; i < result.simplexSize; i++) {
+            int offset = i * 3;
+            if (result.simplex[offset] == w[0] && result.simplex[offset + 1] == w[1]
+                    && result.simplex[offset + 2] == w[2]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Support point of A - B in direction d: the corner of A farthest along d minus the corner of
+     * B farthest against it.
+     */
+    private static void support(float[] verticesA, float[] verticesB, double dx, double dy, double dz,
+                                double[] result) {
+        int bestA = 0;
+        int bestB = 0;
+        double maxA = -Double.MAX_VALUE;
+        double minB = Double.MAX_VALUE;
+        for (int i = 0; i < FlatViewFrustum.VERTICES_SIZE; i += 3) {
+            double distanceA = verticesA[i] * dx + verticesA[i + 1] * dy + verticesA[i + 2] * dz;
+            if (distanceA > maxA) {
+                maxA = distanceA;
+                bestA = i;
+            }
+            double distanceB = verticesB[i] * dx + verticesB[i + 1] * dy + verticesB[i + 2] * dz;
+            if (distanceB < minB) {
+                minB = distanceB;
+                bestB = i;
+            }
+        }
+        result[0] = (double) verticesA[bestA] - verticesB[bestB];
+        result[1] = (double) verticesA[bestA + 1] - verticesB[bestB + 1];
+        result[2] = (double) verticesA[bestA + 2] - verticesB[bestB + 2];
+    }
+
+    /*
+     * Sets result.closest to the point of the simplex nearest the origin and drops the simplex
+     * points not needed to express it. Returns false if the origin is inside the tetrahedron.
+     */
+    private static boolean closestOnSimplex(Result result) {
+        double[] s = result.simplex;
+        switch (result.simplexSize) {
+            case 1:
+                System.arraycopy(s, 0, result.closest, 0, 3);
+                return true;
+            case 2:
+                closestOnSegment(result);
+                return true;
+            case 3:
+                closestOnTriangle(result, 0, 1, 2);
+                return true;
+            default:
+                return closestOnTetrahedron(result);
+        }
+    }
+
+    private static void closestOnSegment(Result result) {
+        double[] s = result.simplex;
+        double abX = s[3] - s[0];
+        double abY = s[4] - s[1];
+        double abZ = s[5] - s[2];
+        double t = -(s[0] * abX + s[1] * abY + s[2] * abZ);
+        if (t <= 0) {
+            keep(result, 0, -1, -1);
+            System.arraycopy(s, 0, result.closest, 0, 3);
+            return;
+        }
+        double length = abX * abX + abY * abY + abZ * abZ;
+        if (t >= length) {
+            keep(result, 1, -1, -1);
+            System.arraycopy(s, 0, result.closest, 0, 3);
+            return;
+        }
+        t /= length;
+        result.closest[0] = s[0] + t * abX;
+        result.closest[1] = s[1] + t * abY;
+        result.closest[2] = s[2] + t * abZ;
+    }
+
+    /*
+     * Closest point to the origin on triangle (i, j, k) of the simplex, by Voronoi regions
+     * (Ericson, Real-Time Collision Detection, 5.1.5). Keeps only the supporting vertices.
+     */
+    private static void closestOnTriangle(Result result, int i, int j, int k) {
+        double[] s = result.simplex;
+        double[] p = result.closest;
+        int a = i * 3;
+        int b = j * 3;
+        int c = k * 3;
+        double abX = s[b] - s[a];
+        double abY = s[b + 1] - s[a + 1];
+        double abZ = s[b + 2] - s[a + 2];
+        double acX = s[c] - s[a];
+        double acY = s[c + 1] - s[a + 1];
+        double acZ = s[c + 2] - s[a + 2];
+
+        // ap = origin - a
+        double d1 = -(abX * s[a] + abY * s[a + 1] + abZ * s[a + 2]);
+        double d2 = -(acX * s[a] + acY * s[a + 1] + acZ * s[a + 2]);
+        if (d1 <= 0 && d2 <= 0) {
+            setPoint(p, s, a);
+            keep(result, i, -1, -1);
+            return;
+        }
+        double d3 = -(abX * s[b] + abY * s[b + 1] + abZ * s[b + 2]);
+        double d4 = -(acX * s[b] + acY * s[b + 1] + acZ * s[b + 2]);
+        if (d3 >= 0 && d4 <= d3) {
+            setPoint(p, s, b);
+            keep(result, j, -1, -1);
+            return;
+        }
+        double vc = d1 * d4 - d3 * d2;
+        if (vc <= 0 && d1 >= 0 && d3 <= 0) {
+            double t = d1 / (d1 - d3);
+            p[0] = s[a] + t * abX;
+            p[1] = s[a + 1] + t * abY;
+            p[2] = s[a + 2] + t * abZ;
+            keep(result, i, j, -1);
+            return;
+        }
+        double d5 = -(abX * s[c] + abY * s[c + 1] + abZ * s[c + 2]);
+        double d6 = -(acX * s[c] + acY * s[c + 1] + acZ * s[c + 2]);
+        if (d6 >= 0 && d5 <= d6) {
+            setPoint(p, s, c);
+            keep(result, k, -1, -1);
+            return;
+        }
+        double vb = d5 * d2 - d1 * d6;
+        if (vb <= 0 && d2 >= 0 && d6 <= 0) {
+            double t = d2 / (d2 - d6);
+            p[0] = s[a] + t * acX;
+            p[1] = s[a + 1] + t * acY;
+            p[2] = s[a + 2] + t * acZ;
+            keep(result, i, k, -1);
+            return;
+        }
+        double va = d3 * d6 - d5 * d4;
+        if (va <= 0 && d4 - d3 >= 0 && d5 - d6 >= 0) {
+            double t = (d4 - d3) / ((d4 - d3) + (d5 - d6));
+            p[0] = s[b] + t * (s[c] - s[b]);
+            p[1] = s[b + 1] + t * (s[c + 1] - s[b + 1]);
+            p[2] = s[b + 2] + t * (s[c + 2] - s[b + 2]);
+            keep(result, j, k, -1);
+            return;
+        }
+        double denominator = 1 / (va + vb + vc);
+        double v = vb * denominator;
+        double w = vc * denominator;
+        p[0] = s[a] + abX * v + acX * w;
+        p[1] = s[a + 1] + abY * v + acY * w;
+        p[2] = s[a + 2] + abZ * v + acZ * w;
+        keep(result, i, j, k);
+    }
+
+    /*
+     * Tests each face whose plane has the origin on the far side from the fourth vertex, and keeps
+     * the closest. If there is no such face the origin is inside. A flat tetrahedron has no inside,
+     * so then every face is tested.
+     */
+    private static boolean closestOnTetrahedron(Result result) {
+        double[] s = result.simplex;
+        boolean flat = isFlat(s);
+        double bestX = 0;
+        double bestY = 0;
+        double bestZ = 0;
+        double bestLengthSquared = Double.MAX_VALUE;
+        int bestFace = -1;
+        for (int face = 0; face < 4; face++) {
+            int i = (face + 1) % 4;
+            int j = (face + 2) % 4;
+            int k = (face + 3) % 4;
+            if (!flat && !originOutsidePlane(s, i, j, k, face)) {
+                continue;
+            }
+            // closestOnTriangle rewrites the simplex, so work on a copy of the tetrahedron.
+            double[] saved = result.polytope;
+            System.arraycopy(s, 0, saved, 0, 12);
+            result.simplexSize = 4;
+            closestOnTriangle(result, i, j, k);
+            double lengthSquared = dot(result.closest, result.closest);
+            if (lengthSquared < bestLengthSquared) {
+                bestLengthSquared = lengthSquared;
+                bestX = result.closest[0];
+                bestY = result.closest[1];
+                bestZ = result.closest[2];
+                bestFace = face;
+            }
+            System.arraycopy(saved, 0, s, 0, 12);
+            result.simplexSize = 4;
+        }
+        if (bestFace < 0) {
+            return false;
+        }
+        // Recompute on the best face to leave its supporting vertices in the simplex.
+        closestOnTriangle(result, (bestFace + 1) % 4, (bestFace + 2) % 4, (bestFace + 3) % 4);
+        result.closest[0] = bestX;
+        result.closest[1] = bestY;
+        result.closest[2] = bestZ;
+        return true;
+    }
+
+    /*
+     * Whether the four points of the simplex are coplanar up to rounding. The fourth point then
+     * adds no volume and the plane tests cannot tell which side the origin is on.
+     */
+    private static boolean isFlat(double[] s) {
+        double abX = s[3] - s[0];
+        double abY = s[4] - s[1];
+        double abZ = s[5] - s[2];
+        double acX = s[6] - s[0];
+        double acY = s[7] - s[1];
+        double acZ = s[8] - s[2];
+        double adX = s[9] - s[0];
+        double adY = s[10] - s[1];
+        double adZ = s[11] - s[2];
+        double volume = abX * (acY * adZ - acZ * adY) + abY * (acZ * adX - acX * adZ)
+                + abZ * (acX * adY - acY * adX);
+        double scale = Math.sqrt((abX * abX + abY * abY + abZ * abZ) * (acX * acX + acY * acY + acZ * acZ)
+                * (adX * adX + adY * adY + adZ * adZ));
+        return Math.abs(volume) <= TOLERANCE * scale;
+    }
+
+    /* Whether the origin and vertex d lie on opposite sides of the plane through a, b and c. */
+    private static boolean originOutsidePlane(double[] s, int a, int b, int c, int d) {
+        a *= 3;
+        b *= 3;
+        c *= 3;
+        d *= 3;
+        double abX = s[b] - s[a];
+        double abY = s[b + 1] - s[a + 1];
+        double abZ = s[b + 2] - s[a + 2];
+        double acX = s[c] - s[a];
+        double acY = s[c + 1] - s[a + 1];
+        double acZ = s[c + 2] - s[a + 2];
+        double nX = abY * acZ - abZ * acY;
+        double nY = abZ * acX - abX * acZ;
+        double nZ = abX * acY - abY * acX;
+        double signOrigin = -(nX * s[a] + nY * s[a + 1] + nZ * s[a + 2]);
+        double signD = nX * (s[d] - s[a]) + nY * (s[d + 1] - s[a + 1]) + nZ * (s[d + 2] - s[a + 2]);
+        return signOrigin * signD < 0;
+    }
+
+    /* Reduces the simplex to vertices i, j and k, in that order; -1 marks an unused slot. */
+    private static void keep(Result result, int i, int j, int k) {
+        double[] s = result.simplex;
+        int size = 0;
+        // Copy forwards through a temporary, since i, j and k may be in any order.
+        double ix = s[i * 3];
+        double iy = s[i * 3 + 1];
+        double iz = s[i * 3 + 2];
+        double jx = 0;
+        double jy = 0;
+        double jz = 0;
+        double kx = 0;
+        double ky = 0;
+        double kz = 0;
+        if (j >= 0) {
+            jx = s[j * 3];
+            jy = s[j * 3 + 1];
+            jz = s[j * 3 + 2];
+        }
+        if (k >= 0) {
+            kx = s[k * 3];
+            ky = s[k * 3 + 1];
+            kz = s[k * 3 + 2];
+        }
+        s[0] = ix;
+        s[1] = iy;
+        s[2] = iz;
+        size++;
+        if (j >= 0) {
+            s[3] = jx;
+            s[4] = jy;
+            s[5] = jz;
+            size++;
+        }
+        if (k >= 0) {
+            s[6] = kx;
+            s[7] = ky;
+            s[8] = kz;
+            size++;
+        }
+        result.simplexSize = size;
+    }
+
+    /*
+     * EPA: grows a polytope inside the Minkowski difference from the final GJK simplex, always
+     * pushing out the face closest to the origin, until that face is on the boundary. Its distance
+     * is the penetration depth.
+     */
+    private static void expandPolytope(float[] verticesA, float[] verticesB, Result result) {
+        if (!completeTetrahedron(verticesA, verticesB, result)) {
+            // The difference is flat, so the frustums only touch.
+            return;
+        }
+        double[] vertices = result.polytope;
+        System.arraycopy(result.simplex, 0, vertices, 0, 12);
+        int vertexCount = 4;
+        int[] faces = result.faces;
+        int faceCount = 0;
+        for (int face = 0; face < 4; face++) {
+            faceCount = addFace(result, faceCount, (face + 1) % 4, (face + 2) % 4, (face + 3) % 4, face);
+        }
+
+        double[] w = result.support;
+        for (int f = 0; f < faceCount; f++) {
+            // The origin is on a face of the simplex. If that face is on the boundary of the
+            // difference the frustums only touch; expanding from there picks an arbitrary face.
+            if (Math.abs(result.faceDistances[f]) > TOLERANCE) {
+                continue;
+            }
+            double nX = result.faceNormals[f * 3];
+            double nY = result.faceNormals[f * 3 + 1];
+            double nZ = result.faceNormals[f * 3 + 2];
+            support(verticesA, verticesB, nX, nY, nZ, w);
+            result.iterations++;
+            if (w[0] * nX + w[1] * nY + w[2] * nZ <= TOLERANCE) {
+                setDepth(result, 0, nX, nY, nZ);
+                return;
+            }
+        }
+        while (true) {
+            int closestFace = 0;
+            for (int f = 1; f < faceCount; f++) {
+                if (result.faceDistances[f] < result.faceDistances[closestFace]) {
+                    closestFace = f;
+                }
+            }
+            double distance = result.faceDistances[closestFace];
+            double nX = result.faceNormals[closestFace * 3];
+            double nY = result.faceNormals[closestFace * 3 + 1];
+            double nZ = result.faceNormals[closestFace * 3 + 2];
+            support(verticesA, verticesB, nX, nY, nZ, w);
+            result.iterations++;
+            double supportDistance = w[0] * nX + w[1] * nY + w[2] * nZ;
+            double tolerance = TOLERANCE * Math.max(1, distance);
+            if (supportDistance - distance <= tolerance
+                    || vertexCount == MAX_POLYTOPE_VERTICES || result.iterations >= 4 * MAX_ITERATIONS) {
+                setDepth(result, distance, nX, nY, nZ);
+                return;
+            }
+
+            int newVertex = vertexCount++;
+            System.arraycopy(w, 0, vertices, newVertex * 3, 3);
+            // Remove every face that sees the new vertex, collecting the edges of the hole. Faces
+            // the vertex is only coplanar with stay, or rounding leaves a sliver that never goes.
+            int edgeCount = 0;
+            int[] horizon = result.horizon;
+            for (int f = 0; f < faceCount; ) {
+                int offset = f * 3;
+                double dx = w[0] - vertices[faces[offset] * 3];
+                double dy = w[1] - vertices[faces[offset] * 3 + 1];
+                double dz = w[2] - vertices[faces[offset] * 3 + 2];
+                if (result.faceNormals[offset] * dx + result.faceNormals[offset + 1] * dy
+                        + result.faceNormals[offset + 2] * dz > tolerance) {
+                    for (int e = 0; e < 3; e++) {
+                        edgeCount = toggleEdge(horizon, edgeCount, faces[offset + e], faces[offset + (e + 1) % 3]);
+                    }
+                    faceCount--;
+                    moveFace(result, faceCount, f);
+                } else {
+                    f++;
+                }
+            }
+            if (faceCount + edgeCount > MAX_POLYTOPE_FACES) {
+                setDepth(result, distance, nX, nY, nZ);
+                return;
+            }
+            for (int e = 0; e < edgeCount; e++) {
+                faceCount = addFace(result, faceCount, horizon[e * 2], horizon[e * 2 + 1], newVertex, -1);
+            }
+        }
+    }
+
+    private static void setDepth(Result result, double depth, double nX, double nY, double nZ) {
+        result.penetrationDepth = Math.max(0, depth);
+        // The axis points from B towards A, so moving A along it by the depth separates them.
+        result.axis[0] = -nX;
+        result.axis[1] = -nY;
+        result.axis[2] = -nZ;
+    }
+
+    /*
+     * Adds face (a, b, c) of the polytope with an outward normal: away from vertex inside, or from
+     * the origin-side orientation kept by the winding when inside is -1.
+     */
+    private static int addFace(Result result, int faceCount, int a, int b, int c, int inside) {
+        double[] v = result.polytope;
+        double abX = v[b * 3] - v[a * 3];
+        double abY = v[b * 3 + 1] - v[a * 3 + 1];
+        double abZ = v[b * 3 + 2] - v[a * 3 + 2];
+        double acX = v[c * 3] - v[a * 3];
+        double acY = v[c * 3 + 1] - v[a * 3 + 1];
+        double acZ = v[c * 3 + 2] - v[a * 3 + 2];
+        double nX = abY * acZ - abZ * acY;
+        double nY = abZ * acX - abX * acZ;
+        double nZ = abX * acY - abY * acX;
+        if (inside >= 0) {
+            double toInside = nX * (v[inside * 3] - v[a * 3]) + nY * (v[inside * 3 + 1] - v[a * 3 + 1])
+                    + nZ * (v[inside * 3 + 2] - v[a * 3 + 2]);
+            if (toInside > 0) {
+                int swap = b;
+                b = c;
+                c = swap;
+                nX = -nX;
+                nY = -nY;
+                nZ = -nZ;
+            }
+        }
+        double length = Math.sqrt(nX * nX + nY * nY + nZ * nZ);
+        int offset = faceCount * 3;
+        result.faces[offset] = a;
+        result.faces[offset + 1] = b;
+        result.faces[offset + 2] = c;
+        if (length == 0) {
+            // A sliver face; give it no pull so it is never picked as closest.
+            result.faceNormals[offset] = result.faceNormals[offset + 1] = result.faceNormals[offset + 2] = 0;
+            result.faceDistances[faceCount] = Double.MAX_VALUE;
+            return faceCount + 1;
+        }
+        nX /= length;
+        nY /= length;
+        nZ /= length;
+        result.faceNormals[offset] = nX;
+        result.faceNormals[offset + 1] = nY;
+        result.faceNormals[offset + 2] = nZ;
+        result.faceDistances[faceCount] = nX * v[a * 3] + nY * v[a * 3 + 1] + nZ * v[a * 3 + 2];
+        return faceCount + 1;
+    }
+
+    private static void moveFace(Result result, int from, int to) {
+        System.arraycopy(result.faces, from * 3, result.faces, to * 3, 3);
+        System.arraycopy(result.faceNormals, from * 3, result.faceNormals, to * 3, 3);
+        result.faceDistances[to] = result.faceDistances[from];
+    }
+
+    /* Adds directed edge (a, b) to the horizon, or cancels it against its reverse. */
+    private static int toggleEdge(int[] edges, int edgeCount, int a, int b) {
+        for (int e = 0; e < edgeCount; e++) {
+            if (edges[e * 2] == b && edges[e * 2 + 1] == a) {
+                edgeCount--;
+                edges[e * 2] = edges[edgeCount * 2];
+                edges[e * 2 + 1] = edges[edgeCount * 2 + 1];
+                return edgeCount;
+            }
+        }
+        edges[edgeCount * 2] = a;
+        edges[edgeCount * 2 + 1] = b;
+        return edgeCount + 1;
+    }
+
+    /*
+     * GJK can stop with fewer than four points when the origin lies on a segment or triangle of
+     * the simplex. Adds support points until the simplex is a tetrahedron with volume. Returns
+     * false if the Minkowski difference is flat.
+     */
+    private static boolean completeTetrahedron(float[] verticesA, float[] verticesB, Result result) {
+        double[] s = result.simplex;
+        double[] w = result.support;
+        if (result.simplexSize == 1) {
+            for (int axis = 0; axis < 6 && result.simplexSize == 1; axis++) {
+                double sign = axis < 3 ? 1 : -1;
+                support(verticesA, verticesB, axis % 3 == 0 ? sign : 0, axis % 3 == 1 ? sign : 0,
+                        axis % 3 == 2 ? sign : 0, w);
+                if (distanceSquared(w, s, 0) > TOLERANCE * TOLERANCE) {
+                    System.arraycopy(w, 0, s, 3, 3);
+                    result.simplexSize = 2;
+                }
+            }
+        }
+        if (result.simplexSize == 2) {
+            double eX = s[3] - s[0];
+            double eY = s[4] - s[1];
+            double eZ = s[5] - s[2];
+            for (int axis = 0; axis < 3 && result.simplexSize == 2; axis++) {
+                // Cross the edge with a coordinate axis to get a perpendicular direction.
+                double dX = axis == 0 ? 0 : axis == 1 ? -eZ : eY;
+                double dY = axis == 0 ? eZ : axis == 1 ? 0 : -eX;
+                double dZ = axis == 0 ? -eY : axis == 1 ? eX : 0;
+                for (int sign = 1; sign >= -1 && result.simplexSize == 2; sign -= 2) {
+                    support(verticesA, verticesB, sign * dX, sign * dY, sign * dZ, w);
+                    double along = (w[0] - s[0]) * dX + (w[1] - s[1]) * dY + (w[2] - s[2]) * dZ;
+                    if (Math.abs(along) > TOLERANCE * Math.sqrt(dX * dX + dY * dY + dZ * dZ)) {
+                        System.arraycopy(w, 0, s, 6, 3);
+                        result.simplexSize = 3;
+                    }
+                }
+            }
+        }
+        if (result.simplexSize == 3) {
+            double abX = s[3] - s[0];
+            double abY = s[4] - s[1];
+            double abZ = s[5] - s[2];
+            double acX = s[6] - s[0];
+            double acY = s[7] - s[1];
+            double acZ = s[8] - s[2];
+            double nX = abY * acZ - abZ * acY;
+            double nY = abZ * acX - abX * acZ;
+            double nZ = abX * acY - abY * acX;
+            double nLength = Math.sqrt(nX * nX + nY * nY + nZ * nZ);
+            for (int sign = 1; sign >= -1 && result.simplexSize == 3; sign -= 2) {
+                support(verticesA, verticesB, sign * nX, sign * nY, sign * nZ, w);
+                double along = (w[0] - s[0]) * nX + (w[1] - s[1]) * nY + (w[2] - s[2]) * nZ;
+                if (Math.abs(along) > TOLERANCE * nLength) {
+                    System.arraycopy(w, 0, s, 9, 3);
+                    result.simplexSize = 4;
+                }
+            }
+        }
+        return result.simplexSize == 4;
+    }
+
+    private static double distanceSquared(double[] point, double[] s, int offset) {
+        double dx = point[0] - s[offset];
+        double dy = point[1] - s[offset + 1];
+        double dz = point[2] - s[offset + 2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static void setPoint(double[] p, double[] s, int offset) {
+        p[0] = s[offset];
+        p[1] = s[offset + 1];
+        p[2] = s[offset + 2];
+    }
+
+    private static double dot(double[] a, double[] b) {
+        return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+    }
+}
@@ -0,0 +1,97 @@
+package com.google.ar.core.codelab.cloudanchor.rendering;
+
+/**
+ * The subset of {@code android.opengl.Matrix} used by the frustum code, with the same signatures
+ * and layout so matrices fetched from ARCore can be passed straight in. Matrices are 4x4,
+ * column-major, and stored in float arrays at the given offsets.
+ */
+public class MatrixUtils {
+
+    public static void setIdentityM(float[] sm, int smOffset) {
+        for (int i = 0; i < 16; i++) {
+            sm[smOffset + i] = 0;
+        }
+        for (int i = 0; i < 16; i += 5) {
+            sm[smOffset + i] = 1.0f;
+        }
+    }
+
+    public static void multiplyMM(float[] result, int resultOffset, float[] lhs, int lhsOffset,
+                                  float[] rhs, int rhsOffset) {
+        for (int col = 0; col < 4; col++) {
+            float r0 = rhs[rhsOffset + col * 4];
+            float r1 = rhs[rhsOffset + col * 4 + 1];
+            float r2 = rhs[rhsOffset + col * 4 + 2];
+            float r3 = rhs[rhsOffset + col * 4 + 3];
+            for (int row = 0; row < 4; row++) {
+                result[resultOffset + col * 4 + row] = lhs[lhsOffset + row] * r0
+                        + lhs[lhsOffset + 4 + row] * r1
+                        + lhs[lhsOffset + 8 + row] * r2
+                        + lhs[lhsOffset + 12 + row] * r3;
+            }
+        }
+    }
+
+    public static void multiplyMV(float[] resultVec, int resultVecOffset, float[] lhsMat, int lhsMatOffset,
+                                  float[] rhsVec, int rhsVecOffset) {
+        float x = rhsVec[rhsVecOffset];
+        float y = rhsVec[rhsVecOffset + 1];
+        float z = rhsVec[rhsVecOffset + 2];
+        float w = rhsVec[rhsVecOffset + 3];
+        for (int row = 0; row < 4; row++) {
+            resultVec[resultVecOffset + row] = lhsMat[lhsMatOffset + row] * x
+                    + lhsMat[lhsMatOffset + 4 + row] * y
+                    + lhsMat[lhsMatOffset + 8 + row] * z
+                    + lhsMat[lhsMatOffset + 12 + row] * w;
+        }
+    }
+
+    /** Inverts {@code m} by cofactor expansion. Returns false, leaving mInv untouched, if m is singular. */
+    public static boolean invertM(float[] mInv, int mInvOffset, float[] m, int mOffset) {
+        float m0 = m[mOffset], m1 = m[mOffset + 1], m2 = m[mOffset + 2], m3 = m[mOffset + 3];
+        float m4 = m[mOffset + 4], m5 = m[mOffset + 5], m6 = m[mOffset + 6], m7 = m[mOffset + 7];
+        float m8 = m[mOffset + 8], m9 = m[mOffset + 9], m10 = m[mOffset + 10], m11 = m[mOffset + 11];
+        float m12 = m[mOffset + 12], m13 = m[mOffset + 13], m14 = m[mOffset + 14], m15 = m[mOffset + 15];
+
+        float s0 = m0 * m5 - m4 * m1;
+        float s1 = m0 * m6 - m4 * m2;
+        float s2 = m0 * m7 - m4 * m3;
+        float s3 = m1 * m6 - m5 * m2;
+        float s4 = m1 * m7 - m5 * m3;
+        float s5 = m2 * m7 - m6 * m3;
+
+        float c5 = m10 * m15 - m14 * m11;
+        float c4 = m9 * m15 - m13 * m11;
+        float c3 = m9 * m14 - m13 * m10;
+        float c2 = m8 * m15 - m12 * m11;
+        float c1 = m8 * m14 - m12 * m10;
+        float c0 = m8 * m13 - m12 * m9;
+
+        float det = s0 * c5 - s1 * c4 + s2 * c3 + s3 * c2 - s4 * c1 + s5 * c0;
+        if (det == 0.0f) {
+            return false;
+        }
+        float invDet = 1.0f / det;
+
+        mInv[mInvOffset] = (m5 * c5 - m6 * c4 + m7 * c3) * invDet;
+        mInv[mInvOffset + 1] = (-m1 * c5 + m2 * c4 - m3 * c3) * invDet;
+        mInv[mInvOffset + 2] = (m13 * s5 - m14 * s4 + m15 * s3) * invDet;
+        mInv[mInvOffset + 3] = (-m9 * s5 + m10 * s4 - m11 * s3) * invDet;
+
+        mInv[mInvOffset + 4] = (-m4 * c5 + m6 * c2 - m7 * c1) * invDet;
+        mInv[mInvOffset + 5] = (m0 * c5 - m2 * c2 + m3 * c1) * invDet;
+        mInv[mInvOffset + 6] = (-m12 * s5 + m14 * s2 - m15 * s1) * invDet;
+        mInv[mInvOffset + 7] = (m8 * s5 - m10 * s2 + m11 * s1) * invDet;
+
+        mInv[mInvOffset + 8] = (m4 * c4 - m5 * c2 + m7 * c0) * invDet;
+        mInv[mInvOffset + 9] = (-m0 * c4 + m1 * c2 - m3 * c0) * invDet;
+        mInv[mInvOffset + 10] = (m12 * s4 - m13 * s2 + m15 * s0) * invDet;
+        mInv[mInvOffset + 11] = (-m8 * s4 + m9 * s2 - m11 * s0) * invDet;
+
+        mInv[mInvOffset + 12] = (-m4 * c3 + m5 * c1 - m6 * c0) * invDet;
+        mInv[mInvOffset + 13] = (m0 * c3 - m1 * c1 + m2 * c0) * invDet;
+        mInv[mInvOffset + 14] = (-m12 * s3 + m13 * s1 - m14 * s0) * invDet;
+        mInv[mInvOffset + 15] = (m8 * s3 - m9 * s1 + m10 * s0) * invDet;
+        return true;
+    }
+}
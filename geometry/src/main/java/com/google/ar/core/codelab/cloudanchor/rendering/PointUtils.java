@@ -0,0 +1,229 @@
+package com.google.ar.core.codelab.cloudanchor.rendering;
+
+import com.google.ar.core.codelab.cloudanchor.model.AnchorPose;
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.ViewConfig;
+import com.google.ar.core.codelab.cloudanchor.model.ViewFrustum;
+
+import java.util.List;
+
+import javax.vecmath.Vector3f;
+
+public class PointUtils {
+    /** Offsets of each corner in the packed {@code float[24]} layout, matching {@link ViewFrustum}. */
+    public static final int TOP_LEFT_NEAR = 0;
+    public static final int TOP_RIGHT_NEAR = 3;
+    public static final int BOTTOM_LEFT_NEAR = 6;
+    public static final int BOTTOM_RIGHT_NEAR = 9;
+    public static final int TOP_LEFT_FAR = 12;
+    public static final int TOP_RIGHT_FAR = 15;
+    public static final int BOTTOM_LEFT_FAR = 18;
+    public static final int BOTTOM_RIGHT_FAR = 21;
+    public static final int FRUSTUM_COORDS_SIZE = 24;
+
+    /**
+     * Working arrays for the frustum math. The methods are reentrant and take no locks: each thread
+     * uses its own instance, either passed in or the calling thread's default one. An instance must
+     * not be used by two threads at once.
+     */
+    public static final class Scratch {
+        final float[] viewProjMtx = new float[16];
+        final float[] invertedViewProjMtx = new float[16];
+        final float[] screenPoint = new float[4];
+        final float[] nearPlanePoint = new float[4];
+        final float[] farPlanePoint = new float[4];
+        final float[] frustumCoords = new float[FRUSTUM_COORDS_SIZE];
+    }
+
+    private static final ThreadLocal<Scratch> THREAD_SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Writes the world coordinates of the frustum corners into the existing points of
+     * {@code viewFrustum}. Runs once per frame, so it does not allocate.
+     */
+    public static void setFrustumWorldCoords(ViewFrustum viewFrustum, ViewConfig viewConfig, float screenWidth,
+                                             float screenHeight, float[] projectionMatrix, float[] viewMatrix,
+                                             float nearClip, float farClip) {
+        Scratch scratch = THREAD_SCRATCH.get();
+        float[] frustumCoords = scratch.frustumCoords;
+        computeFrustumWorldCoords(scratch, frustumCoords, viewConfig, screenWidth, screenHeight, projectionMatrix,
+                viewMatrix, nearClip, farClip);
+
+        List<Vector3f> points = viewFrustum.getPoints();
+        for (int i = 0; i < 8; i++) {
+            points.get(i).set(frustumCoords[i * 3], frustumCoords[i * 3 + 1], frustumCoords[i * 3 + 2]);
+        }
+    }
+
+    /** Same as above, writing straight into the packed corners of {@code viewFrustum}. */
+    public static void setFrustumWorldCoords(FlatViewFrustum viewFrustum, ViewConfig viewConfig,
+                                             float screenWidth, float screenHeight,
+                                             float[] projectionMatrix, float[] viewMatrix,
+                                             float nearClip, float farClip) {
+        setFrustumWorldCoords(THREAD_SCRATCH.get(), viewFrustum, viewConfig, screenWidth, screenHeight,
+                projectionMatrix, viewMatrix, nearClip, farClip);
+    }
+
+    /** Same as above, using the caller's {@code scratch}. */
+    public static void setFrustumWorldCoords(Scratch scratch, FlatViewFrustum viewFrustum, ViewConfig viewConfig,
+                                             float screenWidth, float screenHeight,
+                                             float[] projectionMatrix, float[] viewMatrix,
+                                             float nearClip, float farClip) {
+        computeFrustumWorldCoords(scratch, scratch.frustumCoords, viewConfig, screenWidth, screenHeight,
+                projectionMatrix, viewMatrix, nearClip, farClip);
+        viewFrustum.setVertices(scratch.frustumCoords);
+    }
+
+    /**
+     * Computes the world coordinates of the eight frustum corners into {@code result}, using the
+     * corner offsets above. The view-projection matrix is multiplied and inverted only once.
+     */
+    public static void computeFrustumWorldCoords(float[] result, ViewConfig viewConfig, float screenWidth,
+                                                 float screenHeight, float[] projectionMatrix, float[] viewMatrix,
+                                                 float nearClip, float farClip) {
+        computeFrustumWorldCoords(THREAD_SCRATCH.get(), result, viewConfig, screenWidth, screenHeight,
+                projectionMatrix, viewMatrix, nearClip, farClip);
+    }
+
+    /** Same as above, using the caller's {@code scratch}. */
+    public static void computeFrustumWorldCoords(Scratch scratch, float[] result, ViewConfig viewConfig,
+                                                 float screenWidth, float screenHeight,
+                                                 float[] projectionMatrix, float[] viewMatrix,
+                                                 float nearClip, float farClip) {
+        MatrixUtils.multiplyMM(scratch.viewProjMtx, 0, projectionMatrix, 0, viewMatrix, 0);
+        MatrixUtils.setIdentityM(scratch.invertedViewProjMtx, 0);
+        MatrixUtils.invertM(scratch.invertedViewProjMtx, 0, scratch.viewProjMtx, 0);
+
+        unprojectCorner(scratch, result, TOP_LEFT_NEAR, TOP_LEFT_FAR, viewConfig.getLeft(), viewConfig.getTop(),
+                screenWidth, screenHeight, nearClip, farClip);
+        unprojectCorner(scratch, result, TOP_RIGHT_NEAR, TOP_RIGHT_FAR, viewConfig.getRight(), viewConfig.getTop(),
+                screenWidth, screenHeight, nearClip, farClip);
+        unprojectCorner(scratch, result, BOTTOM_LEFT_NEAR, BOTTOM_LEFT_FAR, viewConfig.getLeft(),
+                viewConfig.getBottom(), screenWidth, screenHeight, nearClip, farClip);
+        unprojectCorner(scratch, result, BOTTOM_RIGHT_NEAR, BOTTOM_RIGHT_FAR, viewConfig.getRight(),
+                viewConfig.getBottom(), screenWidth, screenHeight, nearClip, farClip);
+    }
+
+    /*
+     * Casts a ray through the screen point using scratch.invertedViewProjMtx and writes the points
+     * at nearClip and farClip along it.
+     */
+    private static void unprojectCorner(Scratch scratch, float[] result, int nearOffset, int farOffset,
+                                        float screenX, float screenY, float screenWidth, float screenHeight,
+                                        float nearClip, float farClip) {
+        float[] screenPoint = scratch.screenPoint;
+        float[] nearPlanePoint = scratch.nearPlanePoint;
+        float[] farPlanePoint = scratch.farPlanePoint;
+        float[] invertedViewProjMtx = scratch.invertedViewProjMtx;
+        float x = screenX * 2.0F / screenWidth - 1.0F;
+        float y = (screenHeight - screenY) * 2.0F / screenHeight - 1.0F;
+
+        screenPoint[0] = x;
+        screenPoint[1] = y;
+        screenPoint[2] = -1.0F;
+        screenPoint[3] = 1.0F;
+        MatrixUtils.multiplyMV(nearPlanePoint, 0, invertedViewProjMtx, 0, screenPoint, 0);
+        screenPoint[2] = 1.0F;
+        MatrixUtils.multiplyMV(farPlanePoint, 0, invertedViewProjMtx, 0, screenPoint, 0);
+
+        float originX = nearPlanePoint[0] / nearPlanePoint[3];
+        float originY = nearPlanePoint[1] / nearPlanePoint[3];
+        float originZ = nearPlanePoint[2] / nearPlanePoint[3];
+        float directionX = farPlanePoint[0] / farPlanePoint[3] - originX;
+        float directionY = farPlanePoint[1] / farPlanePoint[3] - originY;
+        float directionZ = farPlanePoint[2] / farPlanePoint[3] - originZ;
+
+        // Same rounding as Vector3f.normalize() so the output matches the Ray based implementation.
+        float norm = (float) (1.0 / Math.sqrt(directionX * directionX + directionY * directionY
+                + directionZ * directionZ));
+        directionX *= norm;
+        directionY *= norm;
+        directionZ *= norm;
+
+        result[nearOffset] = originX + directionX * nearClip;
+        result[nearOffset + 1] = originY + directionY * nearClip;
+        result[nearOffset + 2] = originZ + directionZ * nearClip;
+        result[farOffset] = originX + directionX * farClip;
+        result[farOffset + 1] = originY + directionY * farClip;
+        result[farOffset + 2] = originZ + directionZ * farClip;
+    }
+
+
+    /**
+     * Transforms the points of {@code viewFrustum} TO anchor coordinates FROM world coordinates, in
+     * place. Like the packed overload, it does not allocate.
+     */
+    public static void transformFrustumCoords(ViewFrustum viewFrustum, AnchorPose anchorPose) {
+        float[] frustumCoords = THREAD_SCRATCH.get().frustumCoords;
+        List<Vector3f> points = viewFrustum.getPoints();
+        for (int i = 0; i < 8; i++) {
+            Vector3f point = points.get(i);
+            int offset = i * 3;
+            frustumCoords[offset] = point.x;
+            frustumCoords[offset + 1] = point.y;
+            frustumCoords[offset + 2] = point.z;
+            anchorPose.inverseTransformPoint(frustumCoords, offset, frustumCoords, offset);
+            point.set(frustumCoords[offset], frustumCoords[offset + 1], frustumCoords[offset + 2]);
+        }
+    }
+
+
+    /**
+     * Transforms the packed corners of {@code viewFrustum} TO anchor coordinates FROM world
+     * coordinates, without allocating an inverse pose.
+     */
+    public static void transformFrustumCoords(FlatViewFrustum viewFrustum, AnchorPose anchorPose) {
+        transformFrustumCoords(THREAD_SCRATCH.get(), viewFrustum, anchorPose);
+    }
+
+    /** Same as above, using the caller's {@code scratch}. */
+    public static void transformFrustumCoords(Scratch scratch, FlatViewFrustum viewFrustum, AnchorPose anchorPose) {
+        float[] frustumCoords = scratch.frustumCoords;
+        float[] vertices = viewFrustum.getVertices();
+        for (int i = 0; i < FRUSTUM_COORDS_SIZE; i += 3) {
+            anchorPose.inverseTransformPoint(vertices, i, frustumCoords, i);
+        }
+        viewFrustum.setVertices(frustumCoords);
+    }
+
+
+    /**
+     * Transform a vector3f TO anchor coordinates FROM world coordinates
+     */
+    public static Vector3f TransformPointToPose(Vector3f point, AnchorPose anchorPose) {
+        // Recenter to anchor
+        float[] position = new float[3];
+        position[0] = point.x;
+        position[1] = point.y;
+        position[2] = point.z;
+
+        anchorPose.inverseTransformPoint(position, 0, position, 0);
+        return new Vector3f(position[0], position[1], position[2]);
+    }
+
+
+
+//    public static boolean distanceCheck(Vector3f newPoint, Vector3f lastPoint) {
+//        Vector3f temp = new Vector3f();
+//        temp.sub(newPoint, lastPoint);
+//        return temp.lengthSquared() > AppSettings.getMinDistance();
+//    }
+
+
+
+//    /**
+//     * Transform a vector3f FROM anchor coordinates TO world coordinates
+//     */
+//    public static Vector3f TransformPointFromPose(Vector3f point, Pose anchorPose) {
+//        Log.e("HELLO",anchorPose.toString());
+//        float[] position = new float[3];
+//        position[0] = point.x;
+//        position[1] = point.y;
+//        position[2] = point.z;
+//
+//        position = anchorPose.transformPoint(position);
+//        return new Vector3f(position[0], position[1], position[2]);
+//    }
+
+
+}
\ No newline at end of file
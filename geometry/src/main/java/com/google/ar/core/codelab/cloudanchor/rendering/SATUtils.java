@@ -0,0 +1,372 @@
+package com.google.ar.core.codelab.cloudanchor.rendering;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.ViewFrustum;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.BlockRealMatrix;
+import org.apache.commons.math3.linear.DecompositionSolver;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.vecmath.Vector3f;
+
+public class SATUtils {
+    public static float epsilon = 0.000001f;
+    /** Set to true to generate face normals with the original SVD plane fit, for validation. */
+    public static boolean useSvdNormals = false;
+    public static double[] onesArray = new double[]{1, 1, 1, 1};
+    public static RealVector onesVector = new ArrayRealVector(onesArray);
+
+    /*
+     * Corner indices of each face, clockwise, in the same order as generateNormals(ViewFrustum).
+     */
+    private static final int[] FACES = {
+            0, 1, 3, 2, // near
+            4, 0, 2, 6, // left
+            4, 5, 1, 0, // top
+            1, 5, 7, 3, // right
+            2, 3, 7, 6, // bottom
+            4, 5, 7, 6  // far
+    };
+
+    /*
+     * Start and end corner of each edge direction, in the order of FlatViewFrustum.getEdges().
+     */
+    private static final int[] EDGES = {
+            4, 5, // across the far face
+            4, 6, // down the far face
+            0, 4, // top left
+            1, 5, // top right
+            2, 6, // bottom left
+            3, 7  // bottom right
+    };
+
+    /** Number of candidate axes: the face normals of both frustums, then the edge cross products. */
+    static final int AXIS_COUNT = 2 * FlatViewFrustum.FACE_COUNT
+            + FlatViewFrustum.EDGE_COUNT * FlatViewFrustum.EDGE_COUNT;
+
+    /**
+     * Allocation-free SAT on packed frustums, using each frustum's cached face normals and edge
+     * directions. Besides the twelve face normals, it tries the cross product of every edge
+     * direction of {@code a} with every one of {@code b}, which catches frustums that are only
+     * separated edge to edge. Normals are always generated with Newell's method on this path.
+     */
+    public static boolean detectCollision(FlatViewFrustum a, FlatViewFrustum b) {
+        float[] verticesA = a.getVertices();
+        float[] verticesB = b.getVertices();
+        float[] normalsA = a.getNormals();
+        float[] normalsB = b.getNormals();
+        float[] edgesA = a.getEdges();
+        float[] edgesB = b.getEdges();
+
+        for (int i = 0; i < FlatViewFrustum.NORMALS_SIZE; i += 3) {
+            if (!intersectsWhenProjected(verticesA, verticesB, normalsA[i], normalsA[i + 1], normalsA[i + 2])) {
+                return false;
+            }
+        }
+        for (int i = 0; i < FlatViewFrustum.NORMALS_SIZE; i += 3) {
+            if (!intersectsWhenProjected(verticesA, verticesB, normalsB[i], normalsB[i + 1], normalsB[i + 2])) {
+                return false;
+            }
+        }
+        for (int i = 0; i < FlatViewFrustum.EDGES_SIZE; i += 3) {
+            for (int j = 0; j < FlatViewFrustum.EDGES_SIZE; j += 3) {
+                if (!intersectsWhenProjected(verticesA, verticesB,
+                        edgesA[i + 1] * edgesB[j + 2] - edgesA[i + 2] * edgesB[j + 1],
+                        edgesA[i + 2] * edgesB[j] - edgesA[i] * edgesB[j + 2],
+                        edgesA[i] * edgesB[j + 1] - edgesA[i + 1] * edgesB[j])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same test as {@link #detectCollision(FlatViewFrustum, FlatViewFrustum)}, but returns the
+     * first separating axis found: 0 to 5 for the face normals of {@code a}, 6 to 11 for those of
+     * {@code b}, 12 and up for the edge cross products, or -1 if the frustums overlap. Axis
+     * {@code firstAxis} is tried before the others, unless it is -1.
+     */
+    static int findSeparatingAxis(FlatViewFrustum a, FlatViewFrustum b, int firstAxis) {
+        if (firstAxis >= 0 && separates(a, b, firstAxis)) {
+            return firstAxis;
+        }
+        for (int axis = 0; axis < AXIS_COUNT; axis++) {
+            if (axis != firstAxis && separates(a, b, axis)) {
+                return axis;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean separates(FlatViewFrustum a, FlatViewFrustum b, int axis) {
+        float[] verticesA = a.getVertices();
+        float[] verticesB = b.getVertices();
+        if (axis < 2 * FlatViewFrustum.FACE_COUNT) {
+            float[] normals = axis < FlatViewFrustum.FACE_COUNT ? a.getNormals() : b.getNormals();
+            int offset = (axis % FlatViewFrustum.FACE_COUNT) * 3;
+            return !intersectsWhenProjected(verticesA, verticesB, normals[offset], normals[offset + 1],
+                    normals[offset + 2]);
+        }
+        int pair = axis - 2 * FlatViewFrustum.FACE_COUNT;
+        float[] edgesA = a.getEdges();
+        float[] edgesB = b.getEdges();
+        int i = (pair / FlatViewFrustum.EDGE_COUNT) * 3;
+        int j = (pair % FlatViewFrustum.EDGE_COUNT) * 3;
+        return !intersectsWhenProjected(verticesA, verticesB,
+                edgesA[i + 1] * edgesB[j + 2] - edgesA[i + 2] * edgesB[j + 1],
+                edgesA[i + 2] * edgesB[j] - edgesA[i] * edgesB[j + 2],
+                edgesA[i] * edgesB[j + 1] - edgesA[i + 1] * edgesB[j]);
+    }
+
+    public static boolean detectCollision(ViewFrustum a, ViewFrustum b) {
+        List<Vector3f> normals = new ArrayList<>();
+
+
+        generateNormals(a, normals);
+        generateNormals(b, normals);
+
+        for (Vector3f normal : normals) {
+            if (!intersectsWhenProjected(a.getPoints(), b.getPoints(), normal)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    public static boolean detectCollision(ViewFrustum a, List<Vector3f> verticesB, List<Vector3f> normalsB) {
+        List<Vector3f> normals = new ArrayList<>();
+
+
+        generateNormals(a, normals);
+        normals.addAll(normalsB);
+
+        for (Vector3f normal : normals) {
+            if (!intersectsWhenProjected(a.getPoints(), verticesB, normal)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+
+    public static void generateNormals(ViewFrustum viewFrustum, List<Vector3f> result) {
+
+        Vector3f topLeftNearPoint = viewFrustum.getTopLeftNear();
+        Vector3f topLeftFarPoint = viewFrustum.getTopLeftFar();
+        Vector3f topRightNearPoint = viewFrustum.getTopRightNear();
+        Vector3f topRightFarPoint = viewFrustum.getTopRightFar();
+        Vector3f bottomLeftNearPoint = viewFrustum.getBottomLeftNear();
+        Vector3f bottomLeftFarPoint = viewFrustum.getBottomLeftFar();
+        Vector3f bottomRightNearPoint = viewFrustum.getBottomRightNear();
+        Vector3f bottomRightFarPoint = viewFrustum.getBottomRightFar();
+
+
+        generateNormal(topLeftNearPoint, topRightNearPoint, bottomRightNearPoint, bottomLeftNearPoint, result);
+        generateNormal(topLeftFarPoint, topLeftNearPoint, bottomLeftNearPoint, bottomLeftFarPoint, result);
+        generateNormal(topLeftFarPoint, topRightFarPoint, topRightNearPoint, topLeftNearPoint, result);
+        generateNormal(topRightNearPoint, topRightFarPoint, bottomRightFarPoint, bottomRightNearPoint, result);
+        generateNormal(bottomLeftNearPoint, bottomRightNearPoint, bottomRightFarPoint, bottomLeftFarPoint, result);
+        generateNormal(topLeftFarPoint, topRightFarPoint, bottomRightFarPoint, bottomLeftFarPoint, result);
+
+    }
+
+    /**
+     * Writes the six face normals of the packed {@code vertices} into {@code result}, in the same
+     * order as {@link #generateNormals(ViewFrustum, List)}.
+     */
+    public static void generateNormals(float[] vertices, float[] result) {
+        for (int face = 0; face < FlatViewFrustum.FACE_COUNT; face++) {
+            int a = FACES[face * 4] * 3;
+            int b = FACES[face * 4 + 1] * 3;
+            int c = FACES[face * 4 + 2] * 3;
+            int d = FACES[face * 4 + 3] * 3;
+            newellNormal(vertices[a], vertices[a + 1], vertices[a + 2],
+                    vertices[b], vertices[b + 1], vertices[b + 2],
+                    vertices[c], vertices[c + 1], vertices[c + 2],
+                    vertices[d], vertices[d + 1], vertices[d + 2],
+                    result, face * 3);
+        }
+    }
+
+    /**
+     * Writes the {@link FlatViewFrustum#EDGE_COUNT} unit edge directions of the packed
+     * {@code vertices} into {@code result}. A degenerate edge yields the zero vector, and so does
+     * every cross product with it, which intersectsWhenProjected treats as a non-separating axis.
+     */
+    public static void generateEdges(float[] vertices, float[] result) {
+        for (int edge = 0; edge < FlatViewFrustum.EDGE_COUNT; edge++) {
+            int start = EDGES[edge * 2] * 3;
+            int end = EDGES[edge * 2 + 1] * 3;
+            float x = vertices[end] - vertices[start];
+            float y = vertices[end + 1] - vertices[start + 1];
+            float z = vertices[end + 2] - vertices[start + 2];
+            float lengthSquared = x * x + y * y + z * z;
+            int offset = edge * 3;
+            if (lengthSquared < epsilon * epsilon) {
+                result[offset] = 0;
+                result[offset + 1] = 0;
+                result[offset + 2] = 0;
+                continue;
+            }
+            float inverseLength = (float) (1.0 / Math.sqrt(lengthSquared));
+            result[offset] = x * inverseLength;
+            result[offset + 1] = y * inverseLength;
+            result[offset + 2] = z * inverseLength;
+        }
+    }
+
+    /*
+     * Clockwise a, b, c, d
+     */
+    private static void generateNormal(Vector3f a, Vector3f b, Vector3f c, Vector3f d, List<Vector3f> result) {
+        if (useSvdNormals) {
+            generateNormalSvd(a, b, c, d, result);
+        } else {
+            generateNormalNewell(a, b, c, d, result);
+        }
+    }
+
+    /*
+     * Newell's method: sums the edge cross products of the quad, which is exact for planar faces and
+     * a good average for slightly warped ones. A degenerate face (zero area) yields the zero vector,
+     * which intersectsWhenProjected treats as a non-separating axis.
+     */
+    private static void generateNormalNewell(Vector3f a, Vector3f b, Vector3f c, Vector3f d, List<Vector3f> result) {
+        float[] normal = new float[3];
+        newellNormal(a.x, a.y, a.z, b.x, b.y, b.z, c.x, c.y, c.z, d.x, d.y, d.z, normal, 0);
+        result.add(new Vector3f(normal));
+    }
+
+    private static void newellNormal(float ax, float ay, float az, float bx, float by, float bz,
+                                     float cx, float cy, float cz, float dx, float dy, float dz,
+                                     float[] result, int offset) {
+        float x = (ay - by) * (az + bz) + (by - cy) * (bz + cz)
+                + (cy - dy) * (cz + dz) + (dy - ay) * (dz + az);
+        float y = (az - bz) * (ax + bx) + (bz - cz) * (bx + cx)
+                + (cz - dz) * (cx + dx) + (dz - az) * (dx + ax);
+        float z = (ax - bx) * (ay + by) + (bx - cx) * (by + cy)
+                + (cx - dx) * (cy + dy) + (dx - ax) * (dy + ay);
+
+        float lengthSquared = x * x + y * y + z * z;
+        if (lengthSquared < epsilon * epsilon) {
+            result[offset] = 0;
+            result[offset + 1] = 0;
+            result[offset + 2] = 0;
+            return;
+        }
+        float inverseLength = (float) (1.0 / Math.sqrt(lengthSquared));
+        result[offset] = x * inverseLength;
+        result[offset + 1] = y * inverseLength;
+        result[offset + 2] = z * inverseLength;
+    }
+
+    /*
+     * Least-squares fit of the plane n . p = 1 through the four corners.
+     */
+    private static void generateNormalSvd(Vector3f a, Vector3f b, Vector3f c, Vector3f d, List<Vector3f> result) {
+        RealMatrix A = new BlockRealMatrix(4, 3);
+
+
+        A.setEntry(0,0, a.x);
+        A.setEntry(0,1, a.y);
+        A.setEntry(0,2, a.z);
+        A.setEntry(1,0, b.x);
+        A.setEntry(1,1, b.y);
+        A.setEntry(1,2, b.z);
+        A.setEntry(2,0, c.x);
+        A.setEntry(2,1, c.y);
+        A.setEntry(2,2, c.z);
+        A.setEntry(3,0, d.x);
+        A.setEntry(3,1, d.y);
+        A.setEntry(3,2, d.z);
+
+
+        SingularValueDecomposition svd = new SingularValueDecomposition(A);
+
+        DecompositionSolver ds = svd.getSolver();
+
+        if (!ds.isNonSingular()) {
+            // TODO: THROW ERROR
+//            Log.e("SATUtils","Singular Matrix");
+        }
+
+        RealVector normal = ds.solve(onesVector);
+
+        Vector3f normalVec = new Vector3f();
+        normalVec.x = (float) normal.getEntry(0);
+        normalVec.y = (float) normal.getEntry(1);
+        normalVec.z = (float) normal.getEntry(2);
+
+        result.add(normalVec);
+    }
+
+
+    private static boolean intersectsWhenProjected(List<Vector3f> verticesA, List<Vector3f> verticesB, Vector3f axis) {
+
+        // Handles the cross product = {0,0,0} case
+        if (isZeroAxis(axis.x, axis.y, axis.z)) {
+            return true;
+        }
+
+        float aMin = Float.MAX_VALUE;
+        float aMax = -Float.MAX_VALUE;
+        float bMin = Float.MAX_VALUE;
+        float bMax = -Float.MAX_VALUE;
+
+        // Define two intervals, a and b. Calculate their min and max values
+        for (int i = 0; i < 8; i++) {
+            float distanceA = verticesA.get(i).dot(axis);
+            aMin = (distanceA < aMin) ? distanceA : aMin;
+            aMax = (distanceA > aMax) ? distanceA : aMax;
+
+            float distanceB = verticesB.get(i).dot(axis);
+            bMin = (distanceB < bMin ) ? distanceB : bMin;
+            bMax = (distanceB > bMax ) ? distanceB : bMax;
+        }
+
+        // One-dimensional intersection test between a and b
+        float longSpan = Math.max(aMax, bMax) - Math.min(aMin, bMin);
+        float sumSpan = aMax - aMin + bMax - bMin;
+        return longSpan < sumSpan; // Change this to <= if you want the case were they are touching but not overlapping, to count as an intersection
+    }
+
+    private static boolean intersectsWhenProjected(float[] verticesA, float[] verticesB, float axisX, float axisY,
+                                                   float axisZ) {
+        if (isZeroAxis(axisX, axisY, axisZ)) {
+            return true;
+        }
+
+        float aMin = Float.MAX_VALUE;
+        float aMax = -Float.MAX_VALUE;
+        float bMin = Float.MAX_VALUE;
+        float bMax = -Float.MAX_VALUE;
+
+        for (int i = 0; i < FlatViewFrustum.VERTICES_SIZE; i += 3) {
+            float distanceA = verticesA[i] * axisX + verticesA[i + 1] * axisY + verticesA[i + 2] * axisZ;
+            aMin = (distanceA < aMin) ? distanceA : aMin;
+            aMax = (distanceA > aMax) ? distanceA : aMax;
+
+            float distanceB = verticesB[i] * axisX + verticesB[i + 1] * axisY + verticesB[i + 2] * axisZ;
+            bMin = (distanceB < bMin) ? distanceB : bMin;
+            bMax = (distanceB > bMax) ? distanceB : bMax;
+        }
+
+        float longSpan = Math.max(aMax, bMax) - Math.min(aMin, bMin);
+        float sumSpan = aMax - aMin + bMax - bMin;
+        return longSpan < sumSpan;
+    }
+
+    /* Same test as Vector3f.epsilonEquals(zero, epsilon). */
+    private static boolean isZeroAxis(float x, float y, float z) {
+        return Math.abs(x) <= epsilon && Math.abs(y) <= epsilon && Math.abs(z) <= epsilon;
+    }
+}
@@ -0,0 +1,74 @@
+package com.google.ar.core.codelab.cloudanchor.rendering;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+
+/**
+ * Speeds up repeated SAT tests of the same pair of frustums by exploiting frame-to-frame
+ * coherence. Cameras move little between frames, so:
+ *
+ * <ul>
+ *   <li>if neither frustum has changed since the last test, by {@link FlatViewFrustum#getVersion()},
+ *       the last result is returned without testing;
+ *   <li>otherwise the axis that separated the pair last time is tried first, and usually still
+ *       separates it, ending the test after one projection instead of several.
+ * </ul>
+ *
+ * <p>Keep one instance per pair. Results always match {@link SATUtils#detectCollision(
+ * FlatViewFrustum, FlatViewFrustum)}. Not thread-safe.
+ */
+public class SeparatingAxisCache {
+    private static final int NO_AXIS = -1;
+
+    private FlatViewFrustum lastA;
+    private FlatViewFrustum lastB;
+    private long versionA;
+    private long versionB;
+    private boolean overlapping;
+    private int separatingAxis = NO_AXIS;
+
+    private long unchangedCount;
+    private long axisHitCount;
+    private long testCount;
+
+    /** Returns whether {@code a} and {@code b} overlap, reusing what the last call learned. */
+    public boolean detectCollision(FlatViewFrustum a, FlatViewFrustum b) {
+        if (a == lastA && b == lastB && a.getVersion() == versionA && b.getVersion() == versionB) {
+            unchangedCount++;
+            return overlapping;
+        }
+        int cachedAxis = a == lastA && b == lastB ? separatingAxis : NO_AXIS;
+        separatingAxis = SATUtils.findSeparatingAxis(a, b, cachedAxis);
+        if (separatingAxis != NO_AXIS && separatingAxis == cachedAxis) {
+            axisHitCount++;
+        }
+        testCount++;
+        overlapping = separatingAxis == NO_AXIS;
+        lastA = a;
+        lastB = b;
+        versionA = a.getVersion();
+        versionB = b.getVersion();
+        return overlapping;
+    }
+
+    /** Forgets the last result, for example when a frustum object is reused for someone else. */
+    public void invalidate() {
+        lastA = null;
+        lastB = null;
+        separatingAxis = NO_AXIS;
+    }
+
+    /** Number of calls answered without testing, because neither frustum had changed. */
+    public long getUnchangedCount() {
+        return unchangedCount;
+    }
+
+    /** Number of tests ended by the axis that separated the pair last time. */
+    public long getAxisHitCount() {
+        return axisHitCount;
+    }
+
+    /** Number of calls that ran a test, including those counted by {@link #getAxisHitCount()}. */
+    public long getTestCount() {
+        return testCount;
+    }
+}
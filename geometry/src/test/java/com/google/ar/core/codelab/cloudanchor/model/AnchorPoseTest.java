@@ -0,0 +1,56 @@
+package com.google.ar.core.codelab.cloudanchor.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/** Checks the allocation-free inverse transform against the inverse pose. */
+public class AnchorPoseTest {
+    private static final float TOLERANCE = 1e-5f;
+
+    @Test
+    public void inverseTransformPoint_matchesInverse() {
+        Random random = new Random(1);
+        AnchorPose pose = new AnchorPose(0, 0, 0, 0, 0, 0, 1);
+        for (int i = 0; i < 1000; i++) {
+            pose.set(randomPoint(random), randomRotation(random));
+            float[] point = randomPoint(random);
+
+            float[] actual = new float[3];
+            pose.inverseTransformPoint(point, 0, actual, 0);
+
+            assertArrayEquals(pose.inverse().transformPoint(point), actual, TOLERANCE);
+        }
+    }
+
+    @Test
+    public void inverseTransformPoint_undoesTransformPoint_inPlace() {
+        Random random = new Random(2);
+        AnchorPose pose = new AnchorPose(randomPoint(random), randomRotation(random));
+        float[] point = randomPoint(random);
+
+        float[] roundTrip = pose.transformPoint(point);
+        pose.inverseTransformPoint(roundTrip, 0, roundTrip, 0);
+
+        assertArrayEquals(point, roundTrip, TOLERANCE);
+    }
+
+    private static float[] randomPoint(Random random) {
+        return new float[]{
+                10 * random.nextFloat() - 5, 10 * random.nextFloat() - 5, 10 * random.nextFloat() - 5};
+    }
+
+    private static float[] randomRotation(Random random) {
+        float[] rotation = {
+                (float) random.nextGaussian(), (float) random.nextGaussian(),
+                (float) random.nextGaussian(), (float) random.nextGaussian()};
+        float length = (float) Math.sqrt(rotation[0] * rotation[0] + rotation[1] * rotation[1]
+                + rotation[2] * rotation[2] + rotation[3] * rotation[3]);
+        for (int i = 0; i < 4; i++) {
+            rotation[i] /= length;
+        }
+        return rotation;
+    }
+}
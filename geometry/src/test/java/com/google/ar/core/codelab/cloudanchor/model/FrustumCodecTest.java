@@ -0,0 +1,78 @@
+package com.google.ar.core.codelab.cloudanchor.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrustumCodecTest {
+    private static final float VERTEX_TOLERANCE = 1e-3f;
+    private static final float NORMAL_TOLERANCE = 1e-3f;
+
+    private static final float[] VERTICES = {
+            -0.5f, 0.4f, -1, 0.5f, 0.4f, -1, -0.5f, -0.4f, -1, 0.5f, -0.4f, -1,
+            -5, 4, -10, 5, 4, -10, -5, -4, -10, 5, -4, -10};
+
+    @Test
+    public void roundTrip_keepsAxisAlignedNormals() {
+        assertNormalsRoundTrip(new float[]{
+                1, 0, 0, -1, 0, 0,
+                0, 1, 0, 0, -1, 0,
+                0, 0, 1, 0, 0, -1});
+    }
+
+    @Test
+    public void roundTrip_keepsLowerHemisphereNormals() {
+        assertNormalsRoundTrip(new float[]{
+                0.5f, 0, -0.8660254f, -0.5f, 0, -0.8660254f,
+                0, 0.6f, -0.8f, 0, -0.6f, -0.8f,
+                0.48f, -0.6f, -0.64f, -0.36f, 0.48f, -0.8f});
+    }
+
+    @Test
+    public void roundTrip_keepsUpperHemisphereAndEquatorNormals() {
+        assertNormalsRoundTrip(new float[]{
+                0.5f, 0, 0.8660254f, 0, -0.6f, 0.8f,
+                0.6f, 0.8f, 0, -0.8f, 0, 0.6f,
+                -0.48f, 0.6f, 0.64f, 0, 0.7071068f, -0.7071068f});
+    }
+
+    @Test
+    public void roundTrip_keepsZeroNormal() {
+        assertNormalsRoundTrip(new float[]{
+                0, 0, 0, 1, 0, 0,
+                0, 1, 0, 0, 0, -1,
+                0, 0, 0, -1, 0, 0});
+    }
+
+    @Test
+    public void roundTrip_withoutNormals_regeneratesThem() {
+        FlatViewFrustum frustum = new FlatViewFrustum();
+        frustum.setVertices(VERTICES);
+
+        FlatViewFrustum decoded = new FlatViewFrustum();
+        assertTrue(FrustumCodec.decode(FrustumCodec.encode(frustum), decoded));
+
+        assertTrue(FrustumCodec.maxVertexDelta(VERTICES, decoded.getVertices()) < VERTEX_TOLERANCE);
+        assertArrayClose(frustum.getNormals(), decoded.getNormals(), NORMAL_TOLERANCE);
+    }
+
+    private static void assertNormalsRoundTrip(float[] normals) {
+        FlatViewFrustum frustum = new FlatViewFrustum();
+        frustum.setVertices(VERTICES);
+        frustum.setNormals(normals);
+
+        FlatViewFrustum decoded = new FlatViewFrustum();
+        assertTrue(FrustumCodec.decode(FrustumCodec.encode(frustum, true), decoded));
+
+        assertTrue(FrustumCodec.maxVertexDelta(VERTICES, decoded.getVertices()) < VERTEX_TOLERANCE);
+        assertArrayClose(normals, decoded.getNormals(), NORMAL_TOLERANCE);
+    }
+
+    private static void assertArrayClose(float[] expected, float[] actual, float tolerance) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("component " + i, expected[i], actual[i], tolerance);
+        }
+    }
+}
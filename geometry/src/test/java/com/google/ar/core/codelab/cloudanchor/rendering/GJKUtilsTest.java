@@ -0,0 +1,178 @@
+package com.google.ar.core.codelab.cloudanchor.rendering;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares GJK and EPA on axis-aligned boxes, whose distance and penetration depth are known in
+ * closed form: the distance is the length of the per-axis gaps, the depth the smallest per-axis
+ * overlap.
+ */
+public class GJKUtilsTest {
+    private static final float TOLERANCE = 1e-5f;
+
+    private final GJKUtils.Result result = new GJKUtils.Result();
+
+    @Test
+    public void computeProximity_apartAcrossAFace_returnsTheGap() {
+        FlatViewFrustum a = box(0, 0, 0, 1);
+        FlatViewFrustum b = box(0.3f, -0.4f, 2.5f, 1);
+
+        GJKUtils.computeProximity(a, b, true, result);
+
+        assertFalse(result.isOverlapping());
+        assertEquals(0.5f, result.getDistance(), TOLERANCE);
+        assertAxis(0, 0, -1);
+    }
+
+    @Test
+    public void computeProximity_apartAcrossACorner_returnsTheDiagonalGap() {
+        FlatViewFrustum a = box(0, 0, 0, 1);
+        FlatViewFrustum b = box(2.3f, 2.4f, -3.2f, 1);
+
+        GJKUtils.computeProximity(a, b, true, result);
+
+        assertFalse(result.isOverlapping());
+        assertEquals((float) Math.sqrt(0.3 * 0.3 + 0.4 * 0.4 + 1.2 * 1.2), result.getDistance(), TOLERANCE);
+    }
+
+    @Test
+    public void computeProximity_overlapping_returnsTheShallowestAxis() {
+        FlatViewFrustum a = box(0, 0, 0, 1);
+        FlatViewFrustum b = box(0.5f, -1.7f, 0.2f, 1);
+
+        GJKUtils.computeProximity(a, b, true, result);
+
+        assertTrue(result.isOverlapping());
+        assertEquals(0.3f, result.getPenetrationDepth(), TOLERANCE);
+        assertAxis(0, 1, 0);
+    }
+
+    @Test
+    public void computeProximity_identicalBoxes_returnsTheFullWidth() {
+        GJKUtils.computeProximity(box(1, 2, 3, 0.5f), box(1, 2, 3, 0.5f), true, result);
+
+        assertTrue(result.isOverlapping());
+        assertEquals(1, result.getPenetrationDepth(), TOLERANCE);
+    }
+
+    @Test
+    public void computeProximity_barelyApart_isNotOverlapping() {
+        FlatViewFrustum a = box(0, 0, 0, 1);
+        FlatViewFrustum b = box(-0.0901f, -1.0715f, -2.000009f, 1);
+
+        GJKUtils.computeProximity(a, b, true, result);
+
+        assertFalse(result.isOverlapping());
+        assertEquals(expectedSignedDistance(a, b), result.getSignedDistance(), TOLERANCE);
+        assertEquals(0, result.getPenetrationDepth(), 0);
+    }
+
+    @Test
+    public void computeProximity_touching_returnsZeroDepthAlongTheContactNormal() {
+        FlatViewFrustum a = box(0, 0, 0, 1);
+        FlatViewFrustum b = box(0.6f, -1.2f, -2, 1);
+
+        GJKUtils.computeProximity(a, b, true, result);
+
+        assertTrue(result.isOverlapping());
+        assertEquals(0, result.getPenetrationDepth(), TOLERANCE);
+        assertAxis(0, 0, 1);
+    }
+
+    @Test
+    public void computeProximity_randomBoxes_matchClosedForm() {
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            float halfA = 0.2f + 2 * random.nextFloat();
+            float halfB = 0.2f + 2 * random.nextFloat();
+            float reach = 1.1f * (halfA + halfB);
+            float[] center = {
+                    reach * (2 * random.nextFloat() - 1),
+                    reach * (2 * random.nextFloat() - 1),
+                    reach * (2 * random.nextFloat() - 1)};
+            if (i % 2 == 1) {
+                // Put every other pair within a few micrometres of touching along one axis.
+                int axis = random.nextInt(3);
+                float sign = random.nextBoolean() ? 1 : -1;
+                center[axis] = sign * (halfA + halfB + (float) (random.nextGaussian() * 1e-5));
+            }
+            FlatViewFrustum a = box(0, 0, 0, halfA);
+            FlatViewFrustum b = box(center[0], center[1], center[2], halfB);
+
+            GJKUtils.computeProximity(a, b, true, result);
+
+            float expected = expectedSignedDistance(a, b);
+            assertEquals("pair " + i, expected, result.getSignedDistance(), TOLERANCE);
+            if (Math.abs(expected) > TOLERANCE) {
+                assertEquals("pair " + i, expected < 0, GJKUtils.detectCollision(a, b, new GJKUtils.Result()));
+            }
+        }
+    }
+
+    @Test
+    public void isWithinDistance_comparesAgainstTheGap() {
+        FlatViewFrustum a = box(0, 0, 0, 1);
+        FlatViewFrustum b = box(4, 0, 0, 1);
+
+        assertTrue(GJKUtils.isWithinDistance(a, b, 2.1f, result));
+        assertFalse(GJKUtils.isWithinDistance(a, b, 1.9f, result));
+    }
+
+    private void assertAxis(float x, float y, float z) {
+        float[] axis = new float[3];
+        result.getAxis(axis);
+        assertArrayEquals(new float[]{x, y, z}, axis, TOLERANCE);
+    }
+
+    /* An axis-aligned cube as a frustum: near face at +z, far face at -z. */
+    private static FlatViewFrustum box(float x, float y, float z, float halfSize) {
+        float[] vertices = new float[FlatViewFrustum.VERTICES_SIZE];
+        int i = 0;
+        for (int face = 0; face < 2; face++) {
+            float cornerZ = face == 0 ? z + halfSize : z - halfSize;
+            for (int row = 0; row < 2; row++) {
+                float cornerY = row == 0 ? y + halfSize : y - halfSize;
+                vertices[i++] = x - halfSize;
+                vertices[i++] = cornerY;
+                vertices[i++] = cornerZ;
+                vertices[i++] = x + halfSize;
+                vertices[i++] = cornerY;
+                vertices[i++] = cornerZ;
+            }
+        }
+        FlatViewFrustum frustum = new FlatViewFrustum();
+        frustum.setVertices(vertices);
+        return frustum;
+    }
+
+    /* Distance between the boxes if apart, minus the smallest per-axis overlap if not. */
+    private static float expectedSignedDistance(FlatViewFrustum a, FlatViewFrustum b) {
+        float[] verticesA = a.getVertices();
+        float[] verticesB = b.getVertices();
+        int last = FlatViewFrustum.VERTICES_SIZE - 3;
+        double gapSquared = 0;
+        double depth = Double.MAX_VALUE;
+        for (int axis = 0; axis < 3; axis++) {
+            // The first and last corners are opposite, so they span the box on every axis.
+            double minA = Math.min(verticesA[axis], verticesA[last + axis]);
+            double maxA = Math.max(verticesA[axis], verticesA[last + axis]);
+            double minB = Math.min(verticesB[axis], verticesB[last + axis]);
+            double maxB = Math.max(verticesB[axis], verticesB[last + axis]);
+            double gap = Math.max(minB - maxA, minA - maxB);
+            if (gap > 0) {
+                gapSquared += gap * gap;
+            }
+            depth = Math.min(depth, -gap);
+        }
+        return (float) (gapSquared > 0 ? Math.sqrt(gapSquared) : -depth);
+    }
+}
@@ -0,0 +1,177 @@
+package com.google.ar.core.codelab.cloudanchor.rendering;
+
+import com.google.ar.core.codelab.cloudanchor.model.AnchorPose;
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.Ray;
+import com.google.ar.core.codelab.cloudanchor.model.ViewConfig;
+import com.google.ar.core.codelab.cloudanchor.model.ViewFrustum;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import javax.vecmath.Vector2f;
+import javax.vecmath.Vector3f;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the allocation-free frustum corners against the original list-based implementation,
+ * kept below with android.opengl.Matrix swapped for MatrixUtils. The outputs must match exactly.
+ */
+public class PointUtilsTest {
+    private static final float SCREEN_WIDTH = 1080;
+    private static final float SCREEN_HEIGHT = 1920;
+    private static final float NEAR_CLIP = 0.01f;
+    private static final float FAR_CLIP = 10.0f;
+
+    // Column-major, as ARCore hands them out.
+    private static final float[] PROJECTION = {
+            2.9056f, 0, 0, 0,
+            0, 1.6343f, 0, 0,
+            0.0061f, -0.0113f, -1.0002f, -1,
+            0, 0, -0.0200f, 0};
+    private static final float[][] VIEWS = {
+            {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1},
+            {0.8660f, 0, -0.5f, 0, 0, 1, 0, 0, 0.5f, 0, 0.8660f, 0, -0.3f, -1.4f, 0.25f, 1},
+            {0.7071f, -0.4082f, 0.5774f, 0, 0, 0.8165f, 0.5774f, 0,
+                    -0.7071f, -0.4082f, 0.5774f, 0, 2.1f, -0.6f, -3.7f, 1},
+            {-0.9397f, 0.1170f, -0.3214f, 0, 0, 0.9397f, 0.3420f, 0,
+                    0.3420f, 0.3214f, -0.8830f, 0, 5.2f, 0.8f, 12.5f, 1},
+    };
+
+    @Test
+    public void setFrustumWorldCoords_matchesListBasedImplementation() {
+        ViewConfig viewConfig = viewConfig();
+        for (float[] view : VIEWS) {
+            ViewFrustum expected = new ViewFrustum();
+            legacySetFrustumWorldCoords(expected, viewConfig, SCREEN_WIDTH, SCREEN_HEIGHT, PROJECTION, view,
+                    NEAR_CLIP, FAR_CLIP);
+
+            ViewFrustum actual = new ViewFrustum();
+            PointUtils.setFrustumWorldCoords(actual, viewConfig, SCREEN_WIDTH, SCREEN_HEIGHT, PROJECTION, view,
+                    NEAR_CLIP, FAR_CLIP);
+            FlatViewFrustum flat = new FlatViewFrustum();
+            PointUtils.setFrustumWorldCoords(flat, viewConfig, SCREEN_WIDTH, SCREEN_HEIGHT, PROJECTION, view,
+                    NEAR_CLIP, FAR_CLIP);
+
+            List<Vector3f> expectedPoints = expected.getPoints();
+            for (int i = 0; i < 8; i++) {
+                Vector3f point = expectedPoints.get(i);
+                assertEquals(point, actual.getPoints().get(i));
+                assertEquals(point.x, flat.getVertices()[i * 3], 0);
+                assertEquals(point.y, flat.getVertices()[i * 3 + 1], 0);
+                assertEquals(point.z, flat.getVertices()[i * 3 + 2], 0);
+            }
+        }
+    }
+
+    @Test
+    public void computeFrustumWorldCoords_usesCornerOffsets() {
+        ViewConfig viewConfig = viewConfig();
+        float[] view = VIEWS[2];
+        ViewFrustum expected = new ViewFrustum();
+        legacySetFrustumWorldCoords(expected, viewConfig, SCREEN_WIDTH, SCREEN_HEIGHT, PROJECTION, view,
+                NEAR_CLIP, FAR_CLIP);
+
+        float[] coords = new float[PointUtils.FRUSTUM_COORDS_SIZE];
+        PointUtils.computeFrustumWorldCoords(coords, viewConfig, SCREEN_WIDTH, SCREEN_HEIGHT, PROJECTION, view,
+                NEAR_CLIP, FAR_CLIP);
+
+        assertPoint(expected.getTopLeftNear(), coords, PointUtils.TOP_LEFT_NEAR);
+        assertPoint(expected.getTopRightNear(), coords, PointUtils.TOP_RIGHT_NEAR);
+        assertPoint(expected.getBottomLeftNear(), coords, PointUtils.BOTTOM_LEFT_NEAR);
+        assertPoint(expected.getBottomRightNear(), coords, PointUtils.BOTTOM_RIGHT_NEAR);
+        assertPoint(expected.getTopLeftFar(), coords, PointUtils.TOP_LEFT_FAR);
+        assertPoint(expected.getTopRightFar(), coords, PointUtils.TOP_RIGHT_FAR);
+        assertPoint(expected.getBottomLeftFar(), coords, PointUtils.BOTTOM_LEFT_FAR);
+        assertPoint(expected.getBottomRightFar(), coords, PointUtils.BOTTOM_RIGHT_FAR);
+    }
+
+    @Test
+    public void transformFrustumCoords_viewFrustum_matchesPackedOverload() {
+        AnchorPose anchorPose = new AnchorPose(new float[]{0.3f, -1.2f, 2.5f},
+                new float[]{0.1830f, 0.5000f, -0.1830f, 0.8271f});
+        ViewFrustum viewFrustum = new ViewFrustum();
+        PointUtils.setFrustumWorldCoords(viewFrustum, viewConfig(), SCREEN_WIDTH, SCREEN_HEIGHT, PROJECTION,
+                VIEWS[3], NEAR_CLIP, FAR_CLIP);
+        FlatViewFrustum flat = new FlatViewFrustum(viewFrustum.getPoints());
+
+        PointUtils.transformFrustumCoords(viewFrustum, anchorPose);
+        PointUtils.transformFrustumCoords(flat, anchorPose);
+
+        for (int i = 0; i < 8; i++) {
+            assertPoint(viewFrustum.getPoints().get(i), flat.getVertices(), i * 3);
+        }
+    }
+
+    private static void assertPoint(Vector3f expected, float[] coords, int offset) {
+        assertEquals(expected.x, coords[offset], 0);
+        assertEquals(expected.y, coords[offset + 1], 0);
+        assertEquals(expected.z, coords[offset + 2], 0);
+    }
+
+    private static ViewConfig viewConfig() {
+        ViewConfig viewConfig = new ViewConfig();
+        viewConfig.setTop(0.3f * SCREEN_HEIGHT);
+        viewConfig.setBottom(0.7f * SCREEN_HEIGHT);
+        viewConfig.setLeft(0.2f * SCREEN_WIDTH);
+        viewConfig.setRight(0.8f * SCREEN_WIDTH);
+        return viewConfig;
+    }
+
+    // The implementation before the corners were computed without allocation.
+
+    private static void legacySetFrustumWorldCoords(ViewFrustum viewFrustum, ViewConfig viewConfig,
+                                                    float screenWidth, float screenHeight,
+                                                    float[] projectionMatrix, float[] viewMatrix,
+                                                    float nearClip, float farClip) {
+        Vector2f[] corners = {
+                new Vector2f(viewConfig.getLeft(), viewConfig.getTop()),
+                new Vector2f(viewConfig.getRight(), viewConfig.getTop()),
+                new Vector2f(viewConfig.getLeft(), viewConfig.getBottom()),
+                new Vector2f(viewConfig.getRight(), viewConfig.getBottom())};
+        for (int i = 0; i < corners.length; i++) {
+            Ray ray = legacyProjectRay(corners[i], screenWidth, screenHeight, projectionMatrix, viewMatrix);
+            Vector3f nearPoint = new Vector3f(ray.origin);
+            Vector3f nearDirection = new Vector3f(ray.direction);
+            nearDirection.scale(nearClip);
+            nearPoint.add(nearDirection);
+            Vector3f farPoint = new Vector3f(ray.origin);
+            Vector3f farDirection = new Vector3f(ray.direction);
+            farDirection.scale(farClip);
+            farPoint.add(farDirection);
+            viewFrustum.getPoints().set(i, nearPoint);
+            viewFrustum.getPoints().set(i + 4, farPoint);
+        }
+    }
+
+    private static Ray legacyProjectRay(Vector2f touchPoint, float screenWidth, float screenHeight,
+                                        float[] projectionMatrix, float[] viewMatrix) {
+        float[] viewProjMtx = new float[16];
+        MatrixUtils.multiplyMM(viewProjMtx, 0, projectionMatrix, 0, viewMatrix, 0);
+        return legacyScreenPointToRay(touchPoint, new Vector2f(screenWidth, screenHeight), viewProjMtx);
+    }
+
+    private static Ray legacyScreenPointToRay(Vector2f point, Vector2f viewportSize, float[] viewProjMtx) {
+        point.y = viewportSize.y - point.y;
+        float x = point.x * 2.0F / viewportSize.x - 1.0F;
+        float y = point.y * 2.0F / viewportSize.y - 1.0F;
+        float[] farScreenPoint = new float[]{x, y, 1.0F, 1.0F};
+        float[] nearScreenPoint = new float[]{x, y, -1.0F, 1.0F};
+        float[] nearPlanePoint = new float[4];
+        float[] farPlanePoint = new float[4];
+        float[] invertedProjectionMatrix = new float[16];
+        MatrixUtils.setIdentityM(invertedProjectionMatrix, 0);
+        MatrixUtils.invertM(invertedProjectionMatrix, 0, viewProjMtx, 0);
+        MatrixUtils.multiplyMV(nearPlanePoint, 0, invertedProjectionMatrix, 0, nearScreenPoint, 0);
+        MatrixUtils.multiplyMV(farPlanePoint, 0, invertedProjectionMatrix, 0, farScreenPoint, 0);
+        Vector3f direction = new Vector3f(farPlanePoint[0] / farPlanePoint[3],
+                farPlanePoint[1] / farPlanePoint[3], farPlanePoint[2] / farPlanePoint[3]);
+        Vector3f origin = new Vector3f(nearPlanePoint[0] / nearPlanePoint[3],
+                nearPlanePoint[1] / nearPlanePoint[3], nearPlanePoint[2] / nearPlanePoint[3]);
+        direction.sub(origin);
+        direction.normalize();
+        return new Ray(origin, direction);
+    }
+}
@@ -0,0 +1,133 @@
+package com.google.ar.core.codelab.cloudanchor.rendering;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Checks the packed SAT test against GJK, whose signed distance says which pairs overlap. */
+public class SATUtilsTest {
+    private static final float TOLERANCE = 1e-4f;
+
+    private final GJKUtils.Result result = new GJKUtils.Result();
+
+    @Test
+    public void detectCollision_apartEdgeToEdge_isApart() {
+        // Two cubes turned 45 degrees, one about z and one about y, so that an edge of each faces
+        // the other. No face normal separates them, but the cross product of those edges does.
+        float quarter = (float) Math.PI / 4;
+        FlatViewFrustum a = place(cube(1), 0, 0, 0, 0, 0, quarter);
+        FlatViewFrustum b = place(cube(1), 2 * (float) Math.sqrt(2) + 0.1f, 0, 0, 0, quarter, 0);
+
+        GJKUtils.computeProximity(a, b, false, result);
+        assertFalse(result.isOverlapping());
+        assertTrue(SATUtils.findSeparatingAxis(a, b, -1) >= 2 * FlatViewFrustum.FACE_COUNT);
+        assertFalse(SATUtils.detectCollision(a, b));
+    }
+
+    @Test
+    public void detectCollision_randomFrustums_matchesGjk() {
+        Random random = new Random(1);
+        int edgeSeparated = 0;
+        for (int i = 0; i < 20000; i++) {
+            FlatViewFrustum a = randomFrustum(random);
+            FlatViewFrustum b = randomFrustum(random);
+
+            GJKUtils.computeProximity(a, b, false, result);
+            if (Math.abs(result.getSignedDistance()) <= TOLERANCE) {
+                continue;
+            }
+
+            boolean overlapping = SATUtils.detectCollision(a, b);
+            assertEquals("pair " + i, result.isOverlapping(), overlapping);
+            int axis = SATUtils.findSeparatingAxis(a, b, -1);
+            assertEquals("pair " + i, overlapping, axis == -1);
+            if (axis >= 2 * FlatViewFrustum.FACE_COUNT) {
+                edgeSeparated++;
+            }
+        }
+        // Without the edge axes, these pairs would all have been reported as overlapping.
+        assertTrue(edgeSeparated > 0);
+    }
+
+    @Test
+    public void findSeparatingAxis_triesTheGivenAxisFirst() {
+        FlatViewFrustum a = place(cube(1), 0, 0, 0, 0, 0, 0);
+        FlatViewFrustum b = place(cube(1), 5, 5, 0, 0, 0, 0);
+
+        int first = SATUtils.findSeparatingAxis(a, b, -1);
+        int other = first == 1 ? 3 : 1;
+
+        assertTrue(first >= 0);
+        assertEquals(other, SATUtils.findSeparatingAxis(a, b, other));
+    }
+
+    private static FlatViewFrustum randomFrustum(Random random) {
+        float near = 0.05f + 0.5f * random.nextFloat();
+        float far = near + 0.2f + 1.5f * random.nextFloat();
+        float halfWidth = 0.2f + random.nextFloat();
+        float halfHeight = 0.2f + random.nextFloat();
+        float[] vertices = corners(halfWidth * near, halfHeight * near, -near, halfWidth * far, halfHeight * far,
+                -far);
+        return place(vertices, 3 * random.nextFloat() - 1.5f, 3 * random.nextFloat() - 1.5f,
+                3 * random.nextFloat() - 1.5f, (float) (2 * Math.PI * random.nextFloat()),
+                (float) (2 * Math.PI * random.nextFloat()), (float) (2 * Math.PI * random.nextFloat()));
+    }
+
+    /* Packed corners of a cube as a frustum: near face at +z, far face at -z. */
+    private static float[] cube(float halfSize) {
+        return corners(halfSize, halfSize, halfSize, halfSize, halfSize, -halfSize);
+    }
+
+    /* Packed corners of a frustum with its near face at depth nearZ and its far face at farZ. */
+    private static float[] corners(float nearHalfWidth, float nearHalfHeight, float nearZ,
+                                   float farHalfWidth, float farHalfHeight, float farZ) {
+        float[] vertices = new float[FlatViewFrustum.VERTICES_SIZE];
+        int i = 0;
+        for (int face = 0; face < 2; face++) {
+            float halfWidth = face == 0 ? nearHalfWidth : farHalfWidth;
+            float halfHeight = face == 0 ? nearHalfHeight : farHalfHeight;
+            for (int row = 0; row < 2; row++) {
+                vertices[i++] = -halfWidth;
+                vertices[i++] = row == 0 ? halfHeight : -halfHeight;
+                vertices[i++] = face == 0 ? nearZ : farZ;
+                vertices[i++] = halfWidth;
+                vertices[i++] = row == 0 ? halfHeight : -halfHeight;
+                vertices[i++] = face == 0 ? nearZ : farZ;
+            }
+        }
+        return vertices;
+    }
+
+    /* Rotates the corners about x, then y, then z, and moves them by (x, y, z). */
+    private static FlatViewFrustum place(float[] vertices, float x, float y, float z,
+                                         float rotateX, float rotateY, float rotateZ) {
+        float[] point = new float[3];
+        for (int i = 0; i < FlatViewFrustum.VERTICES_SIZE; i += 3) {
+            System.arraycopy(vertices, i, point, 0, 3);
+            rotate(point, 1, 2, rotateX);
+            rotate(point, 2, 0, rotateY);
+            rotate(point, 0, 1, rotateZ);
+            vertices[i] = point[0] + x;
+            vertices[i + 1] = point[1] + y;
+            vertices[i + 2] = point[2] + z;
+        }
+        FlatViewFrustum frustum = new FlatViewFrustum();
+        frustum.setVertices(vertices);
+        return frustum;
+    }
+
+    private static void rotate(float[] point, int first, int second, float angle) {
+        float cos = (float) Math.cos(angle);
+        float sin = (float) Math.sin(angle);
+        float x = point[first];
+        float y = point[second];
+        point[first] = cos * x - sin * y;
+        point[second] = sin * x + cos * y;
+    }
+}
@@ -25,6 +25,7 @@ public class StorageManager {
   private static final String SHARED_PREFS_NAME = "cloud_anchor_codelab_short_codes";
   private static final String NEXT_SHORT_CODE = "next_short_code";
   private static final String KEY_PREFIX = "anchor;";
+  private static final String STORED_AT_PREFIX = "stored_at;";
   private static final int INITIAL_SHORT_CODE = 1;
 
   /** Gets a new short code that can be used to store the anchor ID. */
@@ -50,4 +51,38 @@ public class StorageManager {
     SharedPreferences sharedPrefs = activity.getPreferences(Context.MODE_PRIVATE);
     return sharedPrefs.getString(KEY_PREFIX + shortCode, "");
   }
+
+  /**
+   * Stores the cloud anchor ID in the app-wide SharedPreferences, along with the time it was
+   * stored, so it can be read back from any activity or service.
+   */
+  public void storeUsingShortCode(Context context, int shortCode, String cloudAnchorId) {
+    SharedPreferences sharedPrefs =
+        context.getSharedPreferences(SHARED_PREFS_NAME, Context.MODE_PRIVATE);
+    sharedPrefs
+        .edit()
+        .putString(KEY_PREFIX + shortCode, cloudAnchorId)
+        .putLong(STORED_AT_PREFIX + shortCode, System.currentTimeMillis())
+        .apply();
+  }
+
+  /**
+   * Retrieves a cloud anchor ID stored with {@link #storeUsingShortCode(Context, int, String)}.
+   * Returns an empty string if none was stored for this short code.
+   */
+  public String getCloudAnchorId(Context context, int shortCode) {
+    SharedPreferences sharedPrefs =
+        context.getSharedPreferences(SHARED_PREFS_NAME, Context.MODE_PRIVATE);
+    return sharedPrefs.getString(KEY_PREFIX + shortCode, "");
+  }
+
+  /**
+   * Returns when the cloud anchor ID for this short code was stored, in {@link
+   * System#currentTimeMillis()} time, or 0 if it was not.
+   */
+  public long getStoredAtMillis(Context context, int shortCode) {
+    SharedPreferences sharedPrefs =
+        context.getSharedPreferences(SHARED_PREFS_NAME, Context.MODE_PRIVATE);
+    return sharedPrefs.getLong(STORED_AT_PREFIX + shortCode, 0);
+  }
 }
@@ -0,0 +1,280 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Runs many long-lived cloud operations, such as hosting and resolving anchors, that can only be
+ * observed by polling. Operations wait in priority order, at most {@code maxConcurrent} run at
+ * once, each has a deadline covering all of its attempts, and retryable failures are retried with
+ * exponential backoff.
+ *
+ * <p>{@link #update(long)} is meant to be called every frame. Each running operation is polled at
+ * most once per poll interval, and waiting or backing-off operations are not looked at until they
+ * are due, so a frame in which nothing is due costs a few heap peeks.
+ *
+ * <p>Not thread-safe; call every method from the same thread. Callbacks run at the end of
+ * {@link #update(long)}, so they may submit new operations.
+ *
+ * @param <H> the handle a started operation is observed through, such as an anchor
+ */
+public class CloudOperationPipeline<H> {
+    /** State of an operation, as reported by {@link Operation#poll} and to callbacks. */
+    public enum Status {
+        IN_PROGRESS,
+        SUCCESS,
+        /** Failed, but may succeed if started again. */
+        RETRYABLE_ERROR,
+        ERROR,
+        /** Only reported to callbacks: the deadline passed first. */
+        TIMED_OUT
+    }
+
+    /** One host or resolve operation, which the pipeline may start several times. */
+    public interface Operation<H> {
+        /** Starts an attempt and returns its handle, or null if it could not be started. */
+        H start();
+
+        Status poll(H handle);
+
+        /** Abandons an attempt that will not be polled again. */
+        void cancel(H handle);
+    }
+
+    /** Receives the final state of an operation. */
+    public interface Callback<H> {
+        /**
+         * @param handle the last attempt's handle; null if it timed out or never started
+         * @param status {@link Status#SUCCESS}, {@link Status#ERROR} or {@link Status#TIMED_OUT}
+         */
+        void onComplete(H handle, Status status);
+    }
+
+    /** A submitted operation, which can be cancelled. */
+    public final class Ticket {
+        private final Operation<H> operation;
+        private final Callback<H> callback;
+        private final int priority;
+        private final long sequence;
+        private final long deadline;
+        private final int maxAttempts;
+        private int attempts = 0;
+        private H handle;
+        private long dueAt;
+        private boolean running = false;
+        private boolean finished = false;
+
+        private Ticket(Operation<H> operation, Callback<H> callback, int priority, long sequence,
+                       long deadline, int maxAttempts) {
+            this.operation = operation;
+            this.callback = callback;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.deadline = deadline;
+            this.maxAttempts = maxAttempts;
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+
+        /** Stops the operation without calling its callback. */
+        public void cancel() {
+            if (!finished) {
+                if (running) {
+                    operation.cancel(handle);
+                    runningCount--;
+                }
+                finished = true;
+            }
+        }
+    }
+
+    private final int maxConcurrent;
+    private final long pollIntervalMillis;
+    private final long retryBackoffMillis;
+
+    // Finished tickets are dropped lazily when they reach the head of a queue.
+    private final PriorityQueue<Ticket> waiting = new PriorityQueue<>(
+            Comparator.<Ticket>comparingInt(ticket -> -ticket.priority)
+                    .thenComparingLong(ticket -> ticket.sequence));
+    private final PriorityQueue<Ticket> backingOff =
+            new PriorityQueue<>(Comparator.comparingLong(ticket -> ticket.dueAt));
+    private final PriorityQueue<Ticket> running =
+            new PriorityQueue<>(Comparator.comparingLong(ticket -> ticket.dueAt));
+    private final PriorityQueue<Ticket> deadlines =
+            new PriorityQueue<>(Comparator.comparingLong(ticket -> ticket.deadline));
+    private final List<Ticket> completed = new ArrayList<>();
+    private final List<Status> completedStatuses = new ArrayList<>();
+    private int runningCount = 0;
+    private long nextSequence = 0;
+
+    /**
+     * @param maxConcurrent how many operations may run at once
+     * @param pollIntervalMillis how often a running operation is polled
+     * @param retryBackoffMillis delay before the first retry; doubled for each later one
+     */
+    public CloudOperationPipeline(int maxConcurrent, long pollIntervalMillis, long retryBackoffMillis) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be positive, got " + maxConcurrent);
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
+
+    /**
+     * Queues {@code operation}. Higher priorities start first; equal priorities start in
+     * submission order. The operation starts on the next {@link #update(long)} with a free slot.
+     *
+     * @param now the current time, on the same clock as {@link #update(long)}
+     * @param timeoutMillis time from now after which the operation is abandoned
+     * @param maxAttempts how many times to start it in total
+     */
+    public Ticket submit(Operation<H> operation, int priority, long now, long timeoutMillis,
+                         int maxAttempts, Callback<H> callback) {
+        Ticket ticket = new Ticket(operation, callback, priority, nextSequence++, now + timeoutMillis,
+                Math.max(1, maxAttempts));
+        waiting.add(ticket);
+        deadlines.add(ticket);
+        return ticket;
+    }
+
+    /** Advances every operation that is due at {@code now}, in milliseconds. */
+    public void update(long now) {
+        expire(now);
+        while (!backingOff.isEmpty() && backingOff.peek().dueAt <= now) {
+            Ticket ticket = backingOff.poll();
+            if (!ticket.finished) {
+                waiting.add(ticket);
+            }
+        }
+        pollRunning(now);
+        startWaiting(now);
+        deliverCompleted();
+    }
+
+    /** Cancels every operation without calling its callback. */
+    public void cancelAll() {
+        for (Ticket ticket : deadlines) {
+            ticket.cancel();
+        }
+        waiting.clear();
+        backingOff.clear();
+        running.clear();
+        deadlines.clear();
+        runningCount = 0;
+    }
+
+    public int getRunningCount() {
+        return runningCount;
+    }
+
+    /** Number of operations submitted but not yet finished, running or not. */
+    public int getPendingCount() {
+        int pending = 0;
+        for (Ticket ticket : deadlines) {
+            if (!ticket.finished) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    private void expire(long now) {
+        while (!deadlines.isEmpty()) {
+            Ticket ticket = deadlines.peek();
+            if (!ticket.finished && ticket.deadline > now) {
+                return;
+            }
+            deadlines.poll();
+            if (!ticket.finished) {
+                ticket.cancel();
+                ticket.handle = null;
+                complete(ticket, Status.TIMED_OUT);
+            }
+        }
+    }
+
+    private void pollRunning(long now) {
+        while (!running.isEmpty() && running.peek().dueAt <= now) {
+            Ticket ticket = running.poll();
+            if (ticket.finished) {
+                continue;
+            }
+            Status status = ticket.operation.poll(ticket.handle);
+            switch (status) {
+                case IN_PROGRESS:
+                    ticket.dueAt = now + pollIntervalMillis;
+                    running.add(ticket);
+                    break;
+                case RETRYABLE_ERROR:
+                    ticket.running = false;
+                    runningCount--;
+                    if (ticket.attempts < ticket.maxAttempts) {
+                        ticket.operation.cancel(ticket.handle);
+                        retry(ticket, now);
+                    } else {
+                        // The last attempt's handle is handed over, so the caller can see why.
+                        ticket.finished = true;
+                        complete(ticket, Status.ERROR);
+                    }
+                    break;
+                default:
+                    ticket.running = false;
+                    runningCount--;
+                    ticket.finished = true;
+                    complete(ticket, status == Status.SUCCESS ? Status.SUCCESS : Status.ERROR);
+                    break;
+            }
+        }
+    }
+
+    private void startWaiting(long now) {
+        while (runningCount < maxConcurrent && !waiting.isEmpty()) {
+            Ticket ticket = waiting.poll();
+            if (ticket.finished) {
+                continue;
+            }
+            ticket.attempts++;
+            H handle = ticket.operation.start();
+            if (handle == null) {
+                ticket.handle = null;
+                if (ticket.attempts < ticket.maxAttempts) {
+                    retry(ticket, now);
+                } else {
+                    ticket.finished = true;
+                    complete(ticket, Status.ERROR);
+                }
+                continue;
+            }
+            ticket.handle = handle;
+            ticket.running = true;
+            runningCount++;
+            ticket.dueAt = now + pollIntervalMillis;
+            running.add(ticket);
+        }
+    }
+
+    private void retry(Ticket ticket, long now) {
+        ticket.dueAt = now + (retryBackoffMillis << Math.min(ticket.attempts - 1, 16));
+        backingOff.add(ticket);
+    }
+
+    private void complete(Ticket ticket, Status status) {
+        completed.add(ticket);
+        completedStatuses.add(status);
+    }
+
+    // Callbacks run last so they can submit new operations without disturbing the queues.
+    private void deliverCompleted() {
+        for (int i = 0; i < completed.size(); i++) {
+            Ticket ticket = completed.get(i);
+            ticket.callback.onComplete(ticket.handle, completedStatuses.get(i));
+        }
+        completed.clear();
+        completedStatuses.clear();
+    }
+}
@@ -0,0 +1,69 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * A fixed-capacity cache that evicts the least recently used entry when full and drops entries
+ * once their time to live has passed. Times are read from {@code clock}, in milliseconds.
+ *
+ * <p>Thread-safe.
+ */
+public class ExpiringLruCache<K, V> {
+    private static final class Timed<V> {
+        final V value;
+        final long expiresAt;
+
+        Timed(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final LinkedHashMap<K, Timed<V>> entries;
+    private final LongSupplier clock;
+
+    public ExpiringLruCache(int capacity, LongSupplier clock) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+        }
+        this.clock = clock;
+        this.entries = new LinkedHashMap<K, Timed<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Timed<V>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** Returns the value for {@code key}, or null if there is none or it has expired. */
+    public synchronized V get(K key) {
+        Timed<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (clock.getAsLong() >= entry.expiresAt) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /** Stores {@code value}, which must not be null, for {@code ttlMillis} from now. */
+    public synchronized void put(K key, V value, long ttlMillis) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        entries.put(key, new Timed<>(value, clock.getAsLong() + ttlMillis));
+    }
+
+    public synchronized void remove(K key) {
+        entries.remove(key);
+    }
+
+    /** Number of entries held, including expired ones not yet looked up. */
+    public synchronized int size() {
+        return entries.size();
+    }
+}
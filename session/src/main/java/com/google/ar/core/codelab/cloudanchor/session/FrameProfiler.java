@@ -0,0 +1,159 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import java.util.Locale;
+import java.util.function.LongSupplier;
+
+/**
+ * Times the phases of a per-frame update into {@link LatencyHistogram}s, plus the whole frame and,
+ * where the platform can count them, the objects allocated during it. A frame is
+ * {@link #beginFrame()}, then {@link #mark(int)} at the end of each phase that ran, then
+ * {@link #endFrame()}. Each mark records the time since the previous mark, so a phase skipped in a
+ * frame is simply not marked. None of these calls allocate.
+ *
+ * <p>Not thread-safe; use it from the thread that runs the frames, or under its lock.
+ */
+public class FrameProfiler {
+    /** An immutable copy of the profiler's histograms. */
+    public static final class Snapshot {
+        private final String[] phaseNames;
+        private final LatencyHistogram[] phases;
+        private final LatencyHistogram frame;
+        private final LatencyHistogram allocations;
+
+        private Snapshot(String[] phaseNames, LatencyHistogram[] phases, LatencyHistogram frame,
+                         LatencyHistogram allocations) {
+            this.phaseNames = phaseNames;
+            this.phases = phases;
+            this.frame = frame;
+            this.allocations = allocations;
+        }
+
+        public int getPhaseCount() {
+            return phases.length;
+        }
+
+        public String getPhaseName(int phase) {
+            return phaseNames[phase];
+        }
+
+        /** Nanoseconds spent in {@code phase}, one value per frame in which it ran. */
+        public LatencyHistogram getPhase(int phase) {
+            return copy(phases[phase]);
+        }
+
+        /** Nanoseconds per whole frame. */
+        public LatencyHistogram getFrame() {
+            return copy(frame);
+        }
+
+        /** Objects allocated per frame, or null if allocations were not counted. */
+        public LatencyHistogram getAllocations() {
+            return allocations == null ? null : copy(allocations);
+        }
+
+        /** One line per phase and for the whole frame, in microseconds, then allocations. */
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(
+                    String.format(Locale.US, "%-16s %7s %9s %9s %9s %9s%n",
+                            "phase (us)", "frames", "p50", "p90", "p99", "max"));
+            for (int i = 0; i < phases.length; i++) {
+                appendTimes(builder, phaseNames[i], phases[i]);
+            }
+            appendTimes(builder, "frame", frame);
+            if (allocations != null) {
+                builder.append(String.format(Locale.US, "%-16s %7d %9d %9d %9d %9d%n", "allocations",
+                        allocations.getCount(), allocations.getValueAtPercentile(50),
+                        allocations.getValueAtPercentile(90), allocations.getValueAtPercentile(99),
+                        allocations.getMax()));
+            }
+            return builder.toString();
+        }
+
+        private static void appendTimes(StringBuilder builder, String name, LatencyHistogram histogram) {
+            builder.append(String.format(Locale.US, "%-16s %7d %9.1f %9.1f %9.1f %9.1f%n", name,
+                    histogram.getCount(), histogram.getValueAtPercentile(50) / 1e3,
+                    histogram.getValueAtPercentile(90) / 1e3, histogram.getValueAtPercentile(99) / 1e3,
+                    histogram.getMax() / 1e3));
+        }
+
+        private static LatencyHistogram copy(LatencyHistogram histogram) {
+            LatencyHistogram copy = new LatencyHistogram();
+            histogram.copyInto(copy);
+            return copy;
+        }
+    }
+
+    private final String[] phaseNames;
+    private final LatencyHistogram[] phases;
+    private final LatencyHistogram frame = new LatencyHistogram();
+    private final LatencyHistogram allocations;
+    private final LongSupplier nanoClock;
+    private final LongSupplier allocationCounter;
+    private long frameStart;
+    private long lastMark;
+    private long allocationStart;
+
+    /**
+     * @param nanoClock a monotonic clock, in nanoseconds
+     * @param allocationCounter a running count of objects allocated on the calling thread, or null
+     *     if the platform has none
+     */
+    public FrameProfiler(String[] phaseNames, LongSupplier nanoClock, LongSupplier allocationCounter) {
+        this.phaseNames = phaseNames.clone();
+        this.phases = new LatencyHistogram[phaseNames.length];
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+        this.nanoClock = nanoClock;
+        this.allocationCounter = allocationCounter;
+        this.allocations = allocationCounter == null ? null : new LatencyHistogram();
+    }
+
+    public void beginFrame() {
+        frameStart = nanoClock.getAsLong();
+        lastMark = frameStart;
+        if (allocationCounter != null) {
+            allocationStart = allocationCounter.getAsLong();
+        }
+    }
+
+    /** Records the time since the previous mark, or since the frame began, against {@code phase}. */
+    public void mark(int phase) {
+        long now = nanoClock.getAsLong();
+        phases[phase].record(now - lastMark);
+        lastMark = now;
+    }
+
+    public void endFrame() {
+        frame.record(nanoClock.getAsLong() - frameStart);
+        if (allocationCounter != null) {
+            allocations.record(allocationCounter.getAsLong() - allocationStart);
+        }
+    }
+
+    /** Number of frames recorded since the profiler was created or last reset. */
+    public long getFrameCount() {
+        return frame.getCount();
+    }
+
+    /** Copies the histograms. Unlike the recording calls, this allocates. */
+    public Snapshot snapshot() {
+        LatencyHistogram[] phaseCopies = new LatencyHistogram[phases.length];
+        for (int i = 0; i < phases.length; i++) {
+            phaseCopies[i] = Snapshot.copy(phases[i]);
+        }
+        return new Snapshot(phaseNames, phaseCopies, Snapshot.copy(frame),
+                allocations == null ? null : Snapshot.copy(allocations));
+    }
+
+    public void reset() {
+        for (LatencyHistogram phase : phases) {
+            phase.reset();
+        }
+        frame.reset();
+        if (allocations != null) {
+            allocations.reset();
+        }
+    }
+}
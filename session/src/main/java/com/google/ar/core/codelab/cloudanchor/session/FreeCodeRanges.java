@@ -0,0 +1,56 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * The bookkeeping for released short codes, kept as a map from the start of each free range to
+ * its end (exclusive). Backends run these inside their own transactions, so every client splits
+ * and merges ranges the same way.
+ */
+public final class FreeCodeRanges {
+    private FreeCodeRanges() {
+    }
+
+    /**
+     * Removes and returns up to {@code maxSize} codes from the lowest free range, or returns null
+     * if there are none.
+     */
+    public static ShortCodeLease take(SortedMap<Integer, Integer> free, int maxSize) {
+        if (free.isEmpty()) {
+            return null;
+        }
+        int start = free.firstKey();
+        int end = free.remove(start);
+        if (end - start > maxSize) {
+            free.put(start + maxSize, end);
+            end = start + maxSize;
+        }
+        return new ShortCodeLease(start, end);
+    }
+
+    /** Adds the codes of {@code lease} back, merging it with any adjacent free range. */
+    public static void add(SortedMap<Integer, Integer> free, ShortCodeLease lease) {
+        int start = lease.getStart();
+        int end = lease.getEnd();
+        SortedMap<Integer, Integer> before = free.headMap(start);
+        if (!before.isEmpty() && before.get(before.lastKey()) == start) {
+            start = before.lastKey();
+            free.remove(start);
+        }
+        Integer nextEnd = free.remove(end);
+        if (nextEnd != null) {
+            end = nextEnd;
+        }
+        free.put(start, end);
+    }
+
+    /** Number of free codes across all ranges. */
+    public static int count(Map<Integer, Integer> free) {
+        int count = 0;
+        for (Map.Entry<Integer, Integer> range : free.entrySet()) {
+            count += range.getValue() - range.getKey();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,355 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Remembers the anchor-space bounding box of every frustum of every participant over time, to
+ * answer "who looked at this region in this time window".
+ *
+ * <p>Frustums are grouped into time buckets by arrival. The current bucket is scanned linearly;
+ * when it is full it is sealed, its entries are reordered into a bounding volume hierarchy, and a
+ * query only descends into the nodes whose boxes meet the region. Sealing runs on a seal executor,
+ * without holding the index's lock, so adding a frustum never waits for a tree to be built; until
+ * its tree is ready a full bucket is scanned linearly too. Every bucket also records the
+ * time range of its entries, so buckets outside a query's window are skipped, and whole buckets
+ * are evicted once all their entries are older than the maximum age. Entries are stored in
+ * primitive arrays, 36 bytes each.
+ *
+ * <p>Thread-safe.
+ */
+public class FrustumHistoryIndex {
+    private static final int BOUNDS_SIZE = FlatViewFrustum.BOUNDS_SIZE;
+    private static final int LEAF_SIZE = 8;
+    private static final int INITIAL_CAPACITY = 256;
+
+    /*
+     * A bucket's BVH: a leaf covers entries [start, start + count); an inner node has count 0, its
+     * left child right after it and its right child at start.
+     */
+    private static final class Tree {
+        final float[] nodeBounds;
+        final int[] nodeStart;
+        final int[] nodeCount;
+        int nodeSize;
+
+        Tree(int maxNodes) {
+            nodeBounds = new float[maxNodes * BOUNDS_SIZE];
+            nodeStart = new int[maxNodes];
+            nodeCount = new int[maxNodes];
+        }
+    }
+
+    /* One time bucket. Entries are in BVH order once sealed. */
+    private static final class Bucket {
+        float[] bounds = new float[INITIAL_CAPACITY * BOUNDS_SIZE];
+        long[] times = new long[INITIAL_CAPACITY];
+        int[] participants = new int[INITIAL_CAPACITY];
+        int size;
+        final long openedAtMillis;
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+
+        // Null until sealed; the entries no longer change once the bucket is full.
+        Tree tree;
+
+        Bucket(long openedAtMillis) {
+            this.openedAtMillis = openedAtMillis;
+        }
+
+        void add(float[] entryBounds, long timeMillis, int participant) {
+            if (size == times.length) {
+                int capacity = size * 2;
+                bounds = Arrays.copyOf(bounds, capacity * BOUNDS_SIZE);
+                times = Arrays.copyOf(times, capacity);
+                participants = Arrays.copyOf(participants, capacity);
+            }
+            System.arraycopy(entryBounds, 0, bounds, size * BOUNDS_SIZE, BOUNDS_SIZE);
+            times[size] = timeMillis;
+            participants[size] = participant;
+            size++;
+            minTime = Math.min(minTime, timeMillis);
+            maxTime = Math.max(maxTime, timeMillis);
+        }
+    }
+
+    private final long bucketMillis;
+    private final long maxAgeMillis;
+    private final Executor sealExecutor;
+    private final Map<String, Integer> participantIds = new HashMap<>();
+    private final List<String> participantUids = new ArrayList<>();
+    // Full buckets, oldest first, sealed or waiting to be.
+    private final ArrayDeque<Bucket> sealed = new ArrayDeque<>();
+    private Bucket current;
+    private long size;
+
+    // Reused by queries, under the lock.
+    private final BitSet matches = new BitSet();
+    private int[] nodeStack = new int[64];
+    // Reused by seal, under sealLock, so seals run one at a time whatever the executor.
+    private final Object sealLock = new Object();
+    private long[] sortKeys = new long[0];
+    private final float[] centroidMin = new float[3];
+    private final float[] centroidMax = new float[3];
+
+    /**
+     * Creates an index that seals full buckets on the thread that adds to it.
+     *
+     * @param bucketMillis how much arrival time each bucket covers; a few seconds to a minute
+     * @param maxAgeMillis entries older than this, relative to the newest, are dropped
+     */
+    public FrustumHistoryIndex(long bucketMillis, long maxAgeMillis) {
+        this(bucketMillis, maxAgeMillis, Runnable::run);
+    }
+
+    /**
+     * Creates an index that seals full buckets on {@code sealExecutor}. Once the executor stops
+     * accepting tasks, full buckets stay unsealed and are scanned linearly.
+     */
+    public FrustumHistoryIndex(long bucketMillis, long maxAgeMillis, Executor sealExecutor) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("Bucket length must be positive, got " + bucketMillis);
+        }
+        this.bucketMillis = bucketMillis;
+        this.maxAgeMillis = maxAgeMillis;
+        this.sealExecutor = sealExecutor;
+    }
+
+    /**
+     * Records that {@code participantUid} had {@code frustum}, in anchor space, at
+     * {@code timeMillis}. Times should be roughly increasing; a late entry is still found by
+     * queries covering its time.
+     */
+    public synchronized void add(String participantUid, FlatViewFrustum frustum, long timeMillis) {
+        if (current == null) {
+            current = new Bucket(timeMillis);
+        } else if (timeMillis - current.openedAtMillis >= bucketMillis) {
+            Bucket full = current;
+            sealed.addLast(full);
+            current = new Bucket(timeMillis);
+            evictOlderThan(timeMillis - maxAgeMillis);
+            try {
+                sealExecutor.execute(() -> seal(full));
+            } catch (RejectedExecutionException e) {
+                // Shut down; the bucket is scanned linearly instead.
+            }
+        }
+        current.add(frustum.getBounds(), timeMillis, participantId(participantUid));
+        size++;
+    }
+
+    /**
+     * Returns the uids of the participants whose frustum met {@code region}, an axis-aligned box
+     * laid out like {@link FlatViewFrustum#getBounds()}, at some time from {@code fromMillis} to
+     * {@code toMillis} inclusive, in order of first appearance in the index.
+     */
+    public synchronized Set<String> findParticipants(float[] region, long fromMillis, long toMillis) {
+        query(region, fromMillis, toMillis);
+        Set<String> result = new LinkedHashSet<>();
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+            result.add(participantUids.get(id));
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #findParticipants}, but only counts the matching frustums, without
+     * allocating.
+     */
+    public synchronized int countFrustums(float[] region, long fromMillis, long toMillis) {
+        return query(region, fromMillis, toMillis);
+    }
+
+    /** Drops every bucket whose entries are all older than {@code cutoffMillis}. */
+    public synchronized void evictOlderThan(long cutoffMillis) {
+        Iterator<Bucket> iterator = sealed.iterator();
+        while (iterator.hasNext()) {
+            Bucket bucket = iterator.next();
+            if (bucket.maxTime < cutoffMillis) {
+                size -= bucket.size;
+                iterator.remove();
+            }
+        }
+    }
+
+    /** Number of frustums stored. */
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized int getBucketCount() {
+        return sealed.size() + (current == null ? 0 : 1);
+    }
+
+    private int participantId(String participantUid) {
+        Integer id = participantIds.get(participantUid);
+        if (id == null) {
+            id = participantUids.size();
+            participantIds.put(participantUid, id);
+            participantUids.add(participantUid);
+        }
+        return id;
+    }
+
+    private int query(float[] region, long fromMillis, long toMillis) {
+        matches.clear();
+        int count = 0;
+        for (Bucket bucket : sealed) {
+            if (bucket.maxTime >= fromMillis && bucket.minTime <= toMillis) {
+                count += bucket.tree != null
+                        ? queryTree(bucket, region, fromMillis, toMillis)
+                        : scan(bucket, 0, bucket.size, region, fromMillis, toMillis);
+            }
+        }
+        if (current != null && current.maxTime >= fromMillis && current.minTime <= toMillis) {
+            count += scan(current, 0, current.size, region, fromMillis, toMillis);
+        }
+        return count;
+    }
+
+    private int queryTree(Bucket bucket, float[] region, long fromMillis, long toMillis) {
+        Tree tree = bucket.tree;
+        int count = 0;
+        int top = 0;
+        nodeStack[top++] = 0;
+        while (top > 0) {
+            int node = nodeStack[--top];
+            if (!overlaps(tree.nodeBounds, node * BOUNDS_SIZE, region)) {
+                continue;
+            }
+            if (tree.nodeCount[node] > 0) {
+                int start = tree.nodeStart[node];
+                count += scan(bucket, start, start + tree.nodeCount[node], region, fromMillis, toMillis);
+            } else {
+                if (top + 2 > nodeStack.length) {
+                    nodeStack = Arrays.copyOf(nodeStack, nodeStack.length * 2);
+                }
+                nodeStack[top++] = tree.nodeStart[node];
+                nodeStack[top++] = node + 1;
+            }
+        }
+        return count;
+    }
+
+    private int scan(Bucket bucket, int from, int to, float[] region, long fromMillis, long toMillis) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            long time = bucket.times[i];
+            if (time >= fromMillis && time <= toMillis && overlaps(bucket.bounds, i * BOUNDS_SIZE, region)) {
+                matches.set(bucket.participants[i]);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean overlaps(float[] bounds, int offset, float[] region) {
+        return bounds[offset] <= region[3] && region[0] <= bounds[offset + 3]
+                && bounds[offset + 1] <= region[4] && region[1] <= bounds[offset + 4]
+                && bounds[offset + 2] <= region[5] && region[2] <= bounds[offset + 5];
+    }
+
+    /*
+     * Builds the bucket's BVH by splitting at the median centroid along the longest axis of the
+     * centroids' extent, then swaps in the entries reordered so every leaf is contiguous. A full
+     * bucket's entries are only read until then, so the tree is built without the index's lock.
+     */
+    private void seal(Bucket bucket) {
+        int n = bucket.size;
+        // Splitting more than LEAF_SIZE entries in half leaves at least LEAF_SIZE / 2 in each leaf.
+        Tree tree = new Tree(2 * (n / (LEAF_SIZE / 2)) + 1);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        synchronized (sealLock) {
+            if (sortKeys.length < n) {
+                sortKeys = new long[n];
+            }
+            build(bucket.bounds, order, tree, 0, n);
+        }
+
+        float[] bounds = new float[n * BOUNDS_SIZE];
+        long[] times = new long[n];
+        int[] participants = new int[n];
+        for (int i = 0; i < n; i++) {
+            int entry = order[i];
+            System.arraycopy(bucket.bounds, entry * BOUNDS_SIZE, bounds, i * BOUNDS_SIZE, BOUNDS_SIZE);
+            times[i] = bucket.times[entry];
+            participants[i] = bucket.participants[entry];
+        }
+        synchronized (this) {
+            bucket.bounds = bounds;
+            bucket.times = times;
+            bucket.participants = participants;
+            bucket.tree = tree;
+        }
+    }
+
+    private int build(float[] entryBounds, int[] order, Tree tree, int from, int to) {
+        int node = tree.nodeSize++;
+        int nodeOffset = node * BOUNDS_SIZE;
+        float[] nodeBounds = tree.nodeBounds;
+        nodeBounds[nodeOffset] = nodeBounds[nodeOffset + 1] = nodeBounds[nodeOffset + 2] = Float.MAX_VALUE;
+        nodeBounds[nodeOffset + 3] = nodeBounds[nodeOffset + 4] = nodeBounds[nodeOffset + 5] = -Float.MAX_VALUE;
+        Arrays.fill(centroidMin, Float.MAX_VALUE);
+        Arrays.fill(centroidMax, -Float.MAX_VALUE);
+        for (int i = from; i < to; i++) {
+            int offset = order[i] * BOUNDS_SIZE;
+            for (int axis = 0; axis < 3; axis++) {
+                float min = entryBounds[offset + axis];
+                float max = entryBounds[offset + axis + 3];
+                nodeBounds[nodeOffset + axis] = Math.min(nodeBounds[nodeOffset + axis], min);
+                nodeBounds[nodeOffset + axis + 3] = Math.max(nodeBounds[nodeOffset + axis + 3], max);
+                float centroid = (min + max) * 0.5f;
+                centroidMin[axis] = Math.min(centroidMin[axis], centroid);
+                centroidMax[axis] = Math.max(centroidMax[axis], centroid);
+            }
+        }
+        if (to - from <= LEAF_SIZE) {
+            tree.nodeStart[node] = from;
+            tree.nodeCount[node] = to - from;
+            return node;
+        }
+
+        int splitAxis = 0;
+        for (int axis = 1; axis < 3; axis++) {
+            if (centroidMax[axis] - centroidMin[axis] > centroidMax[splitAxis] - centroidMin[splitAxis]) {
+                splitAxis = axis;
+            }
+        }
+        for (int i = from; i < to; i++) {
+            int offset = order[i] * BOUNDS_SIZE;
+            float centroid = (entryBounds[offset + splitAxis] + entryBounds[offset + splitAxis + 3]) * 0.5f;
+            sortKeys[i] = ((long) sortableBits(centroid) << 32) | order[i];
+        }
+        Arrays.sort(sortKeys, from, to);
+        for (int i = from; i < to; i++) {
+            order[i] = (int) sortKeys[i];
+        }
+
+        int middle = (from + to) >>> 1;
+        tree.nodeCount[node] = 0;
+        build(entryBounds, order, tree, from, middle);
+        tree.nodeStart[node] = build(entryBounds, order, tree, middle, to);
+        return node;
+    }
+
+    /* Maps a float to an int with the same ordering, as BatchCollisionDetector does. */
+    private static int sortableBits(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+}
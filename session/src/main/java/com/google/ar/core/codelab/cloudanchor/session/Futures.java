@@ -0,0 +1,72 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Helpers for composing the future-returning host, resolve and Firebase calls. They fill gaps in
+ * Java 8's {@link CompletableFuture}, which is all Android offers at our minimum SDK.
+ */
+public final class Futures {
+    /** Runs a task after a delay, for example on the main thread through a Handler. */
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    private Futures() {
+    }
+
+    /**
+     * Completes {@code future} with a {@link TimeoutException} if it has not completed within
+     * {@code timeoutMillis}, like Java 9's {@code orTimeout}. The timeout fires on
+     * {@code scheduler}, so dependent stages run there.
+     *
+     * @return {@code future}
+     */
+    public static <T> CompletableFuture<T> orTimeout(CompletableFuture<T> future, long timeoutMillis,
+                                                     Scheduler scheduler) {
+        if (!future.isDone()) {
+            scheduler.schedule(() -> future.completeExceptionally(
+                    new TimeoutException("Timed out after " + timeoutMillis + " ms")), timeoutMillis);
+        }
+        return future;
+    }
+
+    /**
+     * Returns a future of every result, in order, once all of {@code futures} have completed. It
+     * fails if any of them fails.
+     */
+    public static <T> CompletableFuture<List<T>> allAsList(List<? extends CompletableFuture<? extends T>> futures) {
+        CompletableFuture<?>[] array = futures.toArray(new CompletableFuture<?>[0]);
+        return CompletableFuture.allOf(array).thenApply(ignored -> {
+            List<T> results = new ArrayList<>(futures.size());
+            for (CompletableFuture<? extends T> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        });
+    }
+
+    /** Returns a future that has already failed with {@code error}. */
+    public static <T> CompletableFuture<T> failed(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    /**
+     * Strips the {@link CompletionException} or {@link ExecutionException} wrappers that
+     * dependent stages put around the original failure.
+     */
+    public static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+}
@@ -0,0 +1,100 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.UnaryOperator;
+
+/**
+ * A local stand-in for the Firebase lease store, for load tests. It keeps the same two nodes, a
+ * counter holding the last code handed out and the free ranges, and updates them the way a
+ * Firebase transaction does: read, wait one simulated round trip, then commit only if nobody else
+ * committed in between, retrying otherwise.
+ *
+ * <p>Calls complete on the calling thread.
+ */
+public class InMemoryLeaseStore implements LeaseStore {
+    private final long roundTripNanos;
+    private final AtomicReference<Integer> lastCode;
+    // Replaced, never modified, so a reader always sees a consistent snapshot.
+    private final AtomicReference<SortedMap<Integer, Integer>> free =
+            new AtomicReference<>(new TreeMap<>());
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicInteger releasedCodes = new AtomicInteger();
+
+    /**
+     * @param initialCode the first code to hand out
+     * @param roundTripNanos simulated latency of each transaction attempt
+     */
+    public InMemoryLeaseStore(int initialCode, long roundTripNanos) {
+        this.lastCode = new AtomicReference<>(initialCode - 1);
+        this.roundTripNanos = roundTripNanos;
+    }
+
+    @Override
+    public void reserve(int blockSize, Callback callback) {
+        ShortCodeLease[] lease = new ShortCodeLease[1];
+        if (!free.get().isEmpty()) {
+            transact(free, current -> {
+                SortedMap<Integer, Integer> next = new TreeMap<>(current);
+                lease[0] = FreeCodeRanges.take(next, blockSize);
+                return next;
+            });
+        }
+        if (lease[0] == null) {
+            transact(lastCode, current -> {
+                lease[0] = new ShortCodeLease(current + 1, current + 1 + blockSize);
+                return current + blockSize;
+            });
+        }
+        callback.onLeaseReserved(lease[0]);
+    }
+
+    @Override
+    public void release(ShortCodeLease lease) {
+        transact(free, current -> {
+            SortedMap<Integer, Integer> next = new TreeMap<>(current);
+            FreeCodeRanges.add(next, lease);
+            return next;
+        });
+        releasedCodes.addAndGet(lease.size());
+    }
+
+    /** Committed transactions, including releases. */
+    public long getTransactionCount() {
+        return transactions.get();
+    }
+
+    /** Transaction attempts that lost a race and had to run again. */
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    public int getReleasedCodeCount() {
+        return releasedCodes.get();
+    }
+
+    /** Codes currently free for reuse. */
+    public int getFreeCodeCount() {
+        return FreeCodeRanges.count(free.get());
+    }
+
+    private <T> void transact(AtomicReference<T> node, UnaryOperator<T> update) {
+        while (true) {
+            T current = node.get();
+            T next = update.apply(current);
+            if (roundTripNanos > 0) {
+                LockSupport.parkNanos(roundTripNanos);
+            }
+            if (node.compareAndSet(current, next)) {
+                transactions.incrementAndGet();
+                return;
+            }
+            retries.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of non-negative values, usually nanoseconds, with a fixed set of log-linear
+ * buckets: each power of two is split into eight, so a reported percentile is within 12.5% of the
+ * true value. Recording only increments an array slot and never allocates.
+ *
+ * <p>Not thread-safe; record from one thread and read from the same one, or copy it under the
+ * lock that guards recording.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values of 2^40 or more (about 18 minutes in nanoseconds) land in the last bucket.
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long sum;
+    private long max;
+
+    /** Records one value. Negative values are recorded as zero. */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucketIndex(value)]++;
+        totalCount++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /** Returns the mean of the recorded values, or 0 if there are none. */
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    /**
+     * Returns an upper bound for the value at {@code percentile}, between 0 and 100: the top of
+     * the bucket it falls in, capped at the largest value recorded. Returns 0 if empty.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * totalCount);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /** Overwrites {@code target} with this histogram's contents. */
+    public void copyInto(LatencyHistogram target) {
+        System.arraycopy(counts, 0, target.counts, 0, BUCKET_COUNT);
+        target.totalCount = totalCount;
+        target.sum = sum;
+        target.max = max;
+    }
+
+    /** Adds every value recorded in {@code other}, for example to merge per-thread histograms. */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        if (index == BUCKET_COUNT - 1) {
+            return Long.MAX_VALUE;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (SUB_BUCKETS + subBucket) * width + width - 1;
+    }
+}
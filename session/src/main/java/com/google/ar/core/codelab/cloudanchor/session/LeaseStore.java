@@ -0,0 +1,22 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+/**
+ * The shared backend that hands out blocks of short codes. Implementations must make sure no two
+ * clients ever hold the same code.
+ */
+public interface LeaseStore {
+    /** Receives a reserved block, or null if the reservation failed. */
+    interface Callback {
+        void onLeaseReserved(ShortCodeLease lease);
+    }
+
+    /**
+     * Atomically reserves up to {@code blockSize} codes that no other client holds, handing out
+     * released codes before new ones. {@code callback} may run on any thread, including the
+     * calling one.
+     */
+    void reserve(int blockSize, Callback callback);
+
+    /** Returns codes that were reserved but never used, so a later reservation can reuse them. */
+    void release(ShortCodeLease lease);
+}
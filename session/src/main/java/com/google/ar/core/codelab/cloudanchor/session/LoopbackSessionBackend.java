@@ -0,0 +1,275 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.FrustumCodec;
+import com.google.ar.core.codelab.cloudanchor.model.FrustumSnapshot;
+import com.google.ar.core.codelab.cloudanchor.session.LoopbackSessionHub.FrustumWrite;
+import com.google.ar.core.codelab.cloudanchor.session.LoopbackSessionHub.Session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * One participant's connection to a {@link LoopbackSessionHub}. It behaves like the Firebase
+ * backend: frustums travel in the compact encoding with the same tracing fields, a new partner's
+ * latest frustum is delivered when we learn of it, and a frustum older than one already delivered
+ * is dropped, as Firebase never goes back to an older value of a node.
+ *
+ * <p>Callbacks run one at a time on the hub's network threads. Thread-safe.
+ */
+public class LoopbackSessionBackend implements SessionSyncBackend {
+    private final LoopbackSessionHub hub;
+    private final String uid;
+    private final ShortCodeAllocator shortCodeAllocator;
+    private final SyncLatencyTracker syncLatencyTracker = new SyncLatencyTracker();
+    private final PublishThrottle publishThrottle = new PublishThrottle();
+    private final Set<String> partnerUids = ConcurrentHashMap.newKeySet();
+    // Only touched by callbacks.
+    private final Map<String, Long> lastDeliveredSequence = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Runnable> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    private volatile Session session;
+    private volatile PartnerFrustumListener partnerFrustumListener;
+    private volatile Supplier<FrustumSnapshot> viewFrustumSupplier;
+    private boolean pushMode = false;
+    private long publishSequence = 0;
+
+    LoopbackSessionBackend(LoopbackSessionHub hub, String uid) {
+        this.hub = hub;
+        this.uid = uid;
+        this.shortCodeAllocator = new ShortCodeAllocator(hub.leaseStore);
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    @Override
+    public void nextShortCode(ShortCodeListener listener) {
+        shortCodeAllocator.nextShortCode(listener::onShortCodeAvailable);
+    }
+
+    @Override
+    public void releaseUnusedShortCodes() {
+        shortCodeAllocator.releaseUnused();
+    }
+
+    @Override
+    public void storeUsingShortCode(int shortCode, String cloudAnchorId) {
+        hub.cloudAnchorIds.put(shortCode, cloudAnchorId);
+    }
+
+    @Override
+    public void getCloudAnchorId(int shortCode, CloudAnchorIdListener listener) {
+        hub.send(this, () -> listener.onCloudAnchorIdAvailable(
+                hub.cloudAnchorIds.getOrDefault(shortCode, "")));
+    }
+
+    @Override
+    public synchronized void joinSession(int shortCode) {
+        if (session != null && session.shortCode == shortCode) {
+            return;
+        }
+        leaveSession();
+        Session joined = hub.session(shortCode);
+        session = joined;
+        // Under the session's lock, so two members joining at once cannot both miss each other.
+        synchronized (joined) {
+            for (LoopbackSessionBackend partner : joined.participants.values()) {
+                hub.send(partner, () -> partner.onPartnerJoined(joined, uid));
+                hub.send(this, () -> onPartnerJoined(joined, partner.uid));
+            }
+            joined.participants.put(uid, this);
+        }
+    }
+
+    @Override
+    public Set<String> getPartnerUids() {
+        return Collections.unmodifiableSet(new HashSet<>(partnerUids));
+    }
+
+    @Override
+    public synchronized void leaveSession() {
+        Session left = session;
+        if (left == null) {
+            return;
+        }
+        session = null;
+        pushMode = false;
+        synchronized (left) {
+            left.participants.remove(uid);
+            left.frustums.remove(uid);
+            for (LoopbackSessionBackend partner : left.participants.values()) {
+                hub.send(partner, () -> partner.onPartnerLeft(left, uid));
+            }
+        }
+        List<String> formerPartners = new ArrayList<>(partnerUids);
+        partnerUids.clear();
+        // Reported through the inbox so the listener still sees one callback at a time.
+        deliver(() -> {
+            lastDeliveredSequence.clear();
+            PartnerFrustumListener listener = partnerFrustumListener;
+            for (String partnerUid : formerPartners) {
+                syncLatencyTracker.removePartner(partnerUid);
+                if (listener != null) {
+                    listener.onPartnerLeft(partnerUid);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void setPartnerFrustumListener(PartnerFrustumListener listener) {
+        partnerFrustumListener = listener;
+    }
+
+    @Override
+    public void setViewFrustumSupplier(Supplier<FrustumSnapshot> supplier) {
+        viewFrustumSupplier = supplier;
+    }
+
+    @Override
+    public synchronized void enablePushMode(float maxHz, float tolerance) {
+        publishThrottle.configure(maxHz, tolerance);
+        pushMode = true;
+    }
+
+    @Override
+    public synchronized void disablePushMode() {
+        pushMode = false;
+    }
+
+    @Override
+    public synchronized boolean publishViewFrustum(FlatViewFrustum viewFrustum) {
+        if (!pushMode || session == null
+                || !publishThrottle.tryPublish(viewFrustum, TimeUnit.NANOSECONDS.toMillis(System.nanoTime()))) {
+            return false;
+        }
+        write(session, viewFrustum, null);
+        return true;
+    }
+
+    @Override
+    public void requestPartnerToUpdate() {
+        Session current = session;
+        if (current == null || partnerUids.isEmpty()) {
+            return;
+        }
+        syncLatencyTracker.onRequest(System.currentTimeMillis());
+        for (LoopbackSessionBackend partner : current.participants.values()) {
+            if (partner != this) {
+                hub.send(partner, () -> partner.onUpdateRequested(current, uid));
+            }
+        }
+    }
+
+    @Override
+    public void recordCollisionResult(String partnerUid) {
+        syncLatencyTracker.onResult(partnerUid, System.nanoTime());
+    }
+
+    @Override
+    public SyncLatencyTracker.Snapshot getSyncLatency() {
+        return syncLatencyTracker.snapshot();
+    }
+
+    /** Queues {@code message} to run as a callback, after any callbacks already queued. */
+    void deliver(Runnable message) {
+        inbox.add(message);
+        if (draining.compareAndSet(false, true)) {
+            hub.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        Runnable message;
+        while ((message = inbox.poll()) != null) {
+            message.run();
+        }
+        draining.set(false);
+        // A message may have arrived after the loop ended but before the flag was cleared.
+        if (!inbox.isEmpty() && draining.compareAndSet(false, true)) {
+            hub.execute(this::drain);
+        }
+    }
+
+    private synchronized void write(Session target, FlatViewFrustum viewFrustum, String replyTo) {
+        FrustumWrite frustumWrite = new FrustumWrite(FrustumCodec.encode(viewFrustum), publishSequence++,
+                System.currentTimeMillis(), replyTo);
+        target.frustums.put(uid, frustumWrite);
+        for (LoopbackSessionBackend partner : target.participants.values()) {
+            if (partner != this) {
+                hub.send(partner, () -> partner.onFrustumWritten(target, uid, frustumWrite));
+            }
+        }
+    }
+
+    private void onPartnerJoined(Session joined, String partnerUid) {
+        if (session != joined || !partnerUids.add(partnerUid)) {
+            return;
+        }
+        // Like a new Firebase listener, start with the partner's current value.
+        FrustumWrite current = joined.frustums.get(partnerUid);
+        if (current != null) {
+            onFrustumWritten(joined, partnerUid, current);
+        }
+    }
+
+    private void onPartnerLeft(Session left, String partnerUid) {
+        if (session != left || !partnerUids.remove(partnerUid)) {
+            return;
+        }
+        lastDeliveredSequence.remove(partnerUid);
+        syncLatencyTracker.removePartner(partnerUid);
+        PartnerFrustumListener listener = partnerFrustumListener;
+        if (listener != null) {
+            listener.onPartnerLeft(partnerUid);
+        }
+    }
+
+    private void onFrustumWritten(Session from, String partnerUid, FrustumWrite frustumWrite) {
+        if (session != from || !partnerUids.contains(partnerUid)) {
+            return;
+        }
+        Long lastSequence = lastDeliveredSequence.get(partnerUid);
+        if (lastSequence != null && frustumWrite.sequence <= lastSequence) {
+            return;
+        }
+        lastDeliveredSequence.put(partnerUid, frustumWrite.sequence);
+        FlatViewFrustum frustum = new FlatViewFrustum();
+        if (!FrustumCodec.decode(frustumWrite.encoded, frustum)) {
+            return;
+        }
+        syncLatencyTracker.onReceive(partnerUid, frustumWrite.sequence, frustumWrite.sentAtMillis,
+                uid.equals(frustumWrite.replyTo), System.currentTimeMillis(), System.nanoTime());
+        PartnerFrustumListener listener = partnerFrustumListener;
+        if (listener != null) {
+            listener.onPartnerFrustumChanged(partnerUid, frustum);
+        }
+    }
+
+    private void onUpdateRequested(Session from, String requesterUid) {
+        Session current = session;
+        Supplier<FrustumSnapshot> supplier = viewFrustumSupplier;
+        if (current != from || !partnerUids.contains(requesterUid) || supplier == null) {
+            return;
+        }
+        FrustumSnapshot snapshot = supplier.get();
+        if (snapshot == null) {
+            return;
+        }
+        FlatViewFrustum reply = new FlatViewFrustum();
+        snapshot.copyTo(reply);
+        write(current, reply, requesterUid);
+    }
+}
@@ -0,0 +1,126 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An in-process stand-in for the Firebase session backend. Participants connect with
+ * {@link #connect(String)} and exchange short codes, cloud anchor IDs, frustums and update
+ * requests through it. Every message between participants, and every read, is delivered after
+ * the configured latency plus a uniformly random jitter, on a small pool of network threads.
+ *
+ * <p>Thread-safe.
+ */
+public class LoopbackSessionHub {
+    static final int INITIAL_SHORT_CODE = 142;
+
+    /** A frustum as written to a participant's node. */
+    static final class FrustumWrite {
+        final String encoded;
+        final long sequence;
+        final long sentAtMillis;
+        final String replyTo;
+
+        FrustumWrite(String encoded, long sequence, long sentAtMillis, String replyTo) {
+            this.encoded = encoded;
+            this.sequence = sequence;
+            this.sentAtMillis = sentAtMillis;
+            this.replyTo = replyTo;
+        }
+    }
+
+    /**
+     * The participants and latest frustum writes of one short code. Members join and leave under
+     * its lock.
+     */
+    static final class Session {
+        final int shortCode;
+        final Map<String, LoopbackSessionBackend> participants = new ConcurrentHashMap<>();
+        final Map<String, FrustumWrite> frustums = new ConcurrentHashMap<>();
+
+        Session(int shortCode) {
+            this.shortCode = shortCode;
+        }
+    }
+
+    final LeaseStore leaseStore = new InMemoryLeaseStore(INITIAL_SHORT_CODE, 0);
+    final Map<Integer, String> cloudAnchorIds = new ConcurrentHashMap<>();
+    private final Map<Integer, Session> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService network;
+    private final long latencyMicros;
+    private final long jitterMicros;
+    private final LongAdder sentCount = new LongAdder();
+    private final LongAdder deliveredCount = new LongAdder();
+
+    /**
+     * @param networkThreads threads that deliver messages and run participants' callbacks
+     * @param latencyMillis fixed delay of every message
+     * @param jitterMillis largest extra delay, drawn uniformly per message
+     */
+    public LoopbackSessionHub(int networkThreads, double latencyMillis, double jitterMillis) {
+        AtomicInteger threadCount = new AtomicInteger();
+        network = Executors.newScheduledThreadPool(networkThreads,
+                runnable -> {
+                    Thread thread = new Thread(runnable, "LoopbackNetwork-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.latencyMicros = (long) (latencyMillis * 1000);
+        this.jitterMicros = (long) (jitterMillis * 1000);
+    }
+
+    /** Returns a backend for the participant {@code uid}. */
+    public LoopbackSessionBackend connect(String uid) {
+        return new LoopbackSessionBackend(this, uid);
+    }
+
+    /** Number of messages sent between participants or in answer to reads. */
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    /** Number of those messages delivered so far. */
+    public long getDeliveredCount() {
+        return deliveredCount.sum();
+    }
+
+    /** Stops delivering messages. Messages in flight are dropped. */
+    public void shutdown() {
+        network.shutdownNow();
+    }
+
+    Session session(int shortCode) {
+        return sessions.computeIfAbsent(shortCode, Session::new);
+    }
+
+    /** Runs {@code message} as a callback of {@code recipient} after one network delay. */
+    void send(LoopbackSessionBackend recipient, Runnable message) {
+        long delay = latencyMicros
+                + (jitterMicros > 0 ? ThreadLocalRandom.current().nextLong(jitterMicros + 1) : 0);
+        try {
+            network.schedule(() -> {
+                deliveredCount.increment();
+                recipient.deliver(message);
+            }, delay, TimeUnit.MICROSECONDS);
+            sentCount.increment();
+        } catch (RejectedExecutionException e) {
+            // Shut down; the message is lost, as it would be on a dropped connection.
+        }
+    }
+
+    /** Runs {@code task} on a network thread without delay. */
+    void execute(Runnable task) {
+        try {
+            network.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Shut down.
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.FrustumCodec;
+
+/**
+ * Decides when push mode publishes a frustum: at most once per interval, and only once a corner
+ * has moved by more than a tolerance since the last publish. The first frustum always goes out.
+ *
+ * <p>Not thread-safe.
+ */
+public class PublishThrottle {
+    private final FlatViewFrustum lastPublished = new FlatViewFrustum();
+    private long intervalMillis;
+    private float tolerance;
+    private long lastPublishMillis;
+    private boolean hasPublished = false;
+
+    /** Sets the rate cap and change tolerance, and lets the next frustum through. */
+    public void configure(float maxHz, float tolerance) {
+        this.intervalMillis = (long) (1000 / maxHz);
+        this.tolerance = tolerance;
+        hasPublished = false;
+    }
+
+    /**
+     * Returns whether {@code frustum} should be published at {@code nowMillis}, a monotonic time,
+     * and if so remembers it as the last one published.
+     */
+    public boolean tryPublish(FlatViewFrustum frustum, long nowMillis) {
+        if (hasPublished && nowMillis - lastPublishMillis < intervalMillis) {
+            return false;
+        }
+        if (hasPublished
+                && FrustumCodec.maxVertexDelta(frustum.getVertices(), lastPublished.getVertices()) <= tolerance) {
+            return false;
+        }
+        lastPublished.setVertices(frustum.getVertices());
+        lastPublishMillis = nowMillis;
+        hasPublished = true;
+        return true;
+    }
+}
@@ -0,0 +1,126 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.FrustumSnapshot;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * The session operations the app needs from its backend: short codes, cloud anchor IDs,
+ * participants, frustum exchange and update requests. The app talks to Firebase through it; load
+ * tests use {@link LoopbackSessionHub} instead.
+ *
+ * <p>Callbacks arrive one at a time on a thread of the backend's choosing, the main thread for
+ * Firebase. A session starts with {@link #joinSession(int)} and ends with {@link #leaveSession()}.
+ */
+public interface SessionSyncBackend {
+    /** Listener for a new short code. */
+    interface ShortCodeListener {
+        /** Called with the short code, or null if none could be reserved. */
+        void onShortCodeAvailable(Integer shortCode);
+    }
+
+    /** Listener for the result of a cloud anchor ID lookup. */
+    interface CloudAnchorIdListener {
+        /** Called with the ID, an empty string if the short code is unknown, or null on error. */
+        void onCloudAnchorIdAvailable(String cloudAnchorId);
+    }
+
+    /** Listener for the frustums of the other participants in the session. */
+    interface PartnerFrustumListener {
+        /** Called with a new anchor-space frustum, which now belongs to the listener. */
+        void onPartnerFrustumChanged(String partnerUid, FlatViewFrustum frustum);
+
+        /** Called when a participant leaves the session, or when we leave it. */
+        default void onPartnerLeft(String partnerUid) {}
+    }
+
+    /** Gets a new short code that can be used to store a cloud anchor ID. */
+    void nextShortCode(ShortCodeListener listener);
+
+    /**
+     * Future-returning form of {@link #nextShortCode}. It fails with an {@link
+     * IllegalStateException} if no short code could be reserved.
+     */
+    default CompletableFuture<Integer> nextShortCodeAsync() {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        nextShortCode(shortCode -> {
+            if (shortCode == null) {
+                future.completeExceptionally(new IllegalStateException("Could not reserve a short code"));
+            } else {
+                future.complete(shortCode);
+            }
+        });
+        return future;
+    }
+
+    /** Returns short codes reserved but not handed out, so other clients can use them. */
+    void releaseUnusedShortCodes();
+
+    void storeUsingShortCode(int shortCode, String cloudAnchorId);
+
+    void getCloudAnchorId(int shortCode, CloudAnchorIdListener listener);
+
+    /**
+     * Future-returning form of {@link #getCloudAnchorId}. It completes with an empty string for an
+     * unknown short code and fails if the lookup fails.
+     */
+    default CompletableFuture<String> getCloudAnchorIdAsync(int shortCode) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        getCloudAnchorId(shortCode, cloudAnchorId -> {
+            if (cloudAnchorId == null) {
+                future.completeExceptionally(
+                        new IllegalStateException("Could not look up short code " + shortCode));
+            } else {
+                future.complete(cloudAnchorId);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Joins the session of {@code shortCode}, leaving any other session first. Other participants'
+     * frustums then go to the {@link PartnerFrustumListener}, and their update requests are
+     * answered from the {@link #setViewFrustumSupplier view frustum supplier}.
+     */
+    void joinSession(int shortCode);
+
+    /** Returns the uids of the other participants in the session. */
+    Set<String> getPartnerUids();
+
+    /** Leaves the session, reporting every partner as left. Safe to call outside a session. */
+    void leaveSession();
+
+    void setPartnerFrustumListener(PartnerFrustumListener listener);
+
+    /** Supplies our latest anchor-space frustum, or null if we have none, to answer requests. */
+    void setViewFrustumSupplier(Supplier<FrustumSnapshot> supplier);
+
+    /**
+     * Turns on push mode: {@link #publishViewFrustum} then writes our frustum whenever a corner has
+     * moved by more than {@code tolerance} metres since the last write, at most {@code maxHz} times
+     * a second.
+     */
+    void enablePushMode(float maxHz, float tolerance);
+
+    void disablePushMode();
+
+    /**
+     * Publishes {@code viewFrustum}, an anchor-space frustum, if push mode is on and its rate cap
+     * and change tolerance allow it. Cheap to call every frame.
+     *
+     * @return true if the frustum was written
+     */
+    boolean publishViewFrustum(FlatViewFrustum viewFrustum);
+
+    /** Asks every partner to write its frustum now. */
+    void requestPartnerToUpdate();
+
+    /** Call when the collision test against {@code partnerUid}'s latest frustum has finished. */
+    void recordCollisionResult(String partnerUid);
+
+    /** Returns the latency of each stage from update request to collision result. */
+    SyncLatencyTracker.Snapshot getSyncLatency();
+}
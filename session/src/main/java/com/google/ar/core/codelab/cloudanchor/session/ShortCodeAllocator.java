@@ -0,0 +1,118 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hands out short codes from a block leased from a {@link LeaseStore}, so only one backend
+ * transaction is needed per block instead of one per code. Requests that arrive while a block is
+ * being reserved wait for it; if more are waiting than a block holds, the next reservation asks for
+ * enough codes for all of them.
+ *
+ * <p>Thread-safe. Callbacks run outside the allocator's lock.
+ */
+public class ShortCodeAllocator {
+    /** Receives a short code, or null if none could be reserved. */
+    public interface Callback {
+        void onShortCodeAvailable(Integer shortCode);
+    }
+
+    public static final int DEFAULT_BLOCK_SIZE = 10;
+
+    private final LeaseStore store;
+    private final int blockSize;
+    private final ArrayDeque<Callback> waiting = new ArrayDeque<>();
+    // The unused part of the current lease; empty when nextCode == leaseEnd.
+    private int nextCode;
+    private int leaseEnd;
+    private boolean reserving = false;
+
+    public ShortCodeAllocator(LeaseStore store) {
+        this(store, DEFAULT_BLOCK_SIZE);
+    }
+
+    public ShortCodeAllocator(LeaseStore store, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive, got " + blockSize);
+        }
+        this.store = store;
+        this.blockSize = blockSize;
+    }
+
+    /** Passes the next short code to {@code callback}, reserving a new block first if needed. */
+    public void nextShortCode(Callback callback) {
+        Integer shortCode = null;
+        int reserveSize = 0;
+        synchronized (this) {
+            if (nextCode < leaseEnd) {
+                shortCode = nextCode++;
+            } else {
+                waiting.add(callback);
+                if (!reserving) {
+                    reserving = true;
+                    reserveSize = Math.max(blockSize, waiting.size());
+                }
+            }
+        }
+        if (shortCode != null) {
+            callback.onShortCodeAvailable(shortCode);
+        } else if (reserveSize > 0) {
+            store.reserve(reserveSize, this::onLeaseReserved);
+        }
+    }
+
+    /**
+     * Gives the unused rest of the current block back to the store. Call it when this client will
+     * not host again for a while, for example when the app stops.
+     */
+    public void releaseUnused() {
+        ShortCodeLease unused = null;
+        synchronized (this) {
+            if (nextCode < leaseEnd) {
+                unused = new ShortCodeLease(nextCode, leaseEnd);
+                nextCode = leaseEnd;
+            }
+        }
+        if (unused != null) {
+            store.release(unused);
+        }
+    }
+
+    /** Number of codes left in the current block. */
+    public synchronized int getRemaining() {
+        return leaseEnd - nextCode;
+    }
+
+    private void onLeaseReserved(ShortCodeLease lease) {
+        List<Callback> callbacks = new ArrayList<>();
+        List<Integer> shortCodes = new ArrayList<>();
+        int reserveSize = 0;
+        synchronized (this) {
+            reserving = false;
+            if (lease == null) {
+                // Fail everyone who was waiting; the next request tries again.
+                callbacks.addAll(waiting);
+                waiting.clear();
+            } else {
+                nextCode = lease.getStart();
+                leaseEnd = lease.getEnd();
+                while (!waiting.isEmpty() && nextCode < leaseEnd) {
+                    callbacks.add(waiting.poll());
+                    shortCodes.add(nextCode++);
+                }
+                if (!waiting.isEmpty()) {
+                    // The store handed out a smaller block than asked for, such as a released one.
+                    reserving = true;
+                    reserveSize = Math.max(blockSize, waiting.size());
+                }
+            }
+        }
+        for (int i = 0; i < callbacks.size(); i++) {
+            callbacks.get(i).onShortCodeAvailable(i < shortCodes.size() ? shortCodes.get(i) : null);
+        }
+        if (reserveSize > 0) {
+            store.reserve(reserveSize, this::onLeaseReserved);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+/** A block of consecutive short codes, from {@code start} inclusive to {@code end} exclusive. */
+public final class ShortCodeLease {
+    private final int start;
+    private final int end;
+
+    public ShortCodeLease(int start, int end) {
+        if (end <= start) {
+            throw new IllegalArgumentException("Empty lease [" + start + ", " + end + ")");
+        }
+        this.start = start;
+        this.end = end;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public int size() {
+        return end - start;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ShortCodeLease)) {
+            return false;
+        }
+        ShortCodeLease other = (ShortCodeLease) o;
+        return start == other.start && end == other.end;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * start + end;
+    }
+
+    @Override
+    public String toString() {
+        return "ShortCodeLease[" + start + ", " + end + ")";
+    }
+}
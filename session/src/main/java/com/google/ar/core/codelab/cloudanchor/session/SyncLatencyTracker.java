@@ -0,0 +1,220 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Breaks the time from asking partners for their frustums to having a collision result into
+ * stages, per partner, in microseconds:
+ *
+ * <ul>
+ *   <li>{@link Stage#REQUEST_TO_PUBLISH}: our request until the partner wrote its reply.
+ *   <li>{@link Stage#PUBLISH_TO_RECEIVE}: the partner's write until it reached us.
+ *   <li>{@link Stage#RECEIVE_TO_RESULT}: arrival until the collision test finished locally.
+ *   <li>{@link Stage#REQUEST_TO_RESULT}: the whole round trip, for replies to our request.
+ * </ul>
+ *
+ * <p>Times that cross devices are in milliseconds of estimated server time, which each device
+ * gets by adding its server clock offset to its own clock; clock error shows up in those stages,
+ * and negative results are recorded as zero. Local stages use a monotonic nanosecond clock.
+ *
+ * <p>Every frustum carries the sender's sequence number, so frustums that were overwritten before
+ * we read them show up as skipped.
+ *
+ * <p>Thread-safe.
+ */
+public class SyncLatencyTracker {
+    public enum Stage {
+        REQUEST_TO_PUBLISH,
+        PUBLISH_TO_RECEIVE,
+        RECEIVE_TO_RESULT,
+        REQUEST_TO_RESULT
+    }
+
+    private static final class PartnerTrace {
+        final Map<Stage, LatencyHistogram> stages = newStageMap();
+        long frames;
+        long skipped;
+        long lastSequence = -1;
+        long answeredRequest = -1;
+        // The latest frustum waiting for its collision result.
+        long receivedAtNanos = -1;
+        long requestToReceiveMicros = -1;
+    }
+
+    private final Map<String, PartnerTrace> partners = new HashMap<>();
+    private final Map<Stage, LatencyHistogram> overall = newStageMap();
+    private long requestCount = 0;
+    private long requestedAtServerMillis;
+
+    /** Call when we ask partners for their frustums. */
+    public synchronized void onRequest(long nowServerMillis) {
+        requestCount++;
+        requestedAtServerMillis = nowServerMillis;
+    }
+
+    /**
+     * Call when a frustum arrives from {@code partnerUid}.
+     *
+     * @param sequence the sender's sequence number, or a negative value if it sent none
+     * @param sentAtServerMillis when it was written, or a negative value if unknown
+     * @param replyToUs whether it answers a request of ours
+     */
+    public synchronized void onReceive(String partnerUid, long sequence, long sentAtServerMillis,
+                                       boolean replyToUs, long nowServerMillis, long nowNanos) {
+        PartnerTrace trace = partners.get(partnerUid);
+        if (trace == null) {
+            trace = new PartnerTrace();
+            partners.put(partnerUid, trace);
+        }
+        trace.frames++;
+        if (sequence >= 0) {
+            // A lower number means the partner restarted its count.
+            if (trace.lastSequence >= 0 && sequence > trace.lastSequence + 1) {
+                trace.skipped += sequence - trace.lastSequence - 1;
+            }
+            trace.lastSequence = sequence;
+        }
+        if (sentAtServerMillis >= 0) {
+            record(trace, Stage.PUBLISH_TO_RECEIVE, (nowServerMillis - sentAtServerMillis) * 1000);
+        }
+        trace.receivedAtNanos = nowNanos;
+        trace.requestToReceiveMicros = -1;
+        // Only the first reply per request counts; later pushes are not answers to it.
+        if (replyToUs && requestCount > 0 && trace.answeredRequest != requestCount) {
+            trace.answeredRequest = requestCount;
+            if (sentAtServerMillis >= 0) {
+                record(trace, Stage.REQUEST_TO_PUBLISH,
+                        (sentAtServerMillis - requestedAtServerMillis) * 1000);
+            }
+            trace.requestToReceiveMicros = Math.max(0, nowServerMillis - requestedAtServerMillis) * 1000;
+        }
+    }
+
+    /** Call when the collision test against {@code partnerUid}'s latest frustum has finished. */
+    public synchronized void onResult(String partnerUid, long nowNanos) {
+        PartnerTrace trace = partners.get(partnerUid);
+        if (trace == null || trace.receivedAtNanos < 0) {
+            return;
+        }
+        long receiveToResultMicros = (nowNanos - trace.receivedAtNanos) / 1000;
+        record(trace, Stage.RECEIVE_TO_RESULT, receiveToResultMicros);
+        if (trace.requestToReceiveMicros >= 0) {
+            record(trace, Stage.REQUEST_TO_RESULT, trace.requestToReceiveMicros + receiveToResultMicros);
+        }
+        trace.receivedAtNanos = -1;
+        trace.requestToReceiveMicros = -1;
+    }
+
+    /** Forgets a partner that left. Its samples stay in the overall histograms. */
+    public synchronized void removePartner(String partnerUid) {
+        partners.remove(partnerUid);
+    }
+
+    public synchronized Snapshot snapshot() {
+        Map<String, Map<Stage, LatencyHistogram>> stages = new HashMap<>();
+        Map<String, long[]> counts = new HashMap<>();
+        for (Map.Entry<String, PartnerTrace> entry : partners.entrySet()) {
+            PartnerTrace trace = entry.getValue();
+            stages.put(entry.getKey(), copy(trace.stages));
+            counts.put(entry.getKey(), new long[]{trace.frames, trace.skipped});
+        }
+        return new Snapshot(copy(overall), stages, counts);
+    }
+
+    /** An immutable copy of the tracker's histograms. */
+    public static final class Snapshot {
+        private final Map<Stage, LatencyHistogram> overall;
+        private final Map<String, Map<Stage, LatencyHistogram>> partners;
+        private final Map<String, long[]> counts;
+
+        private Snapshot(Map<Stage, LatencyHistogram> overall,
+                         Map<String, Map<Stage, LatencyHistogram>> partners, Map<String, long[]> counts) {
+            this.overall = overall;
+            this.partners = partners;
+            this.counts = counts;
+        }
+
+        public Set<String> getPartnerUids() {
+            return Collections.unmodifiableSet(new TreeSet<>(partners.keySet()));
+        }
+
+        /** Microseconds spent in {@code stage}, across all partners. */
+        public LatencyHistogram getStage(Stage stage) {
+            return copyOf(overall.get(stage));
+        }
+
+        /** Microseconds spent in {@code stage} for one partner, or null if it is unknown. */
+        public LatencyHistogram getStage(String partnerUid, Stage stage) {
+            Map<Stage, LatencyHistogram> stages = partners.get(partnerUid);
+            return stages == null ? null : copyOf(stages.get(stage));
+        }
+
+        /** Frustums received from {@code partnerUid}. */
+        public long getFrameCount(String partnerUid) {
+            long[] partnerCounts = counts.get(partnerUid);
+            return partnerCounts == null ? 0 : partnerCounts[0];
+        }
+
+        /** Frustums {@code partnerUid} sent that were overwritten before we read them. */
+        public long getSkippedCount(String partnerUid) {
+            long[] partnerCounts = counts.get(partnerUid);
+            return partnerCounts == null ? 0 : partnerCounts[1];
+        }
+
+        /** p50 and p99 of each stage in milliseconds, overall and then per partner. */
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            appendStages(builder, "all", overall);
+            for (String partnerUid : getPartnerUids()) {
+                builder.append(String.format(Locale.US, "%s: %d frames, %d skipped%n", partnerUid,
+                        getFrameCount(partnerUid), getSkippedCount(partnerUid)));
+                appendStages(builder, partnerUid, partners.get(partnerUid));
+            }
+            return builder.toString();
+        }
+
+        private static void appendStages(StringBuilder builder, String name,
+                                         Map<Stage, LatencyHistogram> stages) {
+            for (Stage stage : Stage.values()) {
+                LatencyHistogram histogram = stages.get(stage);
+                builder.append(String.format(Locale.US, "%s %-18s n=%d p50=%.1fms p99=%.1fms%n", name,
+                        stage, histogram.getCount(), histogram.getValueAtPercentile(50) / 1e3,
+                        histogram.getValueAtPercentile(99) / 1e3));
+            }
+        }
+    }
+
+    private void record(PartnerTrace trace, Stage stage, long micros) {
+        trace.stages.get(stage).record(micros);
+        overall.get(stage).record(micros);
+    }
+
+    private static Map<Stage, LatencyHistogram> newStageMap() {
+        Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new LatencyHistogram());
+        }
+        return stages;
+    }
+
+    private static Map<Stage, LatencyHistogram> copy(Map<Stage, LatencyHistogram> stages) {
+        Map<Stage, LatencyHistogram> copy = new EnumMap<>(Stage.class);
+        for (Map.Entry<Stage, LatencyHistogram> entry : stages.entrySet()) {
+            copy.put(entry.getKey(), copyOf(entry.getValue()));
+        }
+        return copy;
+    }
+
+    private static LatencyHistogram copyOf(LatencyHistogram histogram) {
+        LatencyHistogram copy = new LatencyHistogram();
+        histogram.copyInto(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,356 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accumulates how much of the space around the anchor the participants of a session have seen, as
+ * a voxel grid centred on the anchor.
+ *
+ * <p>Every frustum added, in anchor space, is voxelized: a voxel counts as seen when its centre is
+ * inside the frustum. The grid keeps a heat count per voxel, the number of frustums that have
+ * covered it (saturating at {@link #MAX_COUNT}), and one bit per voxel per participant, so the
+ * share each participant has covered is known without rescanning. Voxels run along x first, then
+ * y, then z.
+ *
+ * <p>Voxelization walks the rows of voxels inside the frustum's bounding box. Since the frustum is
+ * the intersection of six slabs, one per face normal, each row is a single run of voxels found by
+ * intersecting six intervals, so the cost is one step per row plus one per covered voxel. Adding a
+ * frustum allocates nothing once its participant has been seen.
+ *
+ * <p>Thread-safe.
+ */
+public class VoxelCoverageGrid {
+    /** The heat count of a voxel stops increasing at this value. */
+    public static final int MAX_COUNT = Character.MAX_VALUE;
+
+    private static final float PARALLEL_EPSILON = 1e-6f;
+
+    private final int sizeX;
+    private final int sizeY;
+    private final int sizeZ;
+    private final float voxelSize;
+    // Anchor-space position of the grid's minimum corner.
+    private final float originX;
+    private final float originY;
+    private final float originZ;
+
+    private final char[] counts;
+    private final Map<String, Integer> participantIds = new HashMap<>();
+    private final List<String> participantUids = new ArrayList<>();
+    private final List<long[]> participantBits = new ArrayList<>();
+    private long[] participantCovered = new long[4];
+    private long coveredCount;
+    private long frustumCount;
+
+    // Slab of each face normal, reused by add(), under the lock.
+    private final float[] slabMin = new float[FlatViewFrustum.FACE_COUNT];
+    private final float[] slabMax = new float[FlatViewFrustum.FACE_COUNT];
+
+    /**
+     * Creates an empty grid of {@code sizeX} by {@code sizeY} by {@code sizeZ} voxels with sides
+     * of {@code voxelSize} metres, centred on the anchor.
+     */
+    public VoxelCoverageGrid(int sizeX, int sizeY, int sizeZ, float voxelSize) {
+        if (sizeX <= 0 || sizeY <= 0 || sizeZ <= 0 || (long) sizeX * sizeY * sizeZ > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bad grid size " + sizeX + " x " + sizeY + " x " + sizeZ);
+        }
+        if (!(voxelSize > 0)) {
+            throw new IllegalArgumentException("Voxel size must be positive, got " + voxelSize);
+        }
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.voxelSize = voxelSize;
+        originX = -sizeX * voxelSize / 2;
+        originY = -sizeY * voxelSize / 2;
+        originZ = -sizeZ * voxelSize / 2;
+        counts = new char[sizeX * sizeY * sizeZ];
+    }
+
+    /**
+     * Adds the voxels inside {@code frustum}, in anchor space, to the coverage of
+     * {@code participantUid}. Returns how many voxels the frustum covered; the part outside the
+     * grid is ignored.
+     */
+    public synchronized int add(String participantUid, FlatViewFrustum frustum) {
+        int participant = participantId(participantUid);
+        long[] bits = participantBits.get(participant);
+        float[] vertices = frustum.getVertices();
+        float[] normals = frustum.getNormals();
+        float[] bounds = frustum.getBounds();
+        frustumCount++;
+
+        for (int face = 0; face < FlatViewFrustum.FACE_COUNT; face++) {
+            float nx = normals[face * 3];
+            float ny = normals[face * 3 + 1];
+            float nz = normals[face * 3 + 2];
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+            for (int i = 0; i < FlatViewFrustum.VERTICES_SIZE; i += 3) {
+                float d = nx * vertices[i] + ny * vertices[i + 1] + nz * vertices[i + 2];
+                min = Math.min(min, d);
+                max = Math.max(max, d);
+            }
+            slabMin[face] = min;
+            slabMax[face] = max;
+        }
+
+        int fromX = Math.max(0, firstCentre(bounds[0], originX));
+        int toX = Math.min(sizeX - 1, lastCentre(bounds[3], originX));
+        int fromY = Math.max(0, firstCentre(bounds[1], originY));
+        int toY = Math.min(sizeY - 1, lastCentre(bounds[4], originY));
+        int fromZ = Math.max(0, firstCentre(bounds[2], originZ));
+        int toZ = Math.min(sizeZ - 1, lastCentre(bounds[5], originZ));
+        float rowMinX = originX + (fromX + 0.5f) * voxelSize;
+        float rowMaxX = originX + (toX + 0.5f) * voxelSize;
+
+        int covered = 0;
+        long newlyCovered = 0;
+        for (int z = fromZ; z <= toZ; z++) {
+            float cz = originZ + (z + 0.5f) * voxelSize;
+            for (int y = fromY; y <= toY; y++) {
+                float cy = originY + (y + 0.5f) * voxelSize;
+                float minX = rowMinX;
+                float maxX = rowMaxX;
+                for (int face = 0; face < FlatViewFrustum.FACE_COUNT && minX <= maxX; face++) {
+                    float nx = normals[face * 3];
+                    float offset = normals[face * 3 + 1] * cy + normals[face * 3 + 2] * cz;
+                    if (Math.abs(nx) < PARALLEL_EPSILON) {
+                        if (offset < slabMin[face] || offset > slabMax[face]) {
+                            maxX = -Float.MAX_VALUE;
+                        }
+                    } else {
+                        float a = (slabMin[face] - offset) / nx;
+                        float b = (slabMax[face] - offset) / nx;
+                        minX = Math.max(minX, Math.min(a, b));
+                        maxX = Math.min(maxX, Math.max(a, b));
+                    }
+                }
+                if (minX > maxX) {
+                    continue;
+                }
+                int first = Math.max(fromX, firstCentre(minX, originX));
+                int last = Math.min(toX, lastCentre(maxX, originX));
+                if (first > last) {
+                    continue;
+                }
+                int row = (z * sizeY + y) * sizeX;
+                for (int i = row + first; i <= row + last; i++) {
+                    char count = counts[i];
+                    if (count == 0) {
+                        coveredCount++;
+                    }
+                    if (count != MAX_COUNT) {
+                        counts[i] = (char) (count + 1);
+                    }
+                }
+                newlyCovered += setBits(bits, row + first, row + last + 1);
+                covered += last - first + 1;
+            }
+        }
+        participantCovered[participant] += newlyCovered;
+        return covered;
+    }
+
+    /** Number of voxels at least one participant has covered. */
+    public synchronized long getCoveredCount() {
+        return coveredCount;
+    }
+
+    /** Number of voxels {@code participantUid} has covered, 0 for a participant never added. */
+    public synchronized long getCoveredCount(String participantUid) {
+        Integer participant = participantIds.get(participantUid);
+        return participant == null ? 0 : participantCovered[participant];
+    }
+
+    /** Number of frustums added. */
+    public synchronized long getFrustumCount() {
+        return frustumCount;
+    }
+
+    /** Returns the heat count of a voxel. */
+    public synchronized int getCount(int x, int y, int z) {
+        return counts[index(x, y, z)];
+    }
+
+    /** Returns whether {@code participantUid} has covered a voxel. */
+    public synchronized boolean isCovered(String participantUid, int x, int y, int z) {
+        Integer participant = participantIds.get(participantUid);
+        if (participant == null) {
+            return false;
+        }
+        int index = index(x, y, z);
+        return (participantBits.get(participant)[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Copies the heat counts into {@code destination}, which must hold {@link #getVoxelCount()}
+     * values, without allocating; for exporting the grid repeatedly.
+     */
+    public synchronized void copyCounts(char[] destination) {
+        System.arraycopy(counts, 0, destination, 0, counts.length);
+    }
+
+    /** Returns a copy of the whole grid. */
+    public synchronized Snapshot snapshot() {
+        Map<String, Long> covered = new LinkedHashMap<>();
+        for (int i = 0; i < participantUids.size(); i++) {
+            covered.put(participantUids.get(i), participantCovered[i]);
+        }
+        return new Snapshot(this, counts.clone(), coveredCount, covered);
+    }
+
+    /** Forgets all coverage, keeping the participants. */
+    public synchronized void clear() {
+        Arrays.fill(counts, (char) 0);
+        for (long[] bits : participantBits) {
+            Arrays.fill(bits, 0);
+        }
+        Arrays.fill(participantCovered, 0);
+        coveredCount = 0;
+        frustumCount = 0;
+    }
+
+    public int getSizeX() {
+        return sizeX;
+    }
+
+    public int getSizeY() {
+        return sizeY;
+    }
+
+    public int getSizeZ() {
+        return sizeZ;
+    }
+
+    public int getVoxelCount() {
+        return counts.length;
+    }
+
+    public float getVoxelSize() {
+        return voxelSize;
+    }
+
+    private int participantId(String participantUid) {
+        Integer id = participantIds.get(participantUid);
+        if (id == null) {
+            id = participantUids.size();
+            participantIds.put(participantUid, id);
+            participantUids.add(participantUid);
+            participantBits.add(new long[(counts.length + 63) >>> 6]);
+            if (id == participantCovered.length) {
+                participantCovered = Arrays.copyOf(participantCovered, id * 2);
+            }
+        }
+        return id;
+    }
+
+    private int index(int x, int y, int z) {
+        if (x < 0 || x >= sizeX || y < 0 || y >= sizeY || z < 0 || z >= sizeZ) {
+            throw new IndexOutOfBoundsException("Voxel " + x + ", " + y + ", " + z + " is outside the grid");
+        }
+        return (z * sizeY + y) * sizeX + x;
+    }
+
+    // Index of the first voxel whose centre is at or above coordinate, before clamping.
+    private int firstCentre(float coordinate, float origin) {
+        return (int) Math.ceil((coordinate - origin) / voxelSize - 0.5f);
+    }
+
+    // Index of the last voxel whose centre is at or below coordinate, before clamping.
+    private int lastCentre(float coordinate, float origin) {
+        return (int) Math.floor((coordinate - origin) / voxelSize - 0.5f);
+    }
+
+    /* Sets bits [from, to) and returns how many of them were clear. */
+    private static long setBits(long[] bits, int from, int to) {
+        int firstWord = from >>> 6;
+        int lastWord = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (firstWord == lastWord) {
+            long mask = firstMask & lastMask;
+            long added = Long.bitCount(mask & ~bits[firstWord]);
+            bits[firstWord] |= mask;
+            return added;
+        }
+        long added = Long.bitCount(firstMask & ~bits[firstWord]);
+        bits[firstWord] |= firstMask;
+        for (int word = firstWord + 1; word < lastWord; word++) {
+            added += Long.bitCount(~bits[word]);
+            bits[word] = -1L;
+        }
+        added += Long.bitCount(lastMask & ~bits[lastWord]);
+        bits[lastWord] |= lastMask;
+        return added;
+    }
+
+    /** An immutable copy of a grid's coverage. */
+    public static final class Snapshot {
+        private final int sizeX;
+        private final int sizeY;
+        private final int sizeZ;
+        private final float voxelSize;
+        private final char[] counts;
+        private final long coveredCount;
+        private final Map<String, Long> participantCovered;
+
+        private Snapshot(VoxelCoverageGrid grid, char[] counts, long coveredCount,
+                         Map<String, Long> participantCovered) {
+            sizeX = grid.sizeX;
+            sizeY = grid.sizeY;
+            sizeZ = grid.sizeZ;
+            voxelSize = grid.voxelSize;
+            this.counts = counts;
+            this.coveredCount = coveredCount;
+            this.participantCovered = Collections.unmodifiableMap(participantCovered);
+        }
+
+        public int getCount(int x, int y, int z) {
+            return counts[(z * sizeY + y) * sizeX + x];
+        }
+
+        /** Copies the heat counts, x first, then y, then z, into {@code destination}. */
+        public void getCounts(char[] destination) {
+            System.arraycopy(counts, 0, destination, 0, counts.length);
+        }
+
+        public long getCoveredCount() {
+            return coveredCount;
+        }
+
+        /** Returns the fraction of the grid at least one participant has covered. */
+        public float getCoveredFraction() {
+            return (float) coveredCount / counts.length;
+        }
+
+        /** Returns the number of voxels each participant has covered, in order of first addition. */
+        public Map<String, Long> getParticipantCoveredCounts() {
+            return participantCovered;
+        }
+
+        public int getSizeX() {
+            return sizeX;
+        }
+
+        public int getSizeY() {
+            return sizeY;
+        }
+
+        public int getSizeZ() {
+            return sizeZ;
+        }
+
+        public float getVoxelSize() {
+            return voxelSize;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import com.google.ar.core.codelab.cloudanchor.session.CloudOperationPipeline.Status;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Drives the pipeline with scripted operations and an explicit clock, in milliseconds. */
+public class CloudOperationPipelineTest {
+    private static final long POLL_MILLIS = 100;
+    private static final long BACKOFF_MILLIS = 1000;
+    private static final long TIMEOUT_MILLIS = 60000;
+
+    // Every attempt started, in order, and the ones still running as far as the operations know.
+    private final List<String> started = new ArrayList<>();
+    private final Set<String> active = new HashSet<>();
+    private final List<String> cancelled = new ArrayList<>();
+    private final List<String> results = new ArrayList<>();
+
+    @Test
+    public void higherPriorityStartsFirst_equalPrioritiesInSubmissionOrder() {
+        CloudOperationPipeline<String> pipeline = new CloudOperationPipeline<>(1, POLL_MILLIS, BACKOFF_MILLIS);
+        submit(pipeline, new FakeOperation("low", Status.SUCCESS), 0, 0);
+        submit(pipeline, new FakeOperation("high1", Status.SUCCESS), 1, 0);
+        submit(pipeline, new FakeOperation("high2", Status.SUCCESS), 1, 0);
+
+        for (long now = 0; now <= 3 * POLL_MILLIS; now += POLL_MILLIS) {
+            pipeline.update(now);
+        }
+
+        assertEquals(Arrays.asList("high1#1", "high2#1", "low#1"), started);
+        assertEquals(Arrays.asList("high1#1 SUCCESS", "high2#1 SUCCESS", "low#1 SUCCESS"), results);
+        assertEquals(0, pipeline.getPendingCount());
+    }
+
+    @Test
+    public void retryableError_isRetriedAfterBackoff_thenSucceeds() {
+        CloudOperationPipeline<String> pipeline = new CloudOperationPipeline<>(1, POLL_MILLIS, BACKOFF_MILLIS);
+        submit(pipeline, new FakeOperation("op", Status.RETRYABLE_ERROR, Status.SUCCESS), 0, 0);
+
+        pipeline.update(0);
+        pipeline.update(POLL_MILLIS);
+        assertEquals(Collections.singletonList("op#1"), cancelled);
+        assertEquals(0, pipeline.getRunningCount());
+
+        // Still backing off.
+        pipeline.update(POLL_MILLIS + BACKOFF_MILLIS - 1);
+        assertEquals(1, started.size());
+
+        pipeline.update(POLL_MILLIS + BACKOFF_MILLIS);
+        assertEquals(Arrays.asList("op#1", "op#2"), started);
+        assertTrue(results.isEmpty());
+
+        pipeline.update(2 * POLL_MILLIS + BACKOFF_MILLIS);
+        assertEquals(Collections.singletonList("op#2 SUCCESS"), results);
+        assertEquals(0, pipeline.getPendingCount());
+    }
+
+    @Test
+    public void failedStarts_backOffExponentially_thenReportError() {
+        CloudOperationPipeline<String> pipeline = new CloudOperationPipeline<>(1, POLL_MILLIS, BACKOFF_MILLIS);
+        FakeOperation operation = new FakeOperation("op");
+        operation.failStarts = 3;
+        submit(pipeline, operation, 0, 0, 3);
+
+        pipeline.update(0);
+        pipeline.update(BACKOFF_MILLIS - 1);
+        assertEquals(1, operation.attempts);
+        pipeline.update(BACKOFF_MILLIS);
+        assertEquals(2, operation.attempts);
+        // The second backoff is twice the first.
+        pipeline.update(BACKOFF_MILLIS + 2 * BACKOFF_MILLIS - 1);
+        assertEquals(2, operation.attempts);
+        assertTrue(results.isEmpty());
+        pipeline.update(BACKOFF_MILLIS + 2 * BACKOFF_MILLIS);
+        assertEquals(3, operation.attempts);
+
+        assertEquals(Collections.singletonList("null ERROR"), results);
+        assertEquals(0, pipeline.getPendingCount());
+    }
+
+    @Test
+    public void deadlinePassingWhileBackingOff_timesOutWithoutAnotherAttempt() {
+        CloudOperationPipeline<String> pipeline = new CloudOperationPipeline<>(1, POLL_MILLIS, BACKOFF_MILLIS);
+        submit(pipeline, new FakeOperation("op", Status.RETRYABLE_ERROR, Status.SUCCESS), 0, 0, 3,
+                BACKOFF_MILLIS / 2);
+
+        pipeline.update(0);
+        pipeline.update(POLL_MILLIS);
+        pipeline.update(BACKOFF_MILLIS / 2);
+        assertEquals(Collections.singletonList("null TIMED_OUT"), results);
+
+        pipeline.update(POLL_MILLIS + BACKOFF_MILLIS);
+        pipeline.update(POLL_MILLIS + 4 * BACKOFF_MILLIS);
+        assertEquals(Collections.singletonList("op#1"), started);
+        assertEquals(1, results.size());
+        assertEquals(0, pipeline.getRunningCount());
+        assertEquals(0, pipeline.getPendingCount());
+    }
+
+    @Test
+    public void deadlinePassingWhileRunning_cancelsTheAttemptAndFreesItsSlot() {
+        CloudOperationPipeline<String> pipeline = new CloudOperationPipeline<>(1, POLL_MILLIS, BACKOFF_MILLIS);
+        submit(pipeline, new FakeOperation("slow"), 0, 0, 1, 3 * POLL_MILLIS);
+        submit(pipeline, new FakeOperation("next"), 0, 0);
+
+        pipeline.update(0);
+        pipeline.update(3 * POLL_MILLIS);
+
+        assertEquals(Collections.singletonList("null TIMED_OUT"), results);
+        assertEquals(Collections.singletonList("slow#1"), cancelled);
+        assertEquals(Arrays.asList("slow#1", "next#1"), started);
+        assertEquals(1, pipeline.getRunningCount());
+    }
+
+    @Test
+    public void concurrencyCap_holdsAfterCancels() {
+        CloudOperationPipeline<String> pipeline = new CloudOperationPipeline<>(2, POLL_MILLIS, BACKOFF_MILLIS);
+        List<CloudOperationPipeline<String>.Ticket> tickets = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            tickets.add(submit(pipeline, new FakeOperation("op" + i), 0, 0));
+        }
+
+        long now = 0;
+        pipeline.update(now);
+        assertRunning(pipeline, 2);
+
+        // Cancelling a running ticket frees its slot for the next update.
+        tickets.get(0).cancel();
+        assertEquals(Collections.singletonList("op0#1"), cancelled);
+        assertEquals(1, pipeline.getRunningCount());
+        pipeline.update(now += POLL_MILLIS);
+        assertRunning(pipeline, 2);
+        assertEquals(Arrays.asList("op0#1", "op1#1", "op2#1"), started);
+
+        // Cancelling twice, or cancelling a waiting ticket, must not free another slot.
+        tickets.get(0).cancel();
+        tickets.get(3).cancel();
+        pipeline.update(now += POLL_MILLIS);
+        assertRunning(pipeline, 2);
+        assertEquals(3, started.size());
+
+        tickets.get(1).cancel();
+        tickets.get(2).cancel();
+        pipeline.update(now += POLL_MILLIS);
+        assertRunning(pipeline, 2);
+        assertEquals(Arrays.asList("op0#1", "op1#1", "op2#1", "op4#1", "op5#1"), started);
+
+        pipeline.cancelAll();
+        assertEquals(0, pipeline.getRunningCount());
+        assertEquals(0, pipeline.getPendingCount());
+        assertTrue(active.isEmpty());
+        assertTrue(results.isEmpty());
+
+        for (int i = 6; i < 9; i++) {
+            submit(pipeline, new FakeOperation("op" + i), 0, now);
+        }
+        pipeline.update(now += POLL_MILLIS);
+        assertRunning(pipeline, 2);
+    }
+
+    @Test
+    public void cancelledTicket_neverCallsBack() {
+        CloudOperationPipeline<String> pipeline = new CloudOperationPipeline<>(1, POLL_MILLIS, BACKOFF_MILLIS);
+        CloudOperationPipeline<String>.Ticket ticket =
+                submit(pipeline, new FakeOperation("op", Status.SUCCESS), 0, 0);
+
+        pipeline.update(0);
+        ticket.cancel();
+        pipeline.update(POLL_MILLIS);
+        pipeline.update(TIMEOUT_MILLIS);
+
+        assertTrue(ticket.isFinished());
+        assertTrue(results.isEmpty());
+        assertFalse(active.contains("op#1"));
+    }
+
+    private void assertRunning(CloudOperationPipeline<String> pipeline, int expected) {
+        assertEquals(expected, pipeline.getRunningCount());
+        assertEquals(expected, active.size());
+    }
+
+    private CloudOperationPipeline<String>.Ticket submit(CloudOperationPipeline<String> pipeline,
+                                                         FakeOperation operation, int priority, long now) {
+        return submit(pipeline, operation, priority, now, 3);
+    }
+
+    private CloudOperationPipeline<String>.Ticket submit(CloudOperationPipeline<String> pipeline,
+                                                         FakeOperation operation, int priority, long now,
+                                                         int maxAttempts) {
+        return submit(pipeline, operation, priority, now, maxAttempts, TIMEOUT_MILLIS);
+    }
+
+    private CloudOperationPipeline<String>.Ticket submit(CloudOperationPipeline<String> pipeline,
+                                                         FakeOperation operation, int priority, long now,
+                                                         int maxAttempts, long timeoutMillis) {
+        return pipeline.submit(operation, priority, now, timeoutMillis, maxAttempts,
+                (handle, status) -> results.add(handle + " " + status));
+    }
+
+    /*
+     * Reports the scripted statuses on successive polls, across attempts, then IN_PROGRESS
+     * forever. The first failStarts starts fail.
+     */
+    private final class FakeOperation implements CloudOperationPipeline.Operation<String> {
+        final String name;
+        final ArrayDeque<Status> polls;
+        int failStarts;
+        int attempts;
+
+        FakeOperation(String name, Status... polls) {
+            this.name = name;
+            this.polls = new ArrayDeque<>(Arrays.asList(polls));
+        }
+
+        @Override
+        public String start() {
+            attempts++;
+            if (attempts <= failStarts) {
+                return null;
+            }
+            String handle = name + "#" + attempts;
+            assertTrue("started twice: " + handle, active.add(handle));
+            started.add(handle);
+            return handle;
+        }
+
+        @Override
+        public Status poll(String handle) {
+            assertTrue("polled inactive " + handle, active.contains(handle));
+            Status status = polls.isEmpty() ? Status.IN_PROGRESS : polls.poll();
+            if (status != Status.IN_PROGRESS) {
+                active.remove(handle);
+            }
+            return status;
+        }
+
+        @Override
+        public void cancel(String handle) {
+            active.remove(handle);
+            cancelled.add(handle);
+        }
+    }
+}
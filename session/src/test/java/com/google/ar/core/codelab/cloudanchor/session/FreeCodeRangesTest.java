@@ -0,0 +1,99 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import org.junit.Test;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FreeCodeRangesTest {
+
+    @Test
+    public void take_fromEmpty_returnsNull() {
+        assertNull(FreeCodeRanges.take(new TreeMap<>(), 10));
+    }
+
+    @Test
+    public void take_smallerThanRange_splitsIt() {
+        SortedMap<Integer, Integer> free = ranges(100, 130);
+
+        assertEquals(new ShortCodeLease(100, 110), FreeCodeRanges.take(free, 10));
+        assertEquals(ranges(110, 130), free);
+    }
+
+    @Test
+    public void take_largerThanRange_returnsWholeRange() {
+        SortedMap<Integer, Integer> free = ranges(100, 104, 200, 250);
+
+        assertEquals(new ShortCodeLease(100, 104), FreeCodeRanges.take(free, 10));
+        assertEquals(ranges(200, 250), free);
+    }
+
+    @Test
+    public void take_exactRange_removesIt() {
+        SortedMap<Integer, Integer> free = ranges(100, 110);
+
+        assertEquals(new ShortCodeLease(100, 110), FreeCodeRanges.take(free, 10));
+        assertEquals(ranges(), free);
+    }
+
+    @Test
+    public void add_disjoint_keepsRangesApart() {
+        SortedMap<Integer, Integer> free = ranges(100, 110);
+
+        FreeCodeRanges.add(free, new ShortCodeLease(120, 125));
+        FreeCodeRanges.add(free, new ShortCodeLease(50, 60));
+
+        assertEquals(ranges(50, 60, 100, 110, 120, 125), free);
+    }
+
+    @Test
+    public void add_adjacentBefore_mergesIntoIt() {
+        SortedMap<Integer, Integer> free = ranges(100, 110);
+
+        FreeCodeRanges.add(free, new ShortCodeLease(110, 115));
+
+        assertEquals(ranges(100, 115), free);
+    }
+
+    @Test
+    public void add_adjacentAfter_mergesIntoIt() {
+        SortedMap<Integer, Integer> free = ranges(100, 110);
+
+        FreeCodeRanges.add(free, new ShortCodeLease(90, 100));
+
+        assertEquals(ranges(90, 110), free);
+    }
+
+    @Test
+    public void add_fillingGap_mergesBothSides() {
+        SortedMap<Integer, Integer> free = ranges(100, 110, 120, 130);
+
+        FreeCodeRanges.add(free, new ShortCodeLease(110, 120));
+
+        assertEquals(ranges(100, 130), free);
+        assertEquals(30, FreeCodeRanges.count(free));
+    }
+
+    @Test
+    public void takeThenAdd_restoresRanges() {
+        SortedMap<Integer, Integer> free = ranges(100, 130, 200, 210);
+
+        ShortCodeLease first = FreeCodeRanges.take(free, 10);
+        ShortCodeLease second = FreeCodeRanges.take(free, 10);
+        FreeCodeRanges.add(free, first);
+        FreeCodeRanges.add(free, second);
+
+        assertEquals(ranges(100, 130, 200, 210), free);
+    }
+
+    private static SortedMap<Integer, Integer> ranges(int... startsAndEnds) {
+        SortedMap<Integer, Integer> free = new TreeMap<>();
+        for (int i = 0; i < startsAndEnds.length; i += 2) {
+            free.put(startsAndEnds[i], startsAndEnds[i + 1]);
+        }
+        return free;
+    }
+}
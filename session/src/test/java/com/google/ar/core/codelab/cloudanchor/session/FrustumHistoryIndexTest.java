@@ -0,0 +1,121 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Checks region and time queries against a linear scan over everything added. */
+public class FrustumHistoryIndexTest {
+    private static final long BUCKET_MILLIS = 100;
+    private static final long MAX_AGE_MILLIS = Long.MAX_VALUE / 2;
+    private static final int FRUSTUMS = 5000;
+    private static final int PARTICIPANTS = 12;
+
+    private final List<float[]> addedBounds = new ArrayList<>();
+    private final List<Long> addedTimes = new ArrayList<>();
+    private final List<String> addedUids = new ArrayList<>();
+
+    @Test
+    public void queries_sealedInline_matchLinearScan() {
+        FrustumHistoryIndex index = new FrustumHistoryIndex(BUCKET_MILLIS, MAX_AGE_MILLIS);
+        fill(index, new Random(1));
+
+        assertEquals(FRUSTUMS, index.size());
+        assertTrue(index.getBucketCount() > 1);
+        assertQueriesMatch(index, new Random(2));
+    }
+
+    @Test
+    public void queries_beforeAndAfterDeferredSeal_matchLinearScan() {
+        List<Runnable> seals = new ArrayList<>();
+        Executor deferred = seals::add;
+        FrustumHistoryIndex index = new FrustumHistoryIndex(BUCKET_MILLIS, MAX_AGE_MILLIS, deferred);
+        fill(index, new Random(3));
+        assertEquals(index.getBucketCount() - 1, seals.size());
+
+        // Full buckets waiting for their tree are scanned linearly.
+        assertQueriesMatch(index, new Random(4));
+
+        for (Runnable seal : seals) {
+            seal.run();
+        }
+        assertQueriesMatch(index, new Random(4));
+    }
+
+    @Test
+    public void add_evictsBucketsOlderThanMaxAge() {
+        FrustumHistoryIndex index = new FrustumHistoryIndex(BUCKET_MILLIS, 10 * BUCKET_MILLIS);
+        FlatViewFrustum frustum = box(0, 0, 0, 1);
+        for (long time = 0; time < 100 * BUCKET_MILLIS; time += 10) {
+            index.add("participant", frustum, time);
+        }
+
+        // The buckets inside the maximum age, the one straddling it and the current one remain.
+        assertTrue(index.getBucketCount() <= 12);
+        assertEquals(0, index.countFrustums(frustum.getBounds(), 0, 80 * BUCKET_MILLIS));
+        assertEquals(100, index.countFrustums(frustum.getBounds(), 90 * BUCKET_MILLIS, 100 * BUCKET_MILLIS));
+    }
+
+    private void fill(FrustumHistoryIndex index, Random random) {
+        long time = 0;
+        for (int i = 0; i < FRUSTUMS; i++) {
+            time += random.nextInt(3);
+            FlatViewFrustum frustum = box(20 * random.nextFloat() - 10, 4 * random.nextFloat() - 2,
+                    20 * random.nextFloat() - 10, 0.2f + random.nextFloat());
+            String uid = "participant-" + random.nextInt(PARTICIPANTS);
+            index.add(uid, frustum, time);
+            addedBounds.add(frustum.getBounds().clone());
+            addedTimes.add(time);
+            addedUids.add(uid);
+        }
+    }
+
+    private void assertQueriesMatch(FrustumHistoryIndex index, Random random) {
+        long lastTime = addedTimes.get(addedTimes.size() - 1);
+        for (int q = 0; q < 500; q++) {
+            float[] region = box(20 * random.nextFloat() - 10, 4 * random.nextFloat() - 2,
+                    20 * random.nextFloat() - 10, 0.1f + 2 * random.nextFloat()).getBounds();
+            long from = (long) (random.nextDouble() * lastTime);
+            long to = from + (long) (random.nextDouble() * lastTime / 4);
+
+            Set<String> expected = new LinkedHashSet<>();
+            int expectedCount = 0;
+            for (int i = 0; i < addedBounds.size(); i++) {
+                long time = addedTimes.get(i);
+                if (time >= from && time <= to && overlaps(addedBounds.get(i), region)) {
+                    expected.add(addedUids.get(i));
+                    expectedCount++;
+                }
+            }
+
+            assertEquals("query " + q, expectedCount, index.countFrustums(region, from, to));
+            assertEquals("query " + q, expected, index.findParticipants(region, from, to));
+        }
+    }
+
+    private static boolean overlaps(float[] a, float[] b) {
+        return a[0] <= b[3] && b[0] <= a[3] && a[1] <= b[4] && b[1] <= a[4] && a[2] <= b[5] && b[2] <= a[5];
+    }
+
+    private static FlatViewFrustum box(float x, float y, float z, float halfSize) {
+        float[] vertices = new float[FlatViewFrustum.VERTICES_SIZE];
+        for (int corner = 0; corner < FlatViewFrustum.VERTEX_COUNT; corner++) {
+            vertices[corner * 3] = (corner & 1) == 0 ? x - halfSize : x + halfSize;
+            vertices[corner * 3 + 1] = (corner & 2) == 0 ? y + halfSize : y - halfSize;
+            vertices[corner * 3 + 2] = (corner & 4) == 0 ? z + halfSize : z - halfSize;
+        }
+        FlatViewFrustum frustum = new FlatViewFrustum();
+        frustum.setVertices(vertices);
+        return frustum;
+    }
+}
@@ -0,0 +1,100 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LoopbackSessionBackendTest {
+    private static final long WAIT_MILLIS = 10000;
+
+    private final LoopbackSessionHub hub = new LoopbackSessionHub(4, 0, 0.1);
+    private final ExecutorService joiners = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        joiners.shutdownNow();
+        hub.shutdown();
+    }
+
+    @Test
+    public void membersJoiningAtOnce_allSeeEachOther() throws InterruptedException {
+        int sessions = 500;
+        int sessionSize = 4;
+        List<List<LoopbackSessionBackend>> members = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch joined = new CountDownLatch(sessions * sessionSize);
+        for (int s = 0; s < sessions; s++) {
+            List<LoopbackSessionBackend> session = new ArrayList<>();
+            for (int i = 0; i < sessionSize; i++) {
+                LoopbackSessionBackend backend = hub.connect("participant-" + s + "-" + i);
+                session.add(backend);
+                int shortCode = s;
+                joiners.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    backend.joinSession(shortCode);
+                    joined.countDown();
+                });
+            }
+            members.add(session);
+        }
+        start.countDown();
+        assertTrue(joined.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+
+        for (List<LoopbackSessionBackend> session : members) {
+            for (LoopbackSessionBackend backend : session) {
+                Set<String> expected = new HashSet<>();
+                for (LoopbackSessionBackend partner : session) {
+                    if (partner != backend) {
+                        expected.add(partner.getUid());
+                    }
+                }
+                assertEquals(backend.getUid(), expected, awaitPartners(backend, expected.size()));
+            }
+        }
+    }
+
+    @Test
+    public void leavingMember_isDroppedByEveryPartner() throws InterruptedException {
+        List<LoopbackSessionBackend> session = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            LoopbackSessionBackend backend = hub.connect("participant-" + i);
+            backend.joinSession(7);
+            session.add(backend);
+        }
+        for (LoopbackSessionBackend backend : session) {
+            assertEquals(2, awaitPartners(backend, 2).size());
+        }
+
+        session.get(0).leaveSession();
+
+        assertEquals(0, awaitPartners(session.get(0), 0).size());
+        assertEquals(1, awaitPartners(session.get(1), 1).size());
+        assertEquals(1, awaitPartners(session.get(2), 1).size());
+    }
+
+    private static Set<String> awaitPartners(LoopbackSessionBackend backend, int count)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        Set<String> partners = backend.getPartnerUids();
+        while (partners.size() != count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+            partners = backend.getPartnerUids();
+        }
+        return partners;
+    }
+}
@@ -0,0 +1,162 @@
+package com.google.ar.core.codelab.cloudanchor.session;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ShortCodeAllocatorTest {
+    private static final int INITIAL_CODE = 1000;
+
+    @Test
+    public void nextShortCode_handsOutConsecutiveCodesFromOneBlock() {
+        InMemoryLeaseStore store = new InMemoryLeaseStore(INITIAL_CODE, 0);
+        ShortCodeAllocator allocator = new ShortCodeAllocator(store, 10);
+        List<Integer> codes = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            allocator.nextShortCode(codes::add);
+        }
+
+        assertEquals(10, codes.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.valueOf(INITIAL_CODE + i), codes.get(i));
+        }
+        assertEquals(1, store.getTransactionCount());
+        assertEquals(0, allocator.getRemaining());
+    }
+
+    @Test
+    public void releaseUnused_letsAnotherClientReuseTheCodes() {
+        InMemoryLeaseStore store = new InMemoryLeaseStore(INITIAL_CODE, 0);
+        ShortCodeAllocator first = new ShortCodeAllocator(store, 10);
+        ShortCodeAllocator second = new ShortCodeAllocator(store, 10);
+        List<Integer> codes = new ArrayList<>();
+
+        first.nextShortCode(codes::add);
+        first.releaseUnused();
+        second.nextShortCode(codes::add);
+
+        assertEquals(Integer.valueOf(INITIAL_CODE), codes.get(0));
+        assertEquals(Integer.valueOf(INITIAL_CODE + 1), codes.get(1));
+        assertEquals(9, store.getReleasedCodeCount());
+        assertEquals(0, store.getFreeCodeCount());
+        assertEquals(8, second.getRemaining());
+    }
+
+    @Test
+    public void waitersBeyondBlockSize_areServedByAFollowUpReservation() {
+        DeferredLeaseStore store = new DeferredLeaseStore(new InMemoryLeaseStore(INITIAL_CODE, 0));
+        ShortCodeAllocator allocator = new ShortCodeAllocator(store, 10);
+        List<Integer> codes = new ArrayList<>();
+
+        for (int i = 0; i < 15; i++) {
+            allocator.nextShortCode(codes::add);
+        }
+        assertEquals(1, store.pending.size());
+        assertTrue(codes.isEmpty());
+
+        store.completeNext();
+        assertEquals(10, codes.size());
+        assertEquals(1, store.pending.size());
+
+        store.completeNext();
+        assertEquals(15, codes.size());
+        assertEquals(15, new HashSet<>(codes).size());
+        assertEquals(5, allocator.getRemaining());
+    }
+
+    @Test
+    public void failedReservation_failsEveryWaiter() {
+        DeferredLeaseStore store = new DeferredLeaseStore(new InMemoryLeaseStore(INITIAL_CODE, 0));
+        ShortCodeAllocator allocator = new ShortCodeAllocator(store, 10);
+        List<Integer> codes = new ArrayList<>();
+
+        allocator.nextShortCode(codes::add);
+        allocator.nextShortCode(codes::add);
+        store.pending.remove(0).onLeaseReserved(null);
+
+        assertEquals(2, codes.size());
+        assertNull(codes.get(0));
+        assertNull(codes.get(1));
+    }
+
+    @Test
+    public void concurrentWaiters_getDistinctCodes() throws InterruptedException {
+        int threads = 8;
+        int codesPerThread = 500;
+        int blockSize = 10;
+        // A simulated round trip keeps reservations in flight long enough for waiters to queue.
+        InMemoryLeaseStore store = new InMemoryLeaseStore(INITIAL_CODE, TimeUnit.MICROSECONDS.toNanos(50));
+        ShortCodeAllocator allocator = new ShortCodeAllocator(store, blockSize);
+        ConcurrentLinkedQueue<Integer> codes = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads * codesPerThread);
+
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < codesPerThread; i++) {
+                    allocator.nextShortCode(shortCode -> {
+                        codes.add(shortCode == null ? Integer.MIN_VALUE : shortCode);
+                        done.countDown();
+                    });
+                }
+            }).start();
+        }
+        start.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        Set<Integer> distinct = new HashSet<>();
+        for (Integer code : codes) {
+            assertNotNull(code);
+            assertTrue("failed reservation", code != Integer.MIN_VALUE);
+            assertTrue("duplicate code " + code, distinct.add(code));
+        }
+        assertEquals(threads * codesPerThread, distinct.size());
+        // Every reservation asks for at least a block, so there is at most one per block handed out.
+        int maxReservations = (threads * codesPerThread + blockSize - 1) / blockSize;
+        assertTrue(store.getTransactionCount() <= maxReservations);
+    }
+
+    /* Holds each reservation until the test completes it. */
+    private static final class DeferredLeaseStore implements LeaseStore {
+        final LeaseStore delegate;
+        final List<Callback> pending = new ArrayList<>();
+        final List<Integer> sizes = new ArrayList<>();
+
+        DeferredLeaseStore(LeaseStore delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void reserve(int blockSize, Callback callback) {
+            pending.add(callback);
+            sizes.add(blockSize);
+        }
+
+        @Override
+        public void release(ShortCodeLease lease) {
+            delegate.release(lease);
+        }
+
+        void completeNext() {
+            Callback callback = pending.remove(0);
+            delegate.reserve(sizes.remove(0), callback);
+        }
+    }
+}
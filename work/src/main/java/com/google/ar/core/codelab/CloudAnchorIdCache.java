@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ar.core.codelab;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.google.ar.core.codelab.cloudanchor.helpers.StorageManager;
+import com.google.ar.core.codelab.cloudanchor.session.ExpiringLruCache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The two cache tiers in front of the Firebase short code lookup: an in-memory LRU, then the
+ * on-disk {@link StorageManager} store. Short codes Firebase does not know are remembered in
+ * memory only, briefly, since a host may store them any moment.
+ */
+class CloudAnchorIdCache {
+  /** Hosted cloud anchors expire after a day, so their IDs are not worth keeping longer. */
+  static final long TTL_MS = TimeUnit.HOURS.toMillis(24);
+  static final long NEGATIVE_TTL_MS = TimeUnit.SECONDS.toMillis(30);
+  static final int MEMORY_CAPACITY = 64;
+  // Stored in the memory tier for short codes Firebase has no anchor for.
+  private static final String UNKNOWN = "";
+
+  private final Context context;
+  private final StorageManager storageManager = new StorageManager();
+  private final ExpiringLruCache<Integer, String> memory =
+      new ExpiringLruCache<>(MEMORY_CAPACITY, SystemClock::elapsedRealtime);
+
+  CloudAnchorIdCache(Context context) {
+    this.context = context.getApplicationContext();
+  }
+
+  /**
+   * Returns the cached cloud anchor ID, an empty string if the short code is known to have none,
+   * or null if Firebase has to be asked.
+   */
+  String get(int shortCode) {
+    String cloudAnchorId = memory.get(shortCode);
+    if (cloudAnchorId != null) {
+      return cloudAnchorId;
+    }
+    cloudAnchorId = storageManager.getCloudAnchorId(context, shortCode);
+    if (cloudAnchorId.isEmpty()) {
+      return null;
+    }
+    long age = System.currentTimeMillis() - storageManager.getStoredAtMillis(context, shortCode);
+    if (age < 0 || age >= TTL_MS) {
+      return null;
+    }
+    memory.put(shortCode, cloudAnchorId, TTL_MS - age);
+    return cloudAnchorId;
+  }
+
+  /** Writes the mapping through to both tiers. */
+  void put(int shortCode, String cloudAnchorId) {
+    memory.put(shortCode, cloudAnchorId, TTL_MS);
+    storageManager.storeUsingShortCode(context, shortCode, cloudAnchorId);
+  }
+
+  /** Remembers that Firebase has no cloud anchor ID for {@code shortCode}. */
+  void putUnknown(int shortCode) {
+    memory.put(shortCode, UNKNOWN, NEGATIVE_TTL_MS);
+  }
+}
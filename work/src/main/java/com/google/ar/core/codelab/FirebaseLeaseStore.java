@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ar.core.codelab;
+
+import android.util.Log;
+
+import com.google.ar.core.codelab.cloudanchor.session.FreeCodeRanges;
+import com.google.ar.core.codelab.cloudanchor.session.LeaseStore;
+import com.google.ar.core.codelab.cloudanchor.session.ShortCodeLease;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.MutableData;
+import com.google.firebase.database.Transaction;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Leases blocks of short codes from the Firebase Database.
+ *
+ * <p>New codes come from the counter node, which holds the last code handed out. Older builds
+ * that take one code per transaction from the same counter therefore never collide with a block.
+ * Released codes are kept in a separate node as {@code start -> end} ranges and handed out first.
+ */
+class FirebaseLeaseStore implements LeaseStore {
+  private static final String TAG = FirebaseLeaseStore.class.getName();
+
+  private final DatabaseReference counterRef;
+  private final DatabaseReference freeRef;
+  private final int initialCode;
+
+  FirebaseLeaseStore(DatabaseReference counterRef, DatabaseReference freeRef, int initialCode) {
+    this.counterRef = counterRef;
+    this.freeRef = freeRef;
+    this.initialCode = initialCode;
+  }
+
+  @Override
+  public void reserve(int blockSize, Callback callback) {
+    ShortCodeLease[] lease = new ShortCodeLease[1];
+    freeRef.runTransaction(
+        new Transaction.Handler() {
+          @Override
+          public Transaction.Result doTransaction(MutableData currentData) {
+            SortedMap<Integer, Integer> free = readRanges(currentData);
+            lease[0] = FreeCodeRanges.take(free, blockSize);
+            if (lease[0] == null) {
+              // Commit the empty node unchanged rather than aborting: the first attempt runs on
+              // the local cache, which is empty for a node nobody listens to, and only a commit
+              // lets Firebase retry against the server's value.
+              return Transaction.success(currentData);
+            }
+            writeRanges(currentData, free);
+            return Transaction.success(currentData);
+          }
+
+          @Override
+          public void onComplete(
+              DatabaseError error, boolean committed, DataSnapshot currentData) {
+            if (!committed) {
+              Log.e(TAG, "Firebase Error", error == null ? null : error.toException());
+              callback.onLeaseReserved(null);
+            } else if (lease[0] != null) {
+              callback.onLeaseReserved(lease[0]);
+            } else {
+              // No released codes on the server; take a fresh block instead.
+              reserveFromCounter(blockSize, callback);
+            }
+          }
+        });
+  }
+
+  @Override
+  public void release(ShortCodeLease lease) {
+    freeRef.runTransaction(
+        new Transaction.Handler() {
+          @Override
+          public Transaction.Result doTransaction(MutableData currentData) {
+            SortedMap<Integer, Integer> free = readRanges(currentData);
+            FreeCodeRanges.add(free, lease);
+            writeRanges(currentData, free);
+            return Transaction.success(currentData);
+          }
+
+          @Override
+          public void onComplete(
+              DatabaseError error, boolean committed, DataSnapshot currentData) {
+            if (!committed) {
+              Log.w(TAG, "Could not release " + lease, error == null ? null : error.toException());
+            }
+          }
+        });
+  }
+
+  private void reserveFromCounter(int blockSize, Callback callback) {
+    ShortCodeLease[] lease = new ShortCodeLease[1];
+    counterRef.runTransaction(
+        new Transaction.Handler() {
+          @Override
+          public Transaction.Result doTransaction(MutableData currentData) {
+            Integer lastCode = currentData.getValue(Integer.class);
+            if (lastCode == null) {
+              lastCode = initialCode - 1;
+            }
+            lease[0] = new ShortCodeLease(lastCode + 1, lastCode + 1 + blockSize);
+            currentData.setValue(lastCode + blockSize);
+            return Transaction.success(currentData);
+          }
+
+          @Override
+          public void onComplete(
+              DatabaseError error, boolean committed, DataSnapshot currentData) {
+            if (!committed) {
+              Log.e(TAG, "Firebase Error", error == null ? null : error.toException());
+              callback.onLeaseReserved(null);
+            } else {
+              callback.onLeaseReserved(lease[0]);
+            }
+          }
+        });
+  }
+
+  private static SortedMap<Integer, Integer> readRanges(MutableData data) {
+    SortedMap<Integer, Integer> free = new TreeMap<>();
+    for (MutableData range : data.getChildren()) {
+      Integer end = range.getValue(Integer.class);
+      if (end != null) {
+        free.put(Integer.valueOf(range.getKey()), end);
+      }
+    }
+    return free;
+  }
+
+  private static void writeRanges(MutableData data, SortedMap<Integer, Integer> free) {
+    // Firebase keys must be strings.
+    SortedMap<String, Integer> ranges = new TreeMap<>();
+    for (Map.Entry<Integer, Integer> range : free.entrySet()) {
+      ranges.put(String.valueOf(range.getKey()), range.getValue());
+    }
+    data.setValue(ranges.isEmpty() ? null : ranges);
+  }
+}
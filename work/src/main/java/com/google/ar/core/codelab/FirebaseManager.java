@@ -17,10 +17,18 @@
 package com.google.ar.core.codelab;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
 import com.google.ar.core.codelab.cloudanchor.model.CloudViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.FrustumCodec;
+import com.google.ar.core.codelab.cloudanchor.model.FrustumSnapshot;
+import com.google.ar.core.codelab.cloudanchor.session.PublishThrottle;
+import com.google.ar.core.codelab.cloudanchor.session.SessionSyncBackend;
+import com.google.ar.core.codelab.cloudanchor.session.ShortCodeAllocator;
+import com.google.ar.core.codelab.cloudanchor.session.SyncLatencyTracker;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
@@ -29,113 +37,119 @@ import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.MutableData;
-import com.google.firebase.database.Transaction;
 import com.google.firebase.database.ValueEventListener;
 
+import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
-/** Helper class for Firebase storage of cloud anchor IDs. */
-public class FirebaseManager {
-
-  /** Listener for a new Cloud Anchor ID from the Firebase Database. */
-  public interface CloudAnchorIdListener {
-    void onCloudAnchorIdAvailable(String cloudAnchorId);
-  }
-
-  /** Listener for a partner view frustum from the Firebase Database. */
-  public interface PartnerCloudViewFrustumListener {
-    void onCloudViewFrustumChanged(CloudViewFrustum cloudViewFrustum);
-  }
-
-  /** Listener for a new short code from the Firebase Database. */
-  public interface ShortCodeListener {
-    void onShortCodeAvailable(Integer shortCode);
-  }
+/**
+ * Helper class for Firebase storage of cloud anchor IDs, and the app's {@link SessionSyncBackend}.
+ * Callbacks arrive on the main thread.
+ */
+public class FirebaseManager implements SessionSyncBackend {
 
   private static final String TAG = FirebaseManager.class.getName();
   private static final String KEY_ROOT_DIR = "shared_anchor_codelab_root";
   private static final String KEY_NEXT_SHORT_CODE = "next_short_code";
+  private static final String KEY_FREE_SHORT_CODES = "free_short_codes";
   private static final String KEY_PREFIX = "anchor_";
   private static final String ANCHOR_ID = "anchor_id";
   private static final String PARTICIPANTS = "participants";
   private static final String REQUEST_UPDATE = "request_update";
+  private static final String COMPACT_FRUSTUM = "compact";
+  // Tracing fields written next to the compact frustum; older builds ignore them.
+  private static final String FRUSTUM_SEQUENCE = "seq";
+  private static final String FRUSTUM_SENT_AT = "sent_at";
+  private static final String FRUSTUM_REPLY_TO = "reply_to";
+  private static final String SERVER_TIME_OFFSET = ".info/serverTimeOffset";
+  // Listener registry key prefix for a participant's frustum subscription.
+  private static final String FRUSTUM_LISTENER_PREFIX = "frustum/";
   private static final int INITIAL_SHORT_CODE = 142;
+  /** Default cap on how often push mode writes our frustum. */
+  public static final float DEFAULT_PUBLISH_HZ = 5;
+  /** Default smallest corner movement, in metres, that push mode bothers to publish. */
+  public static final float DEFAULT_PUBLISH_TOLERANCE = 0.01f;
   private final DatabaseReference rootRef;
+  private final ShortCodeAllocator shortCodeAllocator;
+  private final CloudAnchorIdCache cloudAnchorIdCache;
+  private final DatabaseReference serverTimeOffsetRef;
+  private final SyncLatencyTracker syncLatencyTracker = new SyncLatencyTracker();
+  // Our clock's offset from the Firebase server's, so timestamps compare across devices.
+  private volatile long serverTimeOffsetMs = 0;
+  private long publishSequence = 0;
   private DatabaseReference mAnchorRef;
   private DatabaseReference mParticipantsRef;
   private final FirebaseAuth mFirebaseAuth;
   private FirebaseUser currentUser;
   private Consumer userUidConsumer;
-  private Supplier<CloudViewFrustum> mCloudViewFrustumSupplier;
+  private Supplier<FrustumSnapshot> viewFrustumSupplier;
   private String mUserUid;
-  private String partnerUid;
+  private int mShortCode;
+  // Every database listener of the current session. Only touched on the main thread.
+  private final ListenerRegistry listenerRegistry = new ListenerRegistry();
+  // The other participants we hold a frustum subscription for.
+  private final Set<String> partnerUids = new HashSet<>();
 
-  private PartnerCloudViewFrustumListener partnerCloudViewFrustumListener;
+  private PartnerFrustumListener partnerFrustumListener;
+
+  private boolean pushMode = false;
+  private final PublishThrottle publishThrottle = new PublishThrottle();
+  private final FlatViewFrustum outgoingFrustum = new FlatViewFrustum();
 
   /** Constructor that initializes the Firebase connection. */
   public FirebaseManager(Context context) {
     FirebaseApp firebaseApp = FirebaseApp.initializeApp(context);
     mFirebaseAuth = FirebaseAuth.getInstance();
     rootRef = FirebaseDatabase.getInstance(firebaseApp).getReference().child(KEY_ROOT_DIR);
+    serverTimeOffsetRef =
+        FirebaseDatabase.getInstance(firebaseApp).getReference().child(SERVER_TIME_OFFSET);
+    cloudAnchorIdCache = new CloudAnchorIdCache(context);
+    shortCodeAllocator = new ShortCodeAllocator(new FirebaseLeaseStore(
+        rootRef.child(KEY_NEXT_SHORT_CODE), rootRef.child(KEY_FREE_SHORT_CODES), INITIAL_SHORT_CODE));
     DatabaseReference.goOnline();
   }
 
-  /** Gets a new short code that can be used to store the anchor ID. */
+  /**
+   * Gets a new short code that can be used to store the anchor ID. Codes come from a block leased
+   * in one transaction, so most calls answer without touching the database.
+   */
+  @Override
   public void nextShortCode(ShortCodeListener listener) {
-    // Run a transaction on the node containing the next short code available. This increments the
-    // value in the database and retrieves it in one atomic all-or-nothing operation.
-    rootRef
-        .child(KEY_NEXT_SHORT_CODE)
-        .runTransaction(
-            new Transaction.Handler() {
-              @Override
-              public Transaction.Result doTransaction(MutableData currentData) {
-                Integer shortCode = currentData.getValue(Integer.class);
-                if (shortCode == null) {
-                  // Set the initial short code if one did not exist before.
-                  shortCode = INITIAL_SHORT_CODE - 1;
-                }
-                currentData.setValue(shortCode + 1);
-                return Transaction.success(currentData);
-              }
+    shortCodeAllocator.nextShortCode(listener::onShortCodeAvailable);
+  }
 
-              @Override
-              public void onComplete(
-                  DatabaseError error, boolean committed, DataSnapshot currentData) {
-                if (!committed) {
-                  Log.e(TAG, "Firebase Error", error.toException());
-                  listener.onShortCodeAvailable(null);
-                } else {
-                  listener.onShortCodeAvailable(currentData.getValue(Integer.class));
-                }
-              }
-            });
+  /**
+   * Returns the unused short codes of the current block so other clients can use them. Call it
+   * when this client is done hosting, for example when the app stops.
+   */
+  @Override
+  public void releaseUnusedShortCodes() {
+    shortCodeAllocator.releaseUnused();
   }
 
 
-  /** Stores the cloud anchor ID in the configured Firebase Database. */
+  /** Stores the cloud anchor ID in the configured Firebase Database and the local cache. */
+  @Override
   public void storeUsingShortCode(int shortCode, String cloudAnchorId) {
-    if (mAnchorRef == null) {
-      getAnchorRef(shortCode);
-    }
+    getAnchorRef(shortCode);
     mAnchorRef.child(ANCHOR_ID).setValue(cloudAnchorId);
+    cloudAnchorIdCache.put(shortCode, cloudAnchorId);
   }
 
-  /** Stores the boolean requestUpdate in the configured Firebase Database. */
-  public void storeRequestUpdate() {
-    if (mAnchorRef == null) {
-      return;
-    }
-  }
-
+  @Override
   public void requestPartnerToUpdate() {
-    if (mAnchorRef == null || partnerUid == null) {
+    if (mAnchorRef == null || partnerUids.isEmpty()) {
       return;
     }
+    syncLatencyTracker.onRequest(serverTimeMillis());
     mAnchorRef.child(REQUEST_UPDATE).setValue(mUserUid);
   }
 
@@ -143,17 +157,24 @@ public class FirebaseManager {
     if (mAnchorRef == null) {
       return;
     }
-    mAnchorRef.child(REQUEST_UPDATE).addValueEventListener(
+    listenerRegistry.addValueListener(REQUEST_UPDATE, mAnchorRef.child(REQUEST_UPDATE),
         new ValueEventListener() {
           @Override
           public void onDataChange(@NonNull DataSnapshot snapshot) {
             if (!snapshot.exists()) {
               return;
             }
-            if (partnerUid.equals(snapshot.getValue(String.class))) {
-              updateViewFrustum(mCloudViewFrustumSupplier.get());
-              mAnchorRef.child(REQUEST_UPDATE).setValue(null);
+            String requesterUid = snapshot.getValue(String.class);
+            if (!partnerUids.contains(requesterUid)) {
+              return;
+            }
+            FrustumSnapshot viewFrustum =
+                viewFrustumSupplier == null ? null : viewFrustumSupplier.get();
+            if (viewFrustum != null) {
+              viewFrustum.copyTo(outgoingFrustum);
+              writeCompactFrustum(outgoingFrustum, requesterUid);
             }
+            mAnchorRef.child(REQUEST_UPDATE).setValue(null);
           }
 
           public void onCancelled(@NonNull DatabaseError error) {
@@ -166,67 +187,149 @@ public class FirebaseManager {
     );
   }
 
+  /**
+   * Writes {@code cloudViewFrustum} in the compact encoding. Frustums written as plain {@link
+   * CloudViewFrustum} objects by older builds are still read by the partner frustum listeners.
+   */
   public void updateViewFrustum(CloudViewFrustum cloudViewFrustum) {
-    if (mAnchorRef == null) {
+    if (mAnchorRef == null || cloudViewFrustum.getVertices().size() != FlatViewFrustum.VERTEX_COUNT) {
       return;
     }
-    Map<String, Object> update = new HashMap<>();
-    update.put(mUserUid, cloudViewFrustum);
-    mAnchorRef.updateChildren(update);
+    outgoingFrustum.setVertices(cloudViewFrustum.getVertices());
+    writeCompactFrustum(outgoingFrustum, null);
+  }
+
+  /**
+   * Turns on push mode: {@link #publishViewFrustum} then writes our frustum whenever a corner has
+   * moved by more than {@code tolerance} metres since the last write, at most {@code maxHz} times a
+   * second, without waiting for the partner to request it.
+   */
+  @Override
+  public void enablePushMode(float maxHz, float tolerance) {
+    publishThrottle.configure(maxHz, tolerance);
+    pushMode = true;
+  }
+
+  @Override
+  public void disablePushMode() {
+    pushMode = false;
+  }
+
+  /**
+   * Publishes {@code viewFrustum}, an anchor-space frustum, in the compact encoding if push mode is
+   * on and the rate cap and change tolerance allow it. Cheap to call every frame.
+   *
+   * @return true if the frustum was written
+   */
+  @Override
+  public boolean publishViewFrustum(FlatViewFrustum viewFrustum) {
+    if (!pushMode || mAnchorRef == null || mUserUid == null
+        || !publishThrottle.tryPublish(viewFrustum, SystemClock.elapsedRealtime())) {
+      return false;
+    }
+    writeCompactFrustum(viewFrustum, null);
+    return true;
+  }
+
+  /**
+   * Joins the session of {@code shortCode}: adds us to its participants, subscribes to every other
+   * participant's frustum and answers their update requests. Requires a signed-in user.
+   */
+  @Override
+  public void joinSession(int shortCode) {
+    storeUid(shortCode);
+    setPartnerListener();
+    setRequestUpdateListener();
   }
 
     public void storeUid(int shortCode) {
-      if (mParticipantsRef == null) {
-        getParticipantsRef(shortCode);
-      }
+      getParticipantsRef(shortCode);
       mParticipantsRef.child(mUserUid).setValue(true);
     }
 
 
-  public void setPartnerCloudViewFrustumListener(PartnerCloudViewFrustumListener listener) {
-    partnerCloudViewFrustumListener = listener;
+  @Override
+  public void setPartnerFrustumListener(PartnerFrustumListener listener) {
+    partnerFrustumListener = listener;
+  }
+
+  @Override
+  public void setViewFrustumSupplier(Supplier<FrustumSnapshot> supplier) {
+    viewFrustumSupplier = supplier;
+  }
+
+  /** Returns the uids of the other participants we are subscribed to. */
+  @Override
+  public Set<String> getPartnerUids() {
+    return Collections.unmodifiableSet(partnerUids);
   }
 
-  public void initializeFrustumListener(PartnerCloudViewFrustumListener listener) {
-    if (mAnchorRef == null || partnerUid == null) {
+  private void subscribeToPartner(String partnerUid) {
+    if (mAnchorRef == null || partnerUids.contains(partnerUid)) {
       return;
     }
-    mAnchorRef.child(partnerUid)
-        .addValueEventListener(
-            new ValueEventListener() {
-              @Override
-              public void onDataChange(@NonNull DataSnapshot snapshot) {
-              if (!snapshot.exists()) {
-                return;
-              }
-              CloudViewFrustum cloudViewFrustum = snapshot.getValue(CloudViewFrustum.class);
-              listener.onCloudViewFrustumChanged(cloudViewFrustum);
-              }
+    ValueEventListener frustumListener = new ValueEventListener() {
+      @Override
+      public void onDataChange(@NonNull DataSnapshot snapshot) {
+        if (!snapshot.exists() || partnerFrustumListener == null) {
+          return;
+        }
+        FlatViewFrustum viewFrustum = decodeFrustum(snapshot);
+        if (viewFrustum == null) {
+          Log.w(TAG, "Ignoring a frustum in an unknown encoding from " + partnerUid);
+          return;
+        }
+        Long sequence = snapshot.child(FRUSTUM_SEQUENCE).getValue(Long.class);
+        Long sentAt = snapshot.child(FRUSTUM_SENT_AT).getValue(Long.class);
+        String replyTo = snapshot.child(FRUSTUM_REPLY_TO).getValue(String.class);
+        syncLatencyTracker.onReceive(
+            partnerUid,
+            sequence == null ? -1 : sequence,
+            sentAt == null ? -1 : sentAt,
+            mUserUid != null && mUserUid.equals(replyTo),
+            serverTimeMillis(),
+            SystemClock.elapsedRealtimeNanos());
+        partnerFrustumListener.onPartnerFrustumChanged(partnerUid, viewFrustum);
+      }
 
-              @Override
-              public void onCancelled(@NonNull DatabaseError error) {
-                Log.e(
-                    TAG,
-                    "The Firebase operation for getCloudViewFrustum was cancelled.",
-                    error.toException());
-              }
-            }
-        );
+      @Override
+      public void onCancelled(@NonNull DatabaseError error) {
+        Log.e(
+            TAG,
+            "The Firebase operation for getCloudViewFrustum was cancelled.",
+            error.toException());
+      }
+    };
+    partnerUids.add(partnerUid);
+    listenerRegistry.addValueListener(
+        FRUSTUM_LISTENER_PREFIX + partnerUid, mAnchorRef.child(partnerUid), frustumListener);
   }
 
+  private void unsubscribeFromPartner(String partnerUid) {
+    if (!partnerUids.remove(partnerUid)) {
+      return;
+    }
+    listenerRegistry.remove(FRUSTUM_LISTENER_PREFIX + partnerUid);
+    syncLatencyTracker.removePartner(partnerUid);
+    if (partnerFrustumListener != null) {
+      partnerFrustumListener.onPartnerLeft(partnerUid);
+    }
+  }
 
+  /**
+   * Watches the session's participant list and keeps one frustum subscription per other
+   * participant, adding and removing them as participants join and leave.
+   */
   public void setPartnerListener() {
     if (mParticipantsRef == null) {
       return;
     }
-    mParticipantsRef
-        .addChildEventListener(
+    listenerRegistry.addChildListener(PARTICIPANTS, mParticipantsRef,
             new ChildEventListener() {
               @Override
               public void onChildAdded(@NonNull DataSnapshot snapshot, String previousChildName) {
                 if (!mUserUid.equals(snapshot.getKey())) {
-                  partnerUid = snapshot.getKey();
-                  initializeFrustumListener(partnerCloudViewFrustumListener);
+                  subscribeToPartner(snapshot.getKey());
                 }
               }
               @Override
@@ -237,6 +340,7 @@ public class FirebaseManager {
               }
               @Override
               public void onChildRemoved(@NonNull DataSnapshot snapshot) {
+                unsubscribeFromPartner(snapshot.getKey());
               }
               @Override
               public void onCancelled(@NonNull DatabaseError error) {
@@ -249,20 +353,41 @@ public class FirebaseManager {
   }
   /**
    * Retrieves the cloud anchor ID using a short code. Returns an empty string if a cloud anchor ID
-   * was not stored for this short code.
+   * was not stored for this short code. Recent answers, including unknown short codes, come from
+   * the local cache without a network read, in which case the listener is called right away.
    */
-
+  @Override
   public void getCloudAnchorId(int shortCode, CloudAnchorIdListener listener) {
-    if (mAnchorRef == null) {
-      getAnchorRef(shortCode);
+    getCloudAnchorIdAsync(shortCode).whenComplete((cloudAnchorId, error) ->
+        listener.onCloudAnchorIdAvailable(error == null ? cloudAnchorId : null));
+  }
+
+  /**
+   * Future-returning form of {@link #getCloudAnchorId}. It completes with an empty string for an
+   * unknown short code, already complete on a cache hit, and fails if the read is cancelled. A
+   * lookup neither joins nor leaves a session.
+   */
+  @Override
+  public CompletableFuture<String> getCloudAnchorIdAsync(int shortCode) {
+    String cachedCloudAnchorId = cloudAnchorIdCache.get(shortCode);
+    if (cachedCloudAnchorId != null) {
+      return CompletableFuture.completedFuture(cachedCloudAnchorId);
     }
-    mAnchorRef.child(ANCHOR_ID)
+    CompletableFuture<String> future = new CompletableFuture<>();
+    rootRef.child(KEY_PREFIX + shortCode).child(ANCHOR_ID)
         .addListenerForSingleValueEvent(
             new ValueEventListener() {
               @Override
               public void onDataChange(@NonNull DataSnapshot snapshot) {
                 // Listener invoked when the data is successfully read from Firebase.
-                listener.onCloudAnchorIdAvailable(String.valueOf(snapshot.getValue()));
+                String cloudAnchorId = snapshot.getValue(String.class);
+                if (cloudAnchorId == null || cloudAnchorId.isEmpty()) {
+                  cloudAnchorIdCache.putUnknown(shortCode);
+                  future.complete("");
+                } else {
+                  cloudAnchorIdCache.put(shortCode, cloudAnchorId);
+                  future.complete(cloudAnchorId);
+                }
               }
 
               @Override
@@ -271,53 +396,172 @@ public class FirebaseManager {
                     TAG,
                     "The Firebase operation for getCloudAnchorId was cancelled.",
                     error.toException());
-                listener.onCloudAnchorIdAvailable(null);
+                future.completeExceptionally(error.toException());
               }
             });
+    return future;
   }
 
   public void login(Consumer c) {
-      userUidConsumer = c;
-      FirebaseUser currentUser = mFirebaseAuth.getCurrentUser();
-      if (currentUser != null) {
-          Log.e(TAG, "onCreate: user uid " + currentUser.getUid());
-          mUserUid = currentUser.getUid();
-        userUidConsumer.accept(mUserUid);
-      } else {
-          loginAnonymously(userUidConsumer);
-      }
+    userUidConsumer = c;
+    loginAsync().thenAccept(userUidConsumer);
+  }
+
+  public void loginAnonymously(Consumer c) {
+    userUidConsumer = c;
+    loginAnonymouslyAsync().thenAccept(userUidConsumer);
   }
 
-   public void loginAnonymously(Consumer c) {
-        mFirebaseAuth.signInAnonymously()
-                .addOnCompleteListener(task -> {
-        if (task.isSuccessful()) {
+  /**
+   * Future-returning form of {@link #login}. It completes with our user uid, right away if we are
+   * already signed in, and fails if the anonymous sign-in fails.
+   */
+  public CompletableFuture<String> loginAsync() {
+    FirebaseUser currentUser = mFirebaseAuth.getCurrentUser();
+    if (currentUser != null) {
+      Log.e(TAG, "onCreate: user uid " + currentUser.getUid());
+      mUserUid = currentUser.getUid();
+      return CompletableFuture.completedFuture(mUserUid);
+    }
+    return loginAnonymouslyAsync();
+  }
+
+  private CompletableFuture<String> loginAnonymouslyAsync() {
+    CompletableFuture<String> future = new CompletableFuture<>();
+    mFirebaseAuth.signInAnonymously()
+        .addOnCompleteListener(task -> {
+          if (task.isSuccessful()) {
             // Sign in success, update UI with the signed-in user's information
             currentUser = mFirebaseAuth.getCurrentUser();
             mUserUid = currentUser.getUid();
-            userUidConsumer.accept(mUserUid);
-
-        } else {
+            future.complete(mUserUid);
+          } else {
             // If sign in fails, display a message to the user.
             Log.w(TAG, "signInAnonymously:failure", task.getException());
-        }
+            future.completeExceptionally(task.getException() != null
+                ? task.getException() : new IllegalStateException("signInAnonymously failed"));
+          }
+        });
+    return future;
+  }
 
-    });
-   }
+  /**
+   * Call when the collision test against {@code partnerUid}'s latest frustum has finished, to
+   * close its trace; see {@link #getSyncLatency()}.
+   */
+  @Override
+  public void recordCollisionResult(String partnerUid) {
+    syncLatencyTracker.onResult(partnerUid, SystemClock.elapsedRealtimeNanos());
+  }
 
-   private void getAnchorRef(int shortCode) {
-     mAnchorRef = rootRef.child(KEY_PREFIX + shortCode).getRef();
-   }
+  /**
+   * Returns p50/p99 latencies, overall and per partner, of each stage from our update request to
+   * the partner's write, its arrival here and the collision result.
+   */
+  @Override
+  public SyncLatencyTracker.Snapshot getSyncLatency() {
+    return syncLatencyTracker.snapshot();
+  }
 
+  private long serverTimeMillis() {
+    return System.currentTimeMillis() + serverTimeOffsetMs;
+  }
 
-  private void getParticipantsRef(int shortCode) {
-    if (mAnchorRef == null) {
-      getAnchorRef(shortCode);
+  // A one-off read per session keeps the offset fresh without another long-lived listener.
+  private void refreshServerTimeOffset() {
+    serverTimeOffsetRef.addListenerForSingleValueEvent(
+        new ValueEventListener() {
+          @Override
+          public void onDataChange(@NonNull DataSnapshot snapshot) {
+            Long offset = snapshot.getValue(Long.class);
+            if (offset != null) {
+              serverTimeOffsetMs = offset;
+            }
+          }
+
+          @Override
+          public void onCancelled(@NonNull DatabaseError error) {
+            Log.w(TAG, "Could not read the server time offset.", error.toException());
+          }
+        });
+  }
+
+  private void writeCompactFrustum(FlatViewFrustum viewFrustum, String replyToUid) {
+    Map<String, Object> value = new HashMap<>();
+    value.put(COMPACT_FRUSTUM, FrustumCodec.encode(viewFrustum));
+    value.put(FRUSTUM_SEQUENCE, publishSequence++);
+    value.put(FRUSTUM_SENT_AT, serverTimeMillis());
+    if (replyToUid != null) {
+      value.put(FRUSTUM_REPLY_TO, replyToUid);
+    }
+    mAnchorRef.child(mUserUid).setValue(value);
+  }
+
+  // Reads the compact encoding, or a plain CloudViewFrustum written by an older build. Returns
+  // null if the value is neither.
+  private static FlatViewFrustum decodeFrustum(DataSnapshot snapshot) {
+    String compact = snapshot.child(COMPACT_FRUSTUM).getValue(String.class);
+    if (compact != null) {
+      FlatViewFrustum decoded = new FlatViewFrustum();
+      return FrustumCodec.decode(compact, decoded) ? decoded : null;
+    }
+    CloudViewFrustum cloudViewFrustum = snapshot.getValue(CloudViewFrustum.class);
+    if (cloudViewFrustum == null
+        || cloudViewFrustum.getVertices().size() != FlatViewFrustum.VERTEX_COUNT) {
+      return null;
+    }
+    return new FlatViewFrustum(cloudViewFrustum.getVertices());
+  }
+
+  /**
+   * Detaches every listener of the current session, stops push mode, removes us from the
+   * participant list along with our last published frustum, and reports each partner as left. The next call that takes a short code
+   * starts afresh. Safe to call when not in a session.
+   */
+  @Override
+  public void leaveSession() {
+    listenerRegistry.removeAll();
+    disablePushMode();
+    if (mParticipantsRef != null && mUserUid != null) {
+      mParticipantsRef.child(mUserUid).removeValue();
     }
-    mParticipantsRef = mAnchorRef.child(PARTICIPANTS).getRef();
+    if (mAnchorRef != null && mUserUid != null) {
+      mAnchorRef.child(mUserUid).removeValue();
+    }
+    List<String> leftPartners = new ArrayList<>(partnerUids);
+    partnerUids.clear();
+    if (partnerFrustumListener != null) {
+      for (String partnerUid : leftPartners) {
+        partnerFrustumListener.onPartnerLeft(partnerUid);
+      }
+    }
+    mAnchorRef = null;
+    mParticipantsRef = null;
+  }
+
+  /** Number of database listeners currently attached, for monitoring leaks. */
+  public int getActiveListenerCount() {
+    return listenerRegistry.size();
   }
 
-  public synchronized void getCloudViewFrustumSupplier(Supplier<CloudViewFrustum> cloudViewFrustumSupplier) {
-    mCloudViewFrustumSupplier = cloudViewFrustumSupplier;
+  // Switching to another short code leaves the current session first.
+  private void getAnchorRef(int shortCode) {
+    if (mAnchorRef != null && mShortCode == shortCode) {
+      return;
+    }
+    if (mAnchorRef != null) {
+      leaveSession();
+    }
+    mAnchorRef = rootRef.child(KEY_PREFIX + shortCode).getRef();
+    mShortCode = shortCode;
+    refreshServerTimeOffset();
+  }
+
+
+  private void getParticipantsRef(int shortCode) {
+    getAnchorRef(shortCode);
+    if (mParticipantsRef == null) {
+      mParticipantsRef = mAnchorRef.child(PARTICIPANTS).getRef();
+    }
   }
 }
\ No newline at end of file
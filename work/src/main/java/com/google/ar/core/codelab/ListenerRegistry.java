@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ar.core.codelab;
+
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Owns the Firebase Database listeners attached for a session, keyed by what they watch, so each
+ * one is attached at most once and all of them can be detached together.
+ *
+ * <p>Not thread-safe; use it from the main thread, where Firebase delivers its callbacks.
+ */
+class ListenerRegistry {
+  private final Map<String, Runnable> detachers = new HashMap<>();
+
+  /**
+   * Attaches {@code listener} to {@code query} unless a listener is already registered under
+   * {@code key}.
+   *
+   * @return true if the listener was attached
+   */
+  boolean addValueListener(String key, Query query, ValueEventListener listener) {
+    if (detachers.containsKey(key)) {
+      return false;
+    }
+    query.addValueEventListener(listener);
+    detachers.put(key, () -> query.removeEventListener(listener));
+    return true;
+  }
+
+  /** Same as {@link #addValueListener} for child events. */
+  boolean addChildListener(String key, Query query, ChildEventListener listener) {
+    if (detachers.containsKey(key)) {
+      return false;
+    }
+    query.addChildEventListener(listener);
+    detachers.put(key, () -> query.removeEventListener(listener));
+    return true;
+  }
+
+  boolean contains(String key) {
+    return detachers.containsKey(key);
+  }
+
+  /** Detaches the listener registered under {@code key}, if any. */
+  boolean remove(String key) {
+    Runnable detacher = detachers.remove(key);
+    if (detacher == null) {
+      return false;
+    }
+    detacher.run();
+    return true;
+  }
+
+  /** Detaches every listener. */
+  void removeAll() {
+    // Copy first: a detached listener must not be able to change the map mid-iteration.
+    List<Runnable> all = new ArrayList<>(detachers.values());
+    detachers.clear();
+    for (Runnable detacher : all) {
+      detacher.run();
+    }
+  }
+
+  /** Number of listeners currently attached. */
+  int size() {
+    return detachers.size();
+  }
+}
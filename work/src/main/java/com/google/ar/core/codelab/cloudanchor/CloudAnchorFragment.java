@@ -18,6 +18,8 @@ package com.google.ar.core.codelab.cloudanchor;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.Nullable;
 import android.view.Gravity;
 import android.view.LayoutInflater;
@@ -28,23 +30,32 @@ import android.widget.LinearLayout;
 import android.widget.Toast;
 
 import com.google.ar.core.Anchor;
-import com.google.ar.core.Anchor.CloudAnchorState;
 import com.google.ar.core.Config;
 import com.google.ar.core.Config.CloudAnchorMode;
 import com.google.ar.core.Frame;
 import com.google.ar.core.HitResult;
 import com.google.ar.core.Session;
 import com.google.ar.core.codelab.FirebaseManager;
+import com.google.ar.core.codelab.cloudanchor.CloudAnchorManager.CloudAnchorException;
 import com.google.ar.core.codelab.cloudanchor.helpers.ResolveDialogFragment;
 import com.google.ar.core.codelab.cloudanchor.helpers.SnackbarHelper;
-import com.google.ar.core.codelab.cloudanchor.model.CloudViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.session.Futures;
+import com.google.ar.core.codelab.cloudanchor.session.SessionSyncBackend;
 import com.google.ar.sceneform.AnchorNode;
 import com.google.ar.sceneform.Scene;
 import com.google.ar.sceneform.rendering.ModelRenderable;
 import com.google.ar.sceneform.ux.ArFragment;
 import com.google.ar.sceneform.ux.TransformableNode;
 
-import java.util.function.Consumer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Supplier;
 
 /**
@@ -53,22 +64,29 @@ import java.util.function.Supplier;
  * <p>This is where the AR Session and the Cloud Anchors are managed.
  */
 public class CloudAnchorFragment extends ArFragment {
-
+  // How long a Firebase read or short code reservation may take before we give up on it.
+  private static final long FIREBASE_TIMEOUT_MS = 10000;
 
   private Scene arScene;
-  private AnchorNode anchorNode;
+  // Every anchor shown in the scene; resolves can add several.
+  private final Map<Anchor, AnchorNode> anchorNodes = new LinkedHashMap<>();
   private ModelRenderable andyRenderable;
   private Button resolveButton;
 
   private final CloudAnchorManager cloudAnchorManager = new CloudAnchorManager();
   private final SnackbarHelper snackbarHelper = new SnackbarHelper();
   private FirebaseManager firebaseManager;
+  // Everything but signing in goes through the backend interface.
+  private SessionSyncBackend sessionSync;
   private String mUserUid;
   private float mScreenHeight = 0;
   private float mScreenWidth = 0;
   private Supplier<Frame> frameSupplier = () -> getArSceneView().getArFrame();
-  private Supplier<CloudViewFrustum> cloudFrustumSupplier = () -> cloudAnchorManager.getCloudViewFrustum();
-  private Consumer<String> getUserConsumer = userId -> getUserUid(userId);
+  // Signing in runs alongside hosting and resolving; pairing waits for it.
+  private CompletableFuture<String> loginFuture;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private Boolean lastOverlap = null;
+  private final Set<String> overlappingPartners = new HashSet<>();
 
   @Override
   @SuppressWarnings({"AndroidApiChecker", "FutureReturnValueIgnored"})
@@ -79,8 +97,10 @@ public class CloudAnchorFragment extends ArFragment {
         .build()
         .thenAccept(renderable -> andyRenderable = renderable);
     firebaseManager = new FirebaseManager(context);
-    firebaseManager.getCloudViewFrustumSupplier(cloudFrustumSupplier);
-    firebaseManager.login(getUserConsumer);
+    sessionSync = firebaseManager;
+    sessionSync.setViewFrustumSupplier(cloudAnchorManager::getFrustumSnapshot);
+    loginFuture = firebaseManager.loginAsync();
+    loginFuture.thenAccept(this::getUserUid);
   }
 
   @Override
@@ -109,7 +129,10 @@ public class CloudAnchorFragment extends ArFragment {
     cloudAnchorManager.setScreenHeight(mScreenHeight);
     cloudAnchorManager.setScreenWidth(mScreenWidth);
     cloudAnchorManager.setViewConfig();
-    arScene.addOnUpdateListener(frameTime -> cloudAnchorManager.onUpdate());
+    arScene.addOnUpdateListener(frameTime -> {
+      cloudAnchorManager.onUpdate();
+      sessionSync.publishViewFrustum(cloudAnchorManager.getViewFrustum());
+    });
     setOnTapArPlaneListener((hitResult, plane, motionEvent) -> onArPlaneTap(hitResult));
     return rootView;
   }
@@ -121,131 +144,233 @@ public class CloudAnchorFragment extends ArFragment {
   }
 
   private synchronized void onShortCodeEntered(int shortCode) {
-    firebaseManager.getCloudAnchorId(shortCode, cloudAnchorId -> {
-      if (cloudAnchorId == null || cloudAnchorId.isEmpty()) {
-        snackbarHelper.showMessage(
-            getActivity(),
-            "A Cloud Anchor ID for the short code " + shortCode + " was not found.");
-        return;
-      }
-      resolveButton.setEnabled(false);
-      cloudAnchorManager.resolveCloudAnchor(
-          getArSceneView().getSession(),
-          cloudAnchorId,
-          anchor -> onResolvedAnchorAvailable(anchor, shortCode));
-    });
+    // Resolves run side by side, so the button stays enabled for the next short code.
+    CompletableFuture<Anchor> resolved =
+        Futures.orTimeout(
+                sessionSync.getCloudAnchorIdAsync(shortCode),
+                FIREBASE_TIMEOUT_MS,
+                mainHandler::postDelayed)
+            .thenCompose(cloudAnchorId -> cloudAnchorId.isEmpty()
+                ? Futures.<Anchor>failed(new NoSuchElementException())
+                : cloudAnchorManager.resolveCloudAnchorAsync(
+                    getArSceneView().getSession(), cloudAnchorId));
+    resolved
+        .thenCombine(loginFuture, (anchor, userUid) -> anchor)
+        .whenComplete((anchor, error) -> onResolvedAnchorAvailable(anchor, error, shortCode));
   }
 
-  private synchronized void onResolvedAnchorAvailable(Anchor anchor, int shortCode) {
-    CloudAnchorState cloudState = anchor.getCloudAnchorState();
-    if (cloudState == CloudAnchorState.SUCCESS) {
+  private synchronized void onResolvedAnchorAvailable(
+      Anchor anchor, Throwable error, int shortCode) {
+    if (error == null) {
       onPaired(shortCode);
       snackbarHelper.showMessage(getActivity(), "Cloud Anchor Resolved. Short code: " + shortCode);
-      setNewAnchor(anchor);
-    } else {
+      addAnchor(anchor);
+      return;
+    }
+    Throwable cause = Futures.unwrap(error);
+    if (cause instanceof NoSuchElementException) {
+      snackbarHelper.showMessage(
+          getActivity(),
+          "A Cloud Anchor ID for the short code " + shortCode + " was not found.");
+    } else if (cause instanceof TimeoutException) {
+      snackbarHelper.showMessage(
+          getActivity(), "Timed out resolving anchor with short code " + shortCode + ".");
+    } else if (cause instanceof CloudAnchorException) {
       snackbarHelper.showMessage(
           getActivity(),
           "Error while resolving anchor with short code "
               + shortCode
               + ". Error: "
-              + cloudState.toString());
-      resolveButton.setEnabled(true);
+              + ((CloudAnchorException) cause).getCloudAnchorState().toString());
+    } else {
+      snackbarHelper.showMessage(
+          getActivity(),
+          "Error while resolving anchor with short code " + shortCode + ": " + cause.getMessage());
     }
   }
 
   private synchronized void onArPlaneTap(HitResult hitResult) {
-    if (anchorNode != null) {
+    if (!anchorNodes.isEmpty()) {
       // Do nothing if there was already an anchor in the Scene.
       return;
     }
     Anchor anchor = hitResult.createAnchor();
-    setNewAnchor(anchor);
+    addAnchor(anchor);
     resolveButton.setEnabled(false);
     snackbarHelper.showMessage(getActivity(), "Now hosting anchor...");
-    cloudAnchorManager.hostCloudAnchor(
-        getArSceneView().getSession(), anchor, this::onHostedAnchorAvailable);
+    CompletableFuture<Anchor> hosted =
+        cloudAnchorManager.hostCloudAnchorAsync(getArSceneView().getSession(), anchor);
+    hosted.whenComplete(
+        (hostedAnchor, error) -> onHostedAnchorAvailable(anchor, hostedAnchor, error));
+    // The short code is only taken once hosting succeeds, so a failed host does not use one up.
+    // It usually comes from the leased block, without waiting on the database.
+    hosted
+        .thenCompose(hostedAnchor ->
+            Futures.orTimeout(
+                sessionSync.nextShortCodeAsync(), FIREBASE_TIMEOUT_MS, mainHandler::postDelayed))
+        .thenCombine(loginFuture, (code, userUid) -> code)
+        .whenComplete((code, error) -> onHostedShortCodeAvailable(hosted, code, error));
   }
 
   /*
    * Most important Function
    */
   private synchronized void onPaired(int shortCode) {
-    firebaseManager.storeUid(shortCode);
-    firebaseManager.setPartnerListener();
-    firebaseManager.storeRequestUpdate();
-    firebaseManager.setRequestUpdateListener();
-    firebaseManager.setPartnerCloudViewFrustumListener(cloudViewFrustum -> {
-      boolean result = cloudAnchorManager.detectCollision(cloudViewFrustum);
-      if (result) {
-        snackbarHelper.showMessage(getActivity(), "Field of view overlapped!");
-      }
-      else {
-        snackbarHelper.showMessage(getActivity(), "No overlap!");
-      }
-    });
+    sessionSync.setPartnerFrustumListener(
+        new SessionSyncBackend.PartnerFrustumListener() {
+          @Override
+          public void onPartnerFrustumChanged(String partnerUid, FlatViewFrustum frustum) {
+            cloudAnchorManager.detectCollision(
+                partnerUid, frustum, CloudAnchorFragment.this::onCollisionResult);
+          }
+
+          @Override
+          public void onPartnerLeft(String partnerUid) {
+            cloudAnchorManager.removePartner(partnerUid);
+            if (overlappingPartners.remove(partnerUid)) {
+              reportOverlap();
+            }
+          }
+        });
+    sessionSync.joinSession(shortCode);
+    sessionSync.enablePushMode(
+        FirebaseManager.DEFAULT_PUBLISH_HZ, FirebaseManager.DEFAULT_PUBLISH_TOLERANCE);
+  }
+
+  // Called on the main thread by the collision worker.
+  private void onCollisionResult(String partnerUid, boolean overlapping) {
+    if (!sessionSync.getPartnerUids().contains(partnerUid)) {
+      // The partner left while this test was running.
+      return;
+    }
+    sessionSync.recordCollisionResult(partnerUid);
+    if (overlapping) {
+      overlappingPartners.add(partnerUid);
+    } else {
+      overlappingPartners.remove(partnerUid);
+    }
+    reportOverlap();
+  }
+
+  private void reportOverlap() {
+    boolean result = !overlappingPartners.isEmpty();
+    // Partner frustums now arrive several times a second; only report changes.
+    if (lastOverlap != null && lastOverlap == result) {
+      return;
+    }
+    lastOverlap = result;
+    if (result) {
+      snackbarHelper.showMessage(getActivity(), "Field of view overlapped!");
+    }
+    else {
+      snackbarHelper.showMessage(getActivity(), "No overlap!");
+    }
   }
 
-  private synchronized void onHostedAnchorAvailable(Anchor anchor) {
-    CloudAnchorState cloudState = anchor.getCloudAnchorState();
-    if (cloudState == CloudAnchorState.SUCCESS) {
-      String cloudAnchorId = anchor.getCloudAnchorId();
-      firebaseManager.nextShortCode(shortCode -> {
-        if (shortCode != null) {
-          firebaseManager.storeUsingShortCode(shortCode, cloudAnchorId);
-          onPaired(shortCode);
-          snackbarHelper
-              .showMessage(getActivity(), "Cloud Anchor Hosted. Short code: " + shortCode);
-        } else {
-          // Firebase could not provide a short code.
-          snackbarHelper
-              .showMessage(getActivity(), "Cloud Anchor Hosted, but could not "
-                  + "get a short code from Firebase.");
-        }
-      });
-      setNewAnchor(anchor);
+  private synchronized void onHostedAnchorAvailable(
+      Anchor localAnchor, Anchor anchor, Throwable error) {
+    if (error == null) {
+      removeAnchor(localAnchor);
+      addAnchor(anchor);
+      return;
+    }
+    Throwable cause = Futures.unwrap(error);
+    if (cause instanceof TimeoutException) {
+      snackbarHelper.showMessage(getActivity(), "Timed out while hosting.");
+    } else if (cause instanceof CloudAnchorException) {
+      snackbarHelper.showMessage(
+          getActivity(),
+          "Error while hosting: "
+              + ((CloudAnchorException) cause).getCloudAnchorState().toString());
     } else {
-      snackbarHelper.showMessage(getActivity(), "Error while hosting: " + cloudState.toString());
+      snackbarHelper.showMessage(getActivity(), "Error while hosting: " + cause.getMessage());
     }
   }
 
+  private synchronized void onHostedShortCodeAvailable(
+      CompletableFuture<Anchor> hosted, Integer shortCode, Throwable error) {
+    if (hosted.isCompletedExceptionally()) {
+      // Already reported by onHostedAnchorAvailable.
+      return;
+    }
+    if (error != null) {
+      // Firebase could not provide a short code.
+      snackbarHelper
+          .showMessage(getActivity(), "Cloud Anchor Hosted, but could not "
+              + "get a short code from Firebase.");
+      return;
+    }
+    sessionSync.storeUsingShortCode(shortCode, hosted.join().getCloudAnchorId());
+    onPaired(shortCode);
+    snackbarHelper.showMessage(getActivity(), "Cloud Anchor Hosted. Short code: " + shortCode);
+  }
+
   private synchronized void onClearButtonPressed() {
     // Clear the anchor from the scene.
     cloudAnchorManager.clearListeners();
+    overlappingPartners.clear();
+    lastOverlap = null;
+    sessionSync.leaveSession();
     resolveButton.setEnabled(true);
-    setNewAnchor(null);
+    clearAnchors();
   }
 
 
   private synchronized void onDetectButtonPressed() {
-    firebaseManager.requestPartnerToUpdate();
+    lastOverlap = null;
+    sessionSync.requestPartnerToUpdate();
   }
 
 
-  // Modify the renderables when a new anchor is available.
-  private synchronized void setNewAnchor(@Nullable Anchor anchor) {
+  // Add the renderables for a new anchor.
+  private synchronized void addAnchor(Anchor anchor) {
+    if (anchorNodes.containsKey(anchor)) {
+      return;
+    }
+    if (andyRenderable == null) {
+      Toast toast = Toast.makeText(getContext(), "Andy model was not loaded.", Toast.LENGTH_LONG);
+      toast.setGravity(Gravity.CENTER, 0, 0);
+      toast.show();
+      return;
+    }
+    // Create the Anchor.
+    AnchorNode anchorNode = new AnchorNode(anchor);
+    arScene.addChild(anchorNode);
+    anchorNodes.put(anchor, anchorNode);
+
+    // Create the transformable andy and add it to the anchor.
+    TransformableNode andy = new TransformableNode(getTransformationSystem());
+    andy.setParent(anchorNode);
+    andy.setRenderable(andyRenderable);
+    andy.select();
+  }
+
+  private synchronized void removeAnchor(Anchor anchor) {
+    AnchorNode anchorNode = anchorNodes.remove(anchor);
     if (anchorNode != null) {
       arScene.removeChild(anchorNode);
-      anchorNode = null;
     }
-    if (anchor != null) {
-      if (andyRenderable == null) {
-        Toast toast = Toast.makeText(getContext(), "Andy model was not loaded.", Toast.LENGTH_LONG);
-        toast.setGravity(Gravity.CENTER, 0, 0);
-        toast.show();
-        return;
-      }
-      // Create the Anchor.
-      anchorNode = new AnchorNode(anchor);
-      arScene.addChild(anchorNode);
-
-      // Create the transformable andy and add it to the anchor.
-      TransformableNode andy = new TransformableNode(getTransformationSystem());
-      andy.setParent(anchorNode);
-      andy.setRenderable(andyRenderable);
-      andy.select();
+  }
+
+  private synchronized void clearAnchors() {
+    for (Anchor anchor : new ArrayList<>(anchorNodes.keySet())) {
+      removeAnchor(anchor);
     }
   }
 
+  @Override
+  public void onDetach() {
+    sessionSync.leaveSession();
+    sessionSync.releaseUnusedShortCodes();
+    super.onDetach();
+  }
+
+  @Override
+  public void onDestroy() {
+    cloudAnchorManager.shutdown();
+    super.onDestroy();
+  }
+
   @Override
   protected Config getSessionConfiguration(Session session) {
     Config config = super.getSessionConfiguration(session);
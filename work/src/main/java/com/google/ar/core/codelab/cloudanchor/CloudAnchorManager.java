@@ -16,44 +16,127 @@
 
 package com.google.ar.core.codelab.cloudanchor;
 
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
 import com.google.ar.core.Anchor;
 import com.google.ar.core.Anchor.CloudAnchorState;
 import com.google.ar.core.Frame;
+import com.google.ar.core.Pose;
 import com.google.ar.core.Session;
+import com.google.ar.core.codelab.cloudanchor.model.AnchorPose;
 import com.google.ar.core.codelab.cloudanchor.model.CloudViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.FrustumSnapshot;
 import com.google.ar.core.codelab.cloudanchor.model.ViewConfig;
-import com.google.ar.core.codelab.cloudanchor.model.ViewFrustum;
 import com.google.ar.core.codelab.cloudanchor.rendering.PointUtils;
-import com.google.ar.core.codelab.cloudanchor.rendering.SATUtils;
+import com.google.ar.core.codelab.cloudanchor.session.CloudOperationPipeline;
+import com.google.ar.core.codelab.cloudanchor.session.CloudOperationPipeline.Status;
+import com.google.ar.core.codelab.cloudanchor.session.FrameProfiler;
+import com.google.ar.core.codelab.cloudanchor.session.FrustumHistoryIndex;
+import com.google.ar.core.codelab.cloudanchor.session.VoxelCoverageGrid;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 
-import javax.vecmath.Vector3f;
-
 
 /**
  * A helper class to handle all the Cloud Anchors logic, and add a callback-like mechanism on top of
  * the existing ARCore API.
+ *
+ * <p>Host and resolve operations go through a {@link CloudOperationPipeline}: any number can be
+ * requested, at most {@link #MAXCLOUDOPERATIONS} run at once, and each is polled only every
+ * {@link #CLOUDOPERATIONPOLLMS}, so anchors whose state cannot have changed cost nothing per frame.
  */
 public class CloudAnchorManager {
+  private static final String TAG = CloudAnchorManager.class.getName();
+
   /** Listener for the results of a host or resolve operation. */
   public interface CloudAnchorListener {
 
-    /** This method is invoked when the results of a Cloud Anchor operation are available. */
+    /**
+     * This method is invoked when the results of a Cloud Anchor operation are available. The
+     * {@code anchor} is null if the operation did not finish before its deadline or could not be
+     * started.
+     */
     void onCloudTaskComplete(Anchor anchor);
   }
-  private final HashMap<Anchor, CloudAnchorListener> pendingAnchors = new HashMap<>();
+
+  /** The failure of a host or resolve future whose operation ended in an error state. */
+  public static class CloudAnchorException extends Exception {
+    private final CloudAnchorState cloudAnchorState;
+
+    CloudAnchorException(CloudAnchorState cloudAnchorState) {
+      super("Cloud Anchor operation failed: " + cloudAnchorState);
+      this.cloudAnchorState = cloudAnchorState;
+    }
+
+    public CloudAnchorState getCloudAnchorState() {
+      return cloudAnchorState;
+    }
+  }
+
+  /** Hosting starts before resolving, since the user is waiting on the anchor they just placed. */
+  public static final int HOSTPRIORITY = 1;
+  public static final int RESOLVEPRIORITY = 0;
 
 
   public static float NEARCLIP = 0.01f;
   public static float FARCLIP = 10.0f;
   public static float HORIZONTALCLIPRATIO = 0.6f;
   public static float VERTICALCLIPRATIO = 0.4f;
+  /** Largest change in any view or projection matrix entry that still reuses the last frustum. */
+  public static float MATRIXEPSILON = 1e-5f;
+  /** Largest change in any anchor translation or rotation component that still reuses it. */
+  public static float POSEEPSILON = 1e-5f;
+  /** How many host and resolve operations may run at once. Read when a manager is created. */
+  public static int MAXCLOUDOPERATIONS = 8;
+  /** How often a running operation's state is checked. Read when a manager is created. */
+  public static long CLOUDOPERATIONPOLLMS = 100;
+  /** Delay before the first retry of a failed operation; doubled for each later one. */
+  public static long CLOUDOPERATIONBACKOFFMS = 1000;
+  public static long CLOUDOPERATIONTIMEOUTMS = 60000;
+  public static int CLOUDOPERATIONATTEMPTS = 3;
+  /** How often onUpdate logs its frame profile and starts a new window; 0 turns logging off. */
+  public static long FRAMEPROFILELOGMS = 10000;
+  /**
+   * Whether to count objects allocated per frame. Android's allocation counting slows every
+   * allocation in the process, so it is off by default. Read when a manager is created.
+   */
+  public static boolean PROFILEALLOCATIONS = false;
+  /** Time span of each bucket of the frustum history. Read when a manager is created. */
+  public static long FRUSTUMHISTORYBUCKETMS = 10000;
+  /** How long the frustum history keeps a frustum. Read when a manager is created. */
+  public static long FRUSTUMHISTORYMAXAGEMS = 30 * 60 * 1000;
+  /** Side of a voxel of the coverage grid, in metres. Read when a manager is created. */
+  public static float COVERAGEVOXELSIZE = 0.25f;
+  /** Width and depth of the coverage grid around the anchor, in voxels. Read when a manager is created. */
+  public static int COVERAGEGRIDSIZE = 128;
+  /** Height of the coverage grid around the anchor, in voxels. Read when a manager is created. */
+  public static int COVERAGEGRIDHEIGHT = 32;
+  /** Participant our own frustums are recorded under in the frustum history and coverage grid. */
+  public static final String LOCALUID = "";
+
+  // Phases of onUpdate, in the order they run.
+  private static final int PHASE_MATRICES = 0;
+  private static final int PHASE_CHANGE_CHECK = 1;
+  private static final int PHASE_WORLD_COORDS = 2;
+  private static final int PHASE_ANCHOR_TRANSFORM = 3;
+  private static final int PHASE_NORMALS = 4;
+  private static final int PHASE_SNAPSHOT = 5;
+  private static final int PHASE_HISTORY = 6;
+  private static final int PHASE_COVERAGE = 7;
+  private static final int PHASE_CLOUD_OPERATIONS = 8;
+  private static final String[] PHASE_NAMES = {
+    "matrices", "changeCheck", "worldCoords", "anchorTransform", "normals", "snapshot",
+    "history", "coverage", "cloudOperations"
+  };
 
 
   private Session arSession;
@@ -62,11 +145,43 @@ public class CloudAnchorManager {
   private Supplier<Frame> mFrameSupplier;
 
   private ViewConfig mViewConfig = new ViewConfig();
-  private ViewFrustum mViewFrustum = new ViewFrustum();
-  private CloudViewFrustum mCloudViewFrustum = new CloudViewFrustum();
+  private FlatViewFrustum mViewFrustum = new FlatViewFrustum();
+  // Our latest anchor-space frustum, replaced whenever onUpdate rebuilds it.
+  private final AtomicReference<FrustumSnapshot> latestFrustum = new AtomicReference<>();
+  // How much of the space around the anchor each participant has seen. All frustums, ours and our
+  // partners', are added on the collision worker thread, so onUpdate never waits on the grid.
+  private final VoxelCoverageGrid coverage = new VoxelCoverageGrid(
+      COVERAGEGRIDSIZE, COVERAGEGRIDHEIGHT, COVERAGEGRIDSIZE, COVERAGEVOXELSIZE);
+  private final CollisionWorker collisionWorker = new CollisionWorker(
+      latestFrustum::get, ours -> coverage.add(LOCALUID, ours), coverage::add);
+  // Every anchor-space frustum seen, ours and our partners', for region and time queries. Full
+  // buckets are sealed on their own thread, so adding a frustum in onUpdate stays cheap.
+  private final ExecutorService historySealer =
+      Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "FrustumHistorySealer"));
+  private final FrustumHistoryIndex frustumHistory =
+      new FrustumHistoryIndex(FRUSTUMHISTORYBUCKETMS, FRUSTUMHISTORYMAXAGEMS, historySealer);
+  private final CloudOperationPipeline<Anchor> cloudOperations = new CloudOperationPipeline<>(
+      MAXCLOUDOPERATIONS, CLOUDOPERATIONPOLLMS, CLOUDOPERATIONBACKOFFMS);
+  private final boolean countingAllocations = PROFILEALLOCATIONS;
+  private final FrameProfiler frameProfiler = createFrameProfiler(countingAllocations);
+  private long lastFrameProfileLogMs = SystemClock.uptimeMillis();
 
   private float[] projmtx = new float[16];
   private float[] viewmtx = new float[16];
+  private float[] anchorTranslation = new float[3];
+  private float[] anchorRotation = new float[4];
+  // The anchor's pose as of the cached frustum, updated in place whenever the frustum is rebuilt.
+  private final AnchorPose frustumAnchorPose = new AnchorPose(0, 0, 0, 0, 0, 0, 1);
+
+  // The inputs the cached frustum was last computed from.
+  private float[] lastProjmtx = new float[16];
+  private float[] lastViewmtx = new float[16];
+  private float[] lastAnchorTranslation = new float[3];
+  private float[] lastAnchorRotation = new float[4];
+  private Anchor lastFrustumAnchor;
+  private volatile boolean frustumValid = false;
+  private long skippedFrameCount = 0;
+  private long recomputedFrameCount = 0;
 
   private float mScreenHeight = 0;
   private float mScreenWidth = 0;
@@ -75,27 +190,112 @@ public class CloudAnchorManager {
    * This method hosts an anchor. The {@code listener} will be invoked when the results are
    * available.
    */
+  public void hostCloudAnchor(Session session, Anchor anchor, CloudAnchorListener listener) {
+    hostCloudAnchor(session, anchor, HOSTPRIORITY, listener);
+  }
+
+  /** Same as {@link #hostCloudAnchor(Session, Anchor, CloudAnchorListener)} with a priority. */
   public synchronized void hostCloudAnchor(
-      Session session, Anchor anchor, CloudAnchorListener listener) {
+      Session session, Anchor anchor, int priority, CloudAnchorListener listener) {
 //    Pose pose = mFrame.getCamera().getPose();
 //    Anchor cameraAnchor = session.createAnchor(pose);
 //    Anchor newAnchor = session.hostCloudAnchor(cameraAnchor);
-    Anchor newAnchor = session.hostCloudAnchor(anchor);
-    pendingAnchors.put(newAnchor, listener);
+    submit(hostOperation(session, anchor), priority,
+        (result, status) -> listener.onCloudTaskComplete(result));
   }
 
   /**
    * This method resolves an anchor. The {@code listener} will be invoked when the results are
    * available.
    */
+  public void resolveCloudAnchor(Session session, String anchorId, CloudAnchorListener listener) {
+    resolveCloudAnchor(session, anchorId, RESOLVEPRIORITY, listener);
+  }
+
+  /** Same as {@link #resolveCloudAnchor(Session, String, CloudAnchorListener)} with a priority. */
   public synchronized void resolveCloudAnchor(
-      Session session, String anchorId, CloudAnchorListener listener) {
-    Anchor newAnchor = session.resolveCloudAnchor(anchorId);
-    pendingAnchors.put(newAnchor, listener);
+      Session session, String anchorId, int priority, CloudAnchorListener listener) {
+    submit(resolveOperation(session, anchorId), priority,
+        (result, status) -> listener.onCloudTaskComplete(result));
+  }
+
+  /**
+   * Future-returning form of {@link #hostCloudAnchor(Session, Anchor, CloudAnchorListener)}. The
+   * future completes on the thread calling {@link #onUpdate()} with the hosted anchor. It fails
+   * with a {@link CloudAnchorException} if the anchor ended in an error state, with the exception
+   * ARCore threw if hosting could not be started, or, past the deadline, with a
+   * {@link TimeoutException}.
+   */
+  public CompletableFuture<Anchor> hostCloudAnchorAsync(Session session, Anchor anchor) {
+    CompletableFuture<Anchor> future = new CompletableFuture<>();
+    CloudOperation operation = hostOperation(session, anchor);
+    submit(operation, HOSTPRIORITY, (result, status) -> complete(future, operation, result, status));
+    return future;
+  }
+
+  /**
+   * Future-returning form of {@link #resolveCloudAnchor(Session, String, CloudAnchorListener)}; it
+   * completes like {@link #hostCloudAnchorAsync}.
+   */
+  public CompletableFuture<Anchor> resolveCloudAnchorAsync(Session session, String anchorId) {
+    CompletableFuture<Anchor> future = new CompletableFuture<>();
+    CloudOperation operation = resolveOperation(session, anchorId);
+    submit(operation, RESOLVEPRIORITY,
+        (result, status) -> complete(future, operation, result, status));
+    return future;
+  }
+
+  private static void complete(
+      CompletableFuture<Anchor> future, CloudOperation operation, Anchor anchor, Status status) {
+    switch (status) {
+      case SUCCESS:
+        future.complete(anchor);
+        break;
+      case TIMED_OUT:
+        future.completeExceptionally(new TimeoutException("Cloud Anchor operation timed out"));
+        break;
+      default:
+        // Without an anchor, no attempt could be started; report why the last one was refused.
+        future.completeExceptionally(anchor != null
+            ? new CloudAnchorException(anchor.getCloudAnchorState())
+            : operation.getStartFailure());
+        break;
+    }
+  }
+
+  private static CloudOperation hostOperation(Session session, Anchor anchor) {
+    return new CloudOperation("host") {
+      @Override
+      Anchor startAttempt() {
+        return session.hostCloudAnchor(anchor);
+      }
+    };
+  }
+
+  private static CloudOperation resolveOperation(Session session, String anchorId) {
+    return new CloudOperation("resolve " + anchorId) {
+      @Override
+      Anchor startAttempt() {
+        return session.resolveCloudAnchor(anchorId);
+      }
+    };
+  }
+
+  private synchronized void submit(
+      CloudOperation operation, int priority, CloudOperationPipeline.Callback<Anchor> callback) {
+    cloudOperations.submit(operation, priority, SystemClock.uptimeMillis(),
+        CLOUDOPERATIONTIMEOUTMS, CLOUDOPERATIONATTEMPTS,
+        (anchor, status) -> {
+          if (status == Status.SUCCESS) {
+            mAnchor = anchor;
+          }
+          callback.onComplete(anchor, status);
+        });
   }
 
   /** Should be called after a {@link Session#update()} call. */
   public synchronized void onUpdate() {
+    frameProfiler.beginFrame();
     mFrame = mFrameSupplier.get();
 
     mFrame.getCamera().getProjectionMatrix(projmtx, 0, NEARCLIP,FARCLIP);
@@ -104,43 +304,156 @@ public class CloudAnchorManager {
 
 //    mFrame.getCamera().getPose().getTranslation(position, 0);
 
-    PointUtils.setFrustumWorldCoords(mViewFrustum, mViewConfig, mScreenWidth, mScreenHeight, projmtx, viewmtx, NEARCLIP, FARCLIP);
     if (mAnchor != null) {
-      PointUtils.transformFrustumCoords(mViewFrustum, mAnchor.getPose());
-      List<Vector3f> normals = new ArrayList<>();
-      SATUtils.generateNormals(mViewFrustum, normals);
-      mCloudViewFrustum.setVertices(mViewFrustum.getPoints());
-      mCloudViewFrustum.setNormals(normals);
+      Pose anchorPose = mAnchor.getPose();
+      anchorPose.getTranslation(anchorTranslation, 0);
+      anchorPose.getRotationQuaternion(anchorRotation, 0);
+    }
+    frameProfiler.mark(PHASE_MATRICES);
+
+    boolean unchanged = isFrustumUnchanged();
+    frameProfiler.mark(PHASE_CHANGE_CHECK);
+    if (unchanged) {
+      skippedFrameCount++;
+    } else {
+      recomputedFrameCount++;
+      PointUtils.setFrustumWorldCoords(mViewFrustum, mViewConfig, mScreenWidth, mScreenHeight, projmtx, viewmtx, NEARCLIP, FARCLIP);
+      frameProfiler.mark(PHASE_WORLD_COORDS);
+      if (mAnchor != null) {
+        frustumAnchorPose.set(anchorTranslation, anchorRotation);
+        PointUtils.transformFrustumCoords(mViewFrustum, frustumAnchorPose);
+        frameProfiler.mark(PHASE_ANCHOR_TRANSFORM);
+        // The snapshot would generate the normals anyway; doing it first times them separately.
+        mViewFrustum.getNormals();
+        frameProfiler.mark(PHASE_NORMALS);
+        latestFrustum.set(FrustumSnapshot.of(mViewFrustum));
+        frameProfiler.mark(PHASE_SNAPSHOT);
+        frustumHistory.add(LOCALUID, mViewFrustum, SystemClock.uptimeMillis());
+        frameProfiler.mark(PHASE_HISTORY);
+        collisionWorker.submitLocal();
+        frameProfiler.mark(PHASE_COVERAGE);
 
 //      Log.e("TAGGGG", cvf.toString());
 //      Log.e("TAGGG", mViewFrustum.toString());
+      }
+      System.arraycopy(projmtx, 0, lastProjmtx, 0, 16);
+      System.arraycopy(viewmtx, 0, lastViewmtx, 0, 16);
+      System.arraycopy(anchorTranslation, 0, lastAnchorTranslation, 0, 3);
+      System.arraycopy(anchorRotation, 0, lastAnchorRotation, 0, 4);
+      lastFrustumAnchor = mAnchor;
+      frustumValid = true;
     }
 
-    Iterator<Map.Entry<Anchor, CloudAnchorListener>> iter = pendingAnchors.entrySet().iterator();
-    while (iter.hasNext()) {
-      Map.Entry<Anchor, CloudAnchorListener> entry = iter.next();
-      Anchor anchor = entry.getKey();
-      if (isReturnableState(anchor.getCloudAnchorState())) {
-        mAnchor = anchor;
-        CloudAnchorListener listener = entry.getValue();
-        listener.onCloudTaskComplete(anchor);
-        iter.remove();
-      }
+    long now = SystemClock.uptimeMillis();
+    cloudOperations.update(now);
+    frameProfiler.mark(PHASE_CLOUD_OPERATIONS);
+    frameProfiler.endFrame();
+
+    if (FRAMEPROFILELOGMS > 0 && now - lastFrameProfileLogMs >= FRAMEPROFILELOGMS) {
+      Log.i(TAG, "onUpdate profile over " + frameProfiler.getFrameCount() + " frames:\n"
+          + frameProfiler.snapshot());
+      frameProfiler.reset();
+      lastFrameProfileLogMs = now;
     }
   }
 
-  /** Used to clear any currently registered listeners, so they wont be called again. */
+  /**
+   * Used to clear any currently registered listeners, so they wont be called again. Operations
+   * still queued or running are abandoned.
+   */
   public synchronized void clearListeners() {
-    pendingAnchors.clear();
+    cloudOperations.cancelAll();
+  }
+
+  /**
+   * Returns per-phase timings of {@link #onUpdate()} since the last periodic log, or since the
+   * manager was created if logging is off. Its {@code toString()} is a printable table.
+   */
+  public synchronized FrameProfiler.Snapshot getFrameProfile() {
+    return frameProfiler.snapshot();
+  }
+
+  /** Number of host and resolve operations not yet finished, running or queued. */
+  public synchronized int getPendingCloudOperationCount() {
+    return cloudOperations.getPendingCount();
+  }
+
+  /*
+   * Compares this frame's matrices and anchor pose against the ones the cached frustum was built
+   * from. Comparing against those rather than the previous frame means slow drift still adds up
+   * to a recompute.
+   */
+  private boolean isFrustumUnchanged() {
+    if (!frustumValid || mAnchor != lastFrustumAnchor) {
+      return false;
+    }
+    if (!nearlyEqual(projmtx, lastProjmtx, MATRIXEPSILON)
+        || !nearlyEqual(viewmtx, lastViewmtx, MATRIXEPSILON)) {
+      return false;
+    }
+    return mAnchor == null
+        || (nearlyEqual(anchorTranslation, lastAnchorTranslation, POSEEPSILON)
+            && nearlyEqual(anchorRotation, lastAnchorRotation, POSEEPSILON));
   }
 
-  private static boolean isReturnableState(CloudAnchorState cloudState) {
-    switch (cloudState) {
-      case NONE:
-      case TASK_IN_PROGRESS:
+  private static boolean nearlyEqual(float[] a, float[] b, float epsilon) {
+    for (int i = 0; i < a.length; i++) {
+      if (Math.abs(a[i] - b[i]) > epsilon) {
         return false;
-      default:
-        return true;
+      }
+    }
+    return true;
+  }
+
+  /** Maps ARCore's cloud anchor states onto the pipeline's, for one host or resolve request. */
+  private abstract static class CloudOperation implements CloudOperationPipeline.Operation<Anchor> {
+    private final String description;
+    private RuntimeException startFailure;
+
+    CloudOperation(String description) {
+      this.description = description;
+    }
+
+    abstract Anchor startAttempt();
+
+    /** The exception that stopped the most recent attempt from starting, if any. */
+    RuntimeException getStartFailure() {
+      return startFailure;
+    }
+
+    @Override
+    public Anchor start() {
+      try {
+        return startAttempt();
+      } catch (RuntimeException e) {
+        Log.w(TAG, "Could not start " + description, e);
+        startFailure = e;
+        return null;
+      }
+    }
+
+    @Override
+    public Status poll(Anchor anchor) {
+      CloudAnchorState cloudState = anchor.getCloudAnchorState();
+      switch (cloudState) {
+        case NONE:
+        case TASK_IN_PROGRESS:
+          return Status.IN_PROGRESS;
+        case SUCCESS:
+          return Status.SUCCESS;
+        case ERROR_INTERNAL:
+        case ERROR_SERVICE_UNAVAILABLE:
+        case ERROR_RESOURCE_EXHAUSTED:
+          Log.w(TAG, "Retrying " + description + " after " + cloudState);
+          return Status.RETRYABLE_ERROR;
+        default:
+          return Status.ERROR;
+      }
+    }
+
+    @Override
+    public void cancel(Anchor anchor) {
+      anchor.detach();
     }
   }
 
@@ -150,16 +463,97 @@ public class CloudAnchorManager {
   public synchronized void getFrameSupplier(Supplier<Frame> frameSupplier) {
     mFrameSupplier = frameSupplier;
   }
-  public synchronized CloudViewFrustum getCloudViewFrustum() {
-    return mCloudViewFrustum;
+  /** Number of frames that reused the cached frustum because the camera and anchor had not moved. */
+  public synchronized long getSkippedFrameCount() {
+    return skippedFrameCount;
   }
 
-  public synchronized boolean detectCollision(CloudViewFrustum partnerCloudViewFrustum) {
-    if (mViewFrustum == null || partnerCloudViewFrustum == null) {
-      return false;
+  /** Number of frames that rebuilt the frustum. */
+  public synchronized long getRecomputedFrameCount() {
+    return recomputedFrameCount;
+  }
+
+  /**
+   * Returns our frustum, in anchor space once an anchor has been hosted or resolved. It is
+   * updated in place by {@link #onUpdate()}, so only read it on the thread that calls onUpdate.
+   */
+  public synchronized FlatViewFrustum getViewFrustum() {
+    return mViewFrustum;
+  }
+
+  /**
+   * Returns the latest anchor-space frustum snapshot, or null before there is an anchor. Safe to
+   * call from any thread.
+   */
+  public FrustumSnapshot getFrustumSnapshot() {
+    return latestFrustum.get();
+  }
+
+  /**
+   * Returns a new copy of the latest anchor-space frustum, with empty lists before there is an
+   * anchor. Safe to call from any thread.
+   */
+  public CloudViewFrustum getCloudViewFrustum() {
+    CloudViewFrustum cloudViewFrustum = new CloudViewFrustum();
+    FrustumSnapshot snapshot = latestFrustum.get();
+    if (snapshot != null) {
+      snapshot.getVertices(cloudViewFrustum.getVertices());
+      snapshot.getNormals(cloudViewFrustum.getNormals());
     }
+    return cloudViewFrustum;
+  }
 
-    return SATUtils.detectCollision(mViewFrustum, partnerCloudViewFrustum.getVertices(), partnerCloudViewFrustum.getNormals());
+  /**
+   * Tests our latest frustum against a partner's on the collision worker thread. The result is
+   * posted to {@code listener} on the main thread; see {@link CollisionWorker#submit}.
+   */
+  public void detectCollision(String partnerUid, FlatViewFrustum partnerFrustum,
+      CollisionWorker.CollisionListener listener) {
+    frustumHistory.add(partnerUid, partnerFrustum, SystemClock.uptimeMillis());
+    collisionWorker.submit(partnerUid, partnerFrustum, listener);
+  }
+
+  /**
+   * Returns the history of every anchor-space frustum seen in this session, ours under
+   * {@link #LOCALUID}, timed by {@link SystemClock#uptimeMillis()}. Safe to query from any thread.
+   */
+  public FrustumHistoryIndex getFrustumHistory() {
+    return frustumHistory;
+  }
+
+  /**
+   * Returns the voxel coverage of the space around the anchor, ours under {@link #LOCALUID}. Safe
+   * to query from any thread.
+   */
+  public VoxelCoverageGrid getCoverage() {
+    return coverage;
+  }
+
+  /** Forgets a partner that left the session. */
+  public void removePartner(String partnerUid) {
+    collisionWorker.removePartner(partnerUid);
+  }
+
+  /**
+   * Stops the collision worker and the frustum history's sealer. Call when the owning fragment is
+   * destroyed.
+   */
+  public void shutdown() {
+    collisionWorker.shutdown();
+    historySealer.shutdownNow();
+    if (countingAllocations) {
+      Debug.stopAllocCounting();
+    }
+  }
+
+  private static FrameProfiler createFrameProfiler(boolean countAllocations) {
+    LongSupplier allocationCounter = null;
+    if (countAllocations) {
+      // Deprecated, but still the only per-thread allocation count Android offers.
+      Debug.startAllocCounting();
+      allocationCounter = Debug::getThreadAllocCount;
+    }
+    return new FrameProfiler(PHASE_NAMES, System::nanoTime, allocationCounter);
   }
 
   public void setViewConfig() {
@@ -171,12 +565,15 @@ public class CloudAnchorManager {
     mViewConfig.setBottom(bottom);
     mViewConfig.setLeft(left);
     mViewConfig.setRight(right);
+    frustumValid = false;
   }
 
   public void setScreenHeight(float screenHeight) {
     mScreenHeight = screenHeight;
+    frustumValid = false;
   }
   public void setScreenWidth(float screenWidth) {
     mScreenWidth = screenWidth;
+    frustumValid = false;
   }
 }
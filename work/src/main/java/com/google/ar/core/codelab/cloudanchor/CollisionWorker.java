@@ -0,0 +1,229 @@
+/*
+ * Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ar.core.codelab.cloudanchor;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.ar.core.codelab.cloudanchor.model.FlatViewFrustum;
+import com.google.ar.core.codelab.cloudanchor.model.FrustumSnapshot;
+import com.google.ar.core.codelab.cloudanchor.rendering.SeparatingAxisCache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs the overlap tests between our latest frustum snapshot and each partner's frustum on a
+ * dedicated thread, and posts the results back to the main thread.
+ *
+ * <p>Partners are keyed by uid. An update from one partner tests only that partner, so the cost
+ * of an update does not grow with the number of participants. Updates coalesce per partner: if a
+ * partner's frustums arrive faster than they can be tested, only its most recent one is tested.
+ * Each partner keeps a {@link SeparatingAxisCache}, so a partner that stays apart from us is
+ * usually rejected by the first axis tried.
+ *
+ * <p>Work that should stay off the main thread can ride along: each partner frustum tested is
+ * handed to a partner frustum consumer, and our latest frustum to our frustum consumer whenever
+ * {@link #submitLocal} is called, both on the worker thread. Calls to {@code submitLocal} coalesce
+ * like partner updates, so a frustum replaced before the worker gets to it is skipped.
+ */
+public class CollisionWorker {
+  /** Receives the result of a collision test on the main thread. */
+  public interface CollisionListener {
+    void onCollisionResult(String partnerUid, boolean overlapping);
+  }
+
+  private static class Request {
+    final FlatViewFrustum partner;
+    final CollisionListener listener;
+
+    Request(FlatViewFrustum partner, CollisionListener listener) {
+      this.partner = partner;
+      this.listener = listener;
+    }
+  }
+
+  // Queued in place of a frustum when a partner leaves.
+  private static final Request REMOVED = new Request(null, null);
+
+  private final Supplier<FrustumSnapshot> ourFrustumSupplier;
+  private final Consumer<FlatViewFrustum> ourFrustumConsumer;
+  private final BiConsumer<String, FlatViewFrustum> partnerFrustumConsumer;
+  private final ExecutorService executor =
+      Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "CollisionWorker"));
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final ConcurrentHashMap<String, Request> pending = new ConcurrentHashMap<>();
+  private final AtomicBoolean localPending = new AtomicBoolean(false);
+  private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+  // Only touched on the worker thread.
+  private final FlatViewFrustum ourFrustum = new FlatViewFrustum();
+  private FrustumSnapshot ourSnapshot;
+  private FrustumSnapshot consumedSnapshot;
+  private final Map<String, FlatViewFrustum> partnerFrustums = new HashMap<>();
+  private final Map<String, SeparatingAxisCache> axisCaches = new HashMap<>();
+
+  public CollisionWorker(Supplier<FrustumSnapshot> ourFrustumSupplier) {
+    this(ourFrustumSupplier, ours -> {}, (partnerUid, partner) -> {});
+  }
+
+  /**
+   * Also passes our latest frustum to {@code ourFrustumConsumer} after each {@link #submitLocal},
+   * and every partner frustum that is about to be tested to {@code partnerFrustumConsumer}, even
+   * before we have a frustum of our own. Both run on the worker thread; neither may keep the
+   * frustum it is given.
+   */
+  public CollisionWorker(Supplier<FrustumSnapshot> ourFrustumSupplier,
+      Consumer<FlatViewFrustum> ourFrustumConsumer,
+      BiConsumer<String, FlatViewFrustum> partnerFrustumConsumer) {
+    this.ourFrustumSupplier = ourFrustumSupplier;
+    this.ourFrustumConsumer = ourFrustumConsumer;
+    this.partnerFrustumConsumer = partnerFrustumConsumer;
+  }
+
+  /**
+   * Queues our latest frustum for the frustum consumer. Cheap enough to call every frame; the
+   * frustum is read from the supplier when the worker gets to it.
+   */
+  public void submitLocal() {
+    if (executor.isShutdown()) {
+      return;
+    }
+    localPending.set(true);
+    schedule();
+  }
+
+  /**
+   * Queues a test of our frustum against {@code partner}, replacing any test still waiting for the
+   * same partner. The caller must not modify {@code partner} afterwards. Nothing is reported until
+   * we have a frustum of our own.
+   */
+  public void submit(String partnerUid, FlatViewFrustum partner, CollisionListener listener) {
+    enqueue(partnerUid, new Request(partner, listener));
+  }
+
+  /** Forgets a partner that left, dropping any test still waiting for it. */
+  public void removePartner(String partnerUid) {
+    enqueue(partnerUid, REMOVED);
+  }
+
+  /** Stops the worker thread. Queued tests are dropped and later ones ignored. */
+  public void shutdown() {
+    pending.clear();
+    localPending.set(false);
+    executor.shutdownNow();
+  }
+
+  private void enqueue(String partnerUid, Request request) {
+    if (executor.isShutdown()) {
+      return;
+    }
+    pending.put(partnerUid, request);
+    schedule();
+  }
+
+  private void schedule() {
+    if (scheduled.compareAndSet(false, true)) {
+      executor.execute(this::drain);
+    }
+  }
+
+  private boolean hasWork() {
+    return localPending.get() || !pending.isEmpty();
+  }
+
+  private void drain() {
+    while (hasWork()) {
+      if (localPending.getAndSet(false)) {
+        processLocal();
+      }
+      for (String partnerUid : pending.keySet()) {
+        Request request = pending.remove(partnerUid);
+        if (request != null) {
+          process(partnerUid, request);
+        }
+      }
+    }
+    scheduled.set(false);
+    // A request may have been queued after the loop ended but before the flag was cleared.
+    if (hasWork() && scheduled.compareAndSet(false, true)) {
+      executor.execute(this::drain);
+    }
+  }
+
+  private void processLocal() {
+    FrustumSnapshot snapshot = ourFrustumSupplier.get();
+    if (snapshot == null || snapshot == consumedSnapshot) {
+      return;
+    }
+    updateOurFrustum(snapshot);
+    consumedSnapshot = snapshot;
+    ourFrustumConsumer.accept(ourFrustum);
+  }
+
+  private void updateOurFrustum(FrustumSnapshot snapshot) {
+    if (snapshot != ourSnapshot) {
+      snapshot.copyTo(ourFrustum);
+      ourSnapshot = snapshot;
+    }
+  }
+
+  private void process(String partnerUid, Request request) {
+    if (request == REMOVED) {
+      partnerFrustums.remove(partnerUid);
+      axisCaches.remove(partnerUid);
+      return;
+    }
+    if (request.partner != null) {
+      partnerFrustumConsumer.accept(partnerUid, request.partner);
+    }
+    FrustumSnapshot snapshot = ourFrustumSupplier.get();
+    if (snapshot == null) {
+      return;
+    }
+    boolean overlapping;
+    if (request.partner == null) {
+      overlapping = false;
+    } else {
+      FlatViewFrustum partnerFrustum = partnerFrustums.get(partnerUid);
+      if (partnerFrustum == null) {
+        partnerFrustum = new FlatViewFrustum();
+        partnerFrustums.put(partnerUid, partnerFrustum);
+        axisCaches.put(partnerUid, new SeparatingAxisCache());
+      }
+      updateOurFrustum(snapshot);
+      // The partner's normals are regenerated from its vertices; that is cheaper than trusting and
+      // unpacking the six normals sent over the network. Corners that did not move keep the
+      // frustum's version, so the axis cache can answer without testing.
+      float[] partnerVertices = request.partner.getVertices();
+      if (!Arrays.equals(partnerFrustum.getVertices(), partnerVertices)) {
+        partnerFrustum.setVertices(partnerVertices);
+      }
+      overlapping = axisCaches.get(partnerUid).detectCollision(ourFrustum, partnerFrustum);
+    }
+    CollisionListener listener = request.listener;
+    mainHandler.post(() -> listener.onCollisionResult(partnerUid, overlapping));
+  }
+}